@@ -0,0 +1,220 @@
+package br.com.caelum.carga;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Resume uma gravação do JFR feita com carga/jfr/projeto-jpa.jfc: para cada
+ * endpoint, quanto da requisição foi controller, view, DAO e espera por
+ * conexão, e quantos acessos ao cache de segundo nível acertaram; depois os
+ * métodos dos DAOs que mais custaram em cada endpoint e os acertos por região
+ * do cache.
+ *
+ * Os eventos de DAO, cache e conexão trazem o endpoint da requisição em que
+ * aconteceram; os de fora de uma requisição (tarefas agendadas, índices
+ * montados em segundo plano) aparecem com o endpoint "(fora de requisicao)".
+ *
+ * <pre>
+ * java -cp carga/target/classes br.com.caelum.carga.AnalisadorDeGravacao projeto.jfr
+ * </pre>
+ *
+ * O teste de carga com carga.jfr=arquivo.jfr já imprime este resumo no fim.
+ */
+public class AnalisadorDeGravacao {
+
+	private static final String REQUISICAO = "br.com.caelum.Requisicao";
+	private static final String CONTROLLER = "br.com.caelum.ExecucaoDoController";
+	private static final String VIEW = "br.com.caelum.RenderizacaoDaView";
+	private static final String DAO = "br.com.caelum.ChamadaAoDao";
+	private static final String CACHE = "br.com.caelum.AcessoAoCache";
+	private static final String CONEXAO = "br.com.caelum.EsperaPorConexao";
+
+	private static final String FORA = "(fora de requisicao)";
+	private static final int METODOS_POR_ENDPOINT = 5;
+
+	private static class PorEndpoint {
+		final Medicoes requisicoes = new Medicoes();
+		long erros;
+		long controller;
+		long view;
+		long dao;
+		long chamadasAoDao;
+		long conexao;
+		long esperas;
+		long acertos;
+		long falhas;
+		final Map<String, PorMetodo> metodos = new HashMap<>();
+	}
+
+	private static class PorMetodo {
+		long chamadas;
+		long nanos;
+		long linhas;
+		final Map<String, Long> formatos = new HashMap<>();
+
+		String formatoMaisComum() {
+			return formatos.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse("");
+		}
+	}
+
+	private static class PorRegiao {
+		long acertos;
+		long falhas;
+	}
+
+	private final Map<String, PorEndpoint> endpoints = new TreeMap<>();
+	private final Map<String, PorMetodo> metodos = new TreeMap<>();
+	private final Map<String, PorRegiao> regioes = new TreeMap<>();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("uso: AnalisadorDeGravacao arquivo.jfr");
+			System.exit(1);
+		}
+
+		AnalisadorDeGravacao analisador = new AnalisadorDeGravacao();
+		analisador.le(Paths.get(args[0]));
+		analisador.imprime(System.out);
+	}
+
+	public void le(Path arquivo) throws IOException {
+		try (RecordingFile gravacao = new RecordingFile(arquivo)) {
+			while (gravacao.hasMoreEvents()) {
+				registra(gravacao.readEvent());
+			}
+		}
+	}
+
+	private void registra(RecordedEvent evento) {
+		String tipo = evento.getEventType().getName();
+		if (!tipo.startsWith("br.com.caelum."))
+			return;
+
+		long nanos = evento.getDuration().toNanos();
+		PorEndpoint endpoint = endpoint(evento.getString("endpoint"));
+
+		switch (tipo) {
+		case REQUISICAO:
+			endpoint.requisicoes.registra(nanos);
+			if (evento.getInt("status") >= 500)
+				endpoint.erros++;
+			break;
+		case CONTROLLER:
+			endpoint.controller += nanos;
+			break;
+		case VIEW:
+			endpoint.view += nanos;
+			break;
+		case DAO:
+			endpoint.dao += nanos;
+			endpoint.chamadasAoDao++;
+			String metodo = evento.getString("metodo");
+			soma(endpoint.metodos.computeIfAbsent(metodo, m -> new PorMetodo()), evento, nanos);
+			soma(metodos.computeIfAbsent(metodo, m -> new PorMetodo()), evento, nanos);
+			break;
+		case CACHE:
+			PorRegiao regiao = regioes.computeIfAbsent(evento.getString("tipo") + " " + evento.getString("regiao"),
+					r -> new PorRegiao());
+			if (evento.getBoolean("acerto")) {
+				endpoint.acertos++;
+				regiao.acertos++;
+			} else {
+				endpoint.falhas++;
+				regiao.falhas++;
+			}
+			break;
+		case CONEXAO:
+			endpoint.conexao += nanos;
+			endpoint.esperas++;
+			break;
+		default:
+			break;
+		}
+	}
+
+	private PorEndpoint endpoint(String endpoint) {
+		return endpoints.computeIfAbsent(endpoint == null || endpoint.isEmpty() ? FORA : endpoint,
+				e -> new PorEndpoint());
+	}
+
+	private static void soma(PorMetodo metodo, RecordedEvent evento, long nanos) {
+		metodo.chamadas++;
+		metodo.nanos += nanos;
+		metodo.linhas += Math.max(0, evento.getInt("linhas"));
+		metodo.formatos.merge(evento.getString("parametros"), 1L, Long::sum);
+	}
+
+	public void imprime(PrintStream saida) {
+		saida.printf("%nPor endpoint (tempos medios por requisicao, em ms):%n");
+		saida.printf("%-36s %8s %8s %8s %8s %10s %8s %8s %8s %9s %8s %6s%n", "endpoint", "req", "media", "p99",
+				"erros", "controller", "view", "dao", "dao/req", "conexao", "acertos", "falhas");
+		for (Map.Entry<String, PorEndpoint> item : endpoints.entrySet()) {
+			PorEndpoint endpoint = item.getValue();
+			int requisicoes = endpoint.requisicoes.getQuantidade();
+			if (requisicoes == 0) {
+				// sem requisição para dividir: só os totais
+				saida.printf("%-36s %8s %8s %8s %8s %10s %8s %8.1f %8d %9.1f %8d %6d%n", item.getKey(), "-", "-", "-",
+						"-", "-", "-", endpoint.dao / 1e6, endpoint.chamadasAoDao, endpoint.conexao / 1e6,
+						endpoint.acertos, endpoint.falhas);
+				continue;
+			}
+			saida.printf("%-36s %8d %8.2f %8.2f %8d %10.2f %8.2f %8.2f %8.1f %9.3f %8d %6d%n", item.getKey(),
+					requisicoes, media(endpoint.requisicoes), endpoint.requisicoes.percentil(0.99), endpoint.erros,
+					endpoint.controller / 1e6 / requisicoes, endpoint.view / 1e6 / requisicoes,
+					endpoint.dao / 1e6 / requisicoes, (double) endpoint.chamadasAoDao / requisicoes,
+					endpoint.conexao / 1e6 / requisicoes, endpoint.acertos, endpoint.falhas);
+		}
+
+		saida.printf("%nMetodos dos DAOs que mais custaram em cada endpoint:%n");
+		for (Map.Entry<String, PorEndpoint> item : endpoints.entrySet()) {
+			if (item.getValue().metodos.isEmpty())
+				continue;
+			saida.printf("  %s%n", item.getKey());
+			for (Map.Entry<String, PorMetodo> metodo : maisCaros(item.getValue().metodos, METODOS_POR_ENDPOINT)) {
+				saida.printf("    %-52s %8d chamadas %10.1f ms%n", metodo.getKey(), metodo.getValue().chamadas,
+						metodo.getValue().nanos / 1e6);
+			}
+		}
+
+		saida.printf("%nMetodos dos DAOs:%n");
+		saida.printf("%-52s %10s %10s %10s %10s  %s%n", "metodo", "chamadas", "total ms", "media ms", "linhas",
+				"parametros (mais comum)");
+		for (Map.Entry<String, PorMetodo> item : maisCaros(metodos, metodos.size())) {
+			PorMetodo metodo = item.getValue();
+			saida.printf("%-52s %10d %10.1f %10.3f %10.1f  (%s)%n", item.getKey(), metodo.chamadas, metodo.nanos / 1e6,
+					metodo.nanos / 1e6 / metodo.chamadas, (double) metodo.linhas / metodo.chamadas,
+					metodo.formatoMaisComum());
+		}
+
+		saida.printf("%nCache de segundo nivel por regiao:%n");
+		saida.printf("%-64s %10s %10s %8s%n", "regiao", "acertos", "falhas", "acerto");
+		for (Map.Entry<String, PorRegiao> item : regioes.entrySet()) {
+			PorRegiao regiao = item.getValue();
+			saida.printf("%-64s %10d %10d %7.1f%%%n", item.getKey(), regiao.acertos, regiao.falhas,
+					100.0 * regiao.acertos / (regiao.acertos + regiao.falhas));
+		}
+	}
+
+	private static List<Map.Entry<String, PorMetodo>> maisCaros(Map<String, PorMetodo> metodos, int quantos) {
+		List<Map.Entry<String, PorMetodo>> ordenados = new ArrayList<>(metodos.entrySet());
+		ordenados.sort(Comparator.comparingLong((Map.Entry<String, PorMetodo> item) -> item.getValue().nanos)
+				.reversed());
+		return ordenados.subList(0, Math.min(quantos, ordenados.size()));
+	}
+
+	private static double media(Medicoes medicoes) {
+		return medicoes.getTotal() / 1e6 / medicoes.getQuantidade();
+	}
+
+}
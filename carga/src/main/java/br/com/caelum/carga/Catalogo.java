@@ -0,0 +1,127 @@
+package br.com.caelum.carga;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * O que os usuários simulados sabem sobre a loja: ids de produtos, ids de
+ * categorias e de lojas e palavras dos nomes para buscar. Tudo é lido da página inicial,
+ * sem acesso ao banco.
+ *
+ * Por padrão todos os produtos têm a mesma chance de serem sorteados. Com
+ * carga.distribuicao=zipf a chance do produto de posição k é proporcional a
+ * 1/k^s (s em carga.zipf, padrão 1.0): poucos produtos concentram a maior
+ * parte dos acessos, como numa loja de verdade. A ordem dos produtos é
+ * embaralhada com semente fixa, para que os mais acessados sejam sempre os
+ * mesmos entre rodadas.
+ */
+public class Catalogo {
+
+	private static final Pattern PRODUTO = Pattern.compile("/produto/(\\d+)[;\"]");
+	private static final Pattern CATEGORIA = Pattern.compile("name=\"categoriaId\">(.*?)</select>", Pattern.DOTALL);
+	private static final Pattern LOJA = Pattern.compile("name=\"lojaId\">(.*?)</select>", Pattern.DOTALL);
+	private static final Pattern OPCAO = Pattern.compile("<option value=\"(\\d+)\"");
+	private static final Pattern NOME = Pattern.compile("<h4>(.*?)</h4>");
+
+	private final List<Integer> produtos = new ArrayList<>();
+	private final List<Integer> categorias = new ArrayList<>();
+	private final List<Integer> lojas = new ArrayList<>();
+	private final List<String> termos = new ArrayList<>();
+
+	// probabilidade acumulada de cada posição de produtos, quando a distribuição é zipf
+	private double[] acumulada;
+
+	public static Catalogo le(Cliente cliente) throws IOException {
+		String home = cliente.get("/").getCorpo();
+		Catalogo catalogo = new Catalogo();
+
+		Matcher produto = PRODUTO.matcher(home);
+		while (produto.find()) {
+			Integer id = Integer.valueOf(produto.group(1));
+			if (!catalogo.produtos.contains(id))
+				catalogo.produtos.add(id);
+		}
+
+		opcoes(CATEGORIA, home, catalogo.categorias);
+		opcoes(LOJA, home, catalogo.lojas);
+
+		Matcher nome = NOME.matcher(home);
+		while (nome.find()) {
+			for (String palavra : nome.group(1).split("\\s+")) {
+				if (palavra.length() > 3)
+					catalogo.termos.add(palavra);
+			}
+		}
+
+		if (catalogo.produtos.isEmpty() || catalogo.categorias.isEmpty())
+			throw new IllegalStateException("Nenhum produto ou categoria encontrado na pagina inicial");
+
+		if ("zipf".equals(System.getProperty("carga.distribuicao")))
+			catalogo.zipf(Double.parseDouble(System.getProperty("carga.zipf", "1.0")));
+
+		return catalogo;
+	}
+
+	private static void opcoes(Pattern padrao, String home, List<Integer> ids) {
+		Matcher select = padrao.matcher(home);
+		if (select.find()) {
+			Matcher opcao = OPCAO.matcher(select.group(1));
+			while (opcao.find()) {
+				ids.add(Integer.valueOf(opcao.group(1)));
+			}
+		}
+	}
+
+	private void zipf(double expoente) {
+		Collections.shuffle(produtos, new Random(42));
+
+		acumulada = new double[produtos.size()];
+		double soma = 0;
+		for (int k = 0; k < acumulada.length; k++) {
+			soma += 1 / Math.pow(k + 1, expoente);
+			acumulada[k] = soma;
+		}
+		for (int k = 0; k < acumulada.length; k++) {
+			acumulada[k] /= soma;
+		}
+	}
+
+	public Integer produto(Random aleatorio) {
+		if (acumulada == null)
+			return produtos.get(aleatorio.nextInt(produtos.size()));
+
+		int posicao = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+		if (posicao < 0)
+			posicao = -posicao - 1;
+		return produtos.get(Math.min(posicao, produtos.size() - 1));
+	}
+
+	public Integer categoria(Random aleatorio) {
+		return categorias.get(aleatorio.nextInt(categorias.size()));
+	}
+
+	public Integer loja(Random aleatorio) {
+		if (lojas.isEmpty())
+			throw new IllegalStateException("Nenhuma loja encontrada na pagina inicial");
+		return lojas.get(aleatorio.nextInt(lojas.size()));
+	}
+
+	public String termo(Random aleatorio) {
+		return termos.isEmpty() ? "" : termos.get(aleatorio.nextInt(termos.size()));
+	}
+
+	public int getQuantidadeDeProdutos() {
+		return produtos.size();
+	}
+
+	public String getDistribuicao() {
+		return acumulada == null ? "uniforme" : "zipf";
+	}
+
+}
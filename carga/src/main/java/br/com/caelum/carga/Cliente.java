@@ -0,0 +1,131 @@
+package br.com.caelum.carga;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cliente HTTP mínimo (HttpURLConnection com keep-alive) usado pelos usuários
+ * simulados. Não segue redirecionamentos: o 302 depois de um POST já conta
+ * como sucesso.
+ */
+public class Cliente {
+
+	private final String base;
+
+	public Cliente(String base) {
+		this.base = base;
+	}
+
+	public Resposta get(String caminho) throws IOException {
+		HttpURLConnection conexao = abre(caminho);
+		return le(conexao);
+	}
+
+	/*
+	 * As páginas de formulário são servidas em ISO-8859-1 e a aplicação não
+	 * configura encoding para os parâmetros, então enviamos no mesmo charset para
+	 * não corromper os acentos das descrições a cada edição.
+	 */
+	public Resposta post(String caminho, Map<String, List<String>> parametros) throws IOException {
+		StringBuilder corpo = new StringBuilder();
+		for (Map.Entry<String, List<String>> parametro : parametros.entrySet()) {
+			for (String valor : parametro.getValue()) {
+				if (corpo.length() > 0)
+					corpo.append('&');
+				corpo.append(URLEncoder.encode(parametro.getKey(), "ISO-8859-1")).append('=')
+						.append(URLEncoder.encode(valor, "ISO-8859-1"));
+			}
+		}
+		byte[] bytes = corpo.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+		HttpURLConnection conexao = abre(caminho);
+		conexao.setRequestMethod("POST");
+		conexao.setDoOutput(true);
+		conexao.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=ISO-8859-1");
+		conexao.setFixedLengthStreamingMode(bytes.length);
+		try (OutputStream saida = conexao.getOutputStream()) {
+			saida.write(bytes);
+		}
+		return le(conexao);
+	}
+
+	private HttpURLConnection abre(String caminho) throws IOException {
+		HttpURLConnection conexao = (HttpURLConnection) new URL(base + caminho).openConnection();
+		conexao.setInstanceFollowRedirects(false);
+		conexao.setConnectTimeout(10000);
+		conexao.setReadTimeout(60000);
+		return conexao;
+	}
+
+	private Resposta le(HttpURLConnection conexao) throws IOException {
+		int status = conexao.getResponseCode();
+		InputStream entrada = status >= 400 ? conexao.getErrorStream() : conexao.getInputStream();
+
+		ByteArrayOutputStream corpo = new ByteArrayOutputStream();
+		if (entrada != null) {
+			try (InputStream in = entrada) {
+				byte[] buffer = new byte[8192];
+				int lidos;
+				while ((lidos = in.read(buffer)) != -1) {
+					corpo.write(buffer, 0, lidos);
+				}
+			}
+		}
+		return new Resposta(status, new String(corpo.toByteArray(), charset(conexao.getContentType())),
+				conexao.getHeaderFieldInt("Retry-After", -1));
+	}
+
+	private Charset charset(String contentType) {
+		if (contentType != null) {
+			int inicio = contentType.toLowerCase().indexOf("charset=");
+			if (inicio >= 0)
+				return Charset.forName(contentType.substring(inicio + 8).trim());
+		}
+		return StandardCharsets.ISO_8859_1;
+	}
+
+	public static class Resposta {
+
+		private final int status;
+		private final String corpo;
+		private final int retryAfter;
+
+		Resposta(int status, String corpo, int retryAfter) {
+			this.status = status;
+			this.corpo = corpo;
+			this.retryAfter = retryAfter;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getCorpo() {
+			return corpo;
+		}
+
+		public boolean isSucesso() {
+			return status < 400;
+		}
+
+		// 503 do controle de admissão: a aplicação recusou sem processar
+		public boolean isRecusada() {
+			return status == 503;
+		}
+
+		// segundos pedidos pelo cabeçalho Retry-After, ou -1 sem ele
+		public int getRetryAfter() {
+			return retryAfter;
+		}
+	}
+
+}
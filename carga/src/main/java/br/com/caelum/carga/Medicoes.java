@@ -0,0 +1,84 @@
+package br.com.caelum.carga;
+
+import java.util.Arrays;
+
+/**
+ * Latências e erros de uma operação. As recusas (503 do controle de admissão)
+ * são contadas à parte e ficam fora das latências. Cada usuário simulado tem as suas, sem
+ * sincronização; no fim da rodada elas são somadas com {@link #soma}.
+ */
+public class Medicoes {
+
+	private long[] latencias = new long[1024];
+	private int quantidade;
+	private long erros;
+	private long rejeitadas;
+	private long recusadas;
+
+	public void registra(long nanos) {
+		if (quantidade == latencias.length)
+			latencias = Arrays.copyOf(latencias, quantidade * 2);
+		latencias[quantidade++] = nanos;
+	}
+
+	public void erro() {
+		erros++;
+	}
+
+	// gravação devolvida ao formulário (conflito de versão ou validação)
+	public void rejeitada() {
+		rejeitadas++;
+	}
+
+	public void recusada() {
+		recusadas++;
+	}
+
+	public void soma(Medicoes outras) {
+		for (int i = 0; i < outras.quantidade; i++) {
+			registra(outras.latencias[i]);
+		}
+		erros += outras.erros;
+		rejeitadas += outras.rejeitadas;
+		recusadas += outras.recusadas;
+	}
+
+	public int getQuantidade() {
+		return quantidade;
+	}
+
+	// soma das latências, em nanossegundos
+	public long getTotal() {
+		long total = 0;
+		for (int i = 0; i < quantidade; i++) {
+			total += latencias[i];
+		}
+		return total;
+	}
+
+	public long getErros() {
+		return erros;
+	}
+
+	public long getRejeitadas() {
+		return rejeitadas;
+	}
+
+	public long getRecusadas() {
+		return recusadas;
+	}
+
+	/**
+	 * Percentil em milissegundos (ex.: 0.99 para o p99).
+	 */
+	public double percentil(double percentil) {
+		if (quantidade == 0)
+			return 0;
+
+		long[] ordenadas = Arrays.copyOf(latencias, quantidade);
+		Arrays.sort(ordenadas);
+		int posicao = (int) Math.ceil(percentil * quantidade) - 1;
+		return ordenadas[Math.max(0, posicao)] / 1e6;
+	}
+
+}
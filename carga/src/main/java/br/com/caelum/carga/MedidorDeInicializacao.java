@@ -0,0 +1,162 @@
+package br.com.caelum.carga;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede a inicialização da aplicação com e sem o início rápido
+ * (inicioRapido=true), cada rodada numa JVM nova, como num nó novo do
+ * autoscaling.
+ *
+ * Os tempos contam do disparo do processo e são três: até a primeira resposta
+ * HTTP (o Tomcat já atende, mesmo que com 503), até o /pronto responder 200 e
+ * até a primeira página inicial. As rodadas alternam os dois modos, para que
+ * cache de disco e banco aquecido valham para os dois igualmente, e a primeira
+ * de cada modo é descartada.
+ *
+ * Uso (na raiz do projeto, depois de mvn package):
+ *
+ * <pre>
+ * mvn -f carga/pom.xml compile exec:exec -Dcarga.principal=br.com.caelum.carga.MedidorDeInicializacao \
+ *     -Dcarga="inicio.rodadas=5 jdbc.url=jdbc:postgresql://localhost:5432/projeto_jpa_carga"
+ * </pre>
+ *
+ * Propriedades:
+ *
+ * <ul>
+ * <li>inicio.rodadas: rodadas medidas de cada modo (padrão: 5)</li>
+ * <li>inicio.porta: porta do Tomcat embarcado (padrão: 8090)</li>
+ * <li>inicio.jvm: opções extras para a JVM da aplicação, separadas por espaço</li>
+ * </ul>
+ *
+ * Os demais argumentos chave=valor (jdbc.url, carga.war...) são repassados
+ * para a aplicação. A saída de cada inicialização vai para um arquivo de log
+ * temporário, indicado no começo da execução.
+ */
+public class MedidorDeInicializacao {
+
+	private static final long TEMPO_MAXIMO = TimeUnit.MINUTES.toMillis(3);
+
+	private final List<String> argumentos;
+	private final int porta;
+	private final File log;
+
+	public MedidorDeInicializacao(List<String> argumentos, int porta, File log) {
+		this.argumentos = argumentos;
+		this.porta = porta;
+		this.log = log;
+	}
+
+	public static void main(String[] args) throws Exception {
+		TesteDeCarga.propriedades(args);
+		int rodadas = Integer.getInteger("inicio.rodadas", 5);
+		int porta = Integer.getInteger("inicio.porta", 8090);
+
+		List<String> argumentos = new ArrayList<>();
+		for (String argumento : args) {
+			if (!argumento.startsWith("inicio.") && !argumento.startsWith("inicioRapido="))
+				argumentos.add(argumento);
+		}
+		argumentos.add("carga.war=" + TesteDeCarga.war().getAbsolutePath());
+		argumentos.add("carga.porta=" + porta);
+
+		File log = File.createTempFile("inicializacao", ".log");
+		System.out.println("Saida das inicializacoes em " + log);
+
+		MedidorDeInicializacao medidor = new MedidorDeInicializacao(argumentos, porta, log);
+		List<long[]> normal = new ArrayList<>();
+		List<long[]> rapido = new ArrayList<>();
+		for (int rodada = 0; rodada <= rodadas; rodada++) {
+			long[] tempoNormal = medidor.mede(false);
+			long[] tempoRapido = medidor.mede(true);
+			System.out.printf("rodada %d%s: normal %s, rapido %s%n", rodada, rodada == 0 ? " (descartada)" : "",
+					texto(tempoNormal), texto(tempoRapido));
+			if (rodada > 0) {
+				normal.add(tempoNormal);
+				rapido.add(tempoRapido);
+			}
+		}
+
+		System.out.printf("%n%-8s %22s %22s %22s%n", "modo", "responde ms", "pronto ms", "primeira pagina ms");
+		relatorio("normal", normal);
+		relatorio("rapido", rapido);
+		System.out.println("(mediana e, entre parenteses, minimo-maximo)");
+	}
+
+	/*
+	 * Tempos em ms desde o disparo do processo: primeira resposta HTTP, /pronto
+	 * com 200 e primeira página inicial.
+	 */
+	private long[] mede(boolean inicioRapido) throws IOException, InterruptedException {
+		List<String> comando = new ArrayList<>();
+		comando.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		for (String opcao : System.getProperty("inicio.jvm", "").trim().split("\\s+")) {
+			if (!opcao.isEmpty())
+				comando.add(opcao);
+		}
+		comando.add("-cp");
+		comando.add(System.getProperty("java.class.path"));
+		comando.add(ServidorEmbarcado.class.getName());
+		comando.addAll(argumentos);
+		comando.add("inicioRapido=" + inicioRapido);
+
+		Cliente cliente = new Cliente("http://localhost:" + porta + ServidorEmbarcado.CONTEXTO);
+		long inicio = System.nanoTime();
+		Process processo = new ProcessBuilder(comando).redirectErrorStream(true).redirectOutput(Redirect.appendTo(log))
+				.start();
+		try {
+			long responde = -1;
+			while (true) {
+				if (desde(inicio) > TEMPO_MAXIMO || !processo.isAlive())
+					throw new IllegalStateException("A aplicacao nao ficou pronta, veja " + log);
+				try {
+					int status = cliente.get("/pronto").getStatus();
+					if (responde < 0)
+						responde = desde(inicio);
+					if (status == 200)
+						break;
+				} catch (IOException e) {
+					// ainda não abriu a porta
+				}
+				Thread.sleep(20);
+			}
+			long pronto = desde(inicio);
+
+			if (!cliente.get("/").isSucesso())
+				throw new IllegalStateException("Erro na pagina inicial, veja " + log);
+			return new long[] { responde, pronto, desde(inicio) };
+		} finally {
+			processo.destroy();
+			if (!processo.waitFor(30, TimeUnit.SECONDS))
+				processo.destroyForcibly().waitFor();
+		}
+	}
+
+	private static long desde(long inicio) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+	}
+
+	private static String texto(long[] tempos) {
+		return tempos[0] + "/" + tempos[1] + "/" + tempos[2] + " ms";
+	}
+
+	private static void relatorio(String modo, List<long[]> tempos) {
+		System.out.printf("%-8s %22s %22s %22s%n", modo, resumo(tempos, 0), resumo(tempos, 1), resumo(tempos, 2));
+	}
+
+	private static String resumo(List<long[]> tempos, int coluna) {
+		List<Long> valores = new ArrayList<>();
+		for (long[] tempo : tempos) {
+			valores.add(tempo[coluna]);
+		}
+		Collections.sort(valores);
+		return String.format("%d (%d-%d)", valores.get(valores.size() / 2), valores.get(0),
+				valores.get(valores.size() - 1));
+	}
+
+}
@@ -0,0 +1,112 @@
+package br.com.caelum.carga;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import br.com.caelum.carga.Cliente.Resposta;
+
+/**
+ * Tipos de requisição do mix de tráfego.
+ */
+public enum Operacao {
+
+	HOME {
+		@Override
+		Resposta executa(Cliente cliente, Catalogo catalogo, Random aleatorio) throws IOException {
+			return cliente.get("/");
+		}
+	},
+
+	DETALHE {
+		@Override
+		Resposta executa(Cliente cliente, Catalogo catalogo, Random aleatorio) throws IOException {
+			return cliente.get("/produto/" + catalogo.produto(aleatorio));
+		}
+	},
+
+	// /loja/{id}; fora do mix padrão, use carga.mix=...,vitrine=20
+	VITRINE {
+		@Override
+		Resposta executa(Cliente cliente, Catalogo catalogo, Random aleatorio) throws IOException {
+			return cliente.get("/loja/" + catalogo.loja(aleatorio));
+		}
+	},
+
+	BUSCA {
+		@Override
+		Resposta executa(Cliente cliente, Catalogo catalogo, Random aleatorio) throws IOException {
+			Map<String, List<String>> parametros = new LinkedHashMap<>();
+			parametros.put("nome", Collections.singletonList(aleatorio.nextBoolean() ? catalogo.termo(aleatorio) : ""));
+			parametros.put("categoriaId", Collections.singletonList(String.valueOf(catalogo.categoria(aleatorio))));
+			parametros.put("lojaId", Collections.singletonList(""));
+			return cliente.post("/produto/buscar", parametros);
+		}
+	},
+
+	/*
+	 * Abre o formulário de edição e grava alterando o preço ou a descrição. Como
+	 * vários usuários editam os mesmos produtos, parte das gravações esbarra no
+	 * lock otimista (versao).
+	 */
+	EDICAO {
+		@Override
+		Resposta executa(Cliente cliente, Catalogo catalogo, Random aleatorio) throws IOException {
+			Resposta formulario = cliente.get("/produto/" + catalogo.produto(aleatorio) + "/form");
+			if (!formulario.isSucesso())
+				return formulario;
+
+			Map<String, List<String>> parametros = campos(formulario.getCorpo());
+			if (aleatorio.nextBoolean()) {
+				parametros.put("preco", Collections.singletonList(String.valueOf(20 + aleatorio.nextInt(80))));
+			} else {
+				String descricao = parametros.containsKey("descricao") ? parametros.get("descricao").get(0) : "";
+				parametros.put("descricao", Collections.singletonList(descricao.replaceAll(" \\[\\d+\\]$", "")
+						+ " [" + aleatorio.nextInt(1000) + "]"));
+			}
+			return cliente.post("/produto/cadastraProduto", parametros);
+		}
+	};
+
+	private static final Pattern INPUT = Pattern.compile("name=\"([\\w.]+)\" value=\"([^\"]*)\"");
+	private static final Pattern DESCRICAO = Pattern.compile("name=\"descricao\"[^>]*>(.*?)</textarea>",
+			Pattern.DOTALL);
+	private static final Pattern LOJA = Pattern.compile("<option value=\"(\\d+)\" selected>");
+	private static final Pattern CATEGORIA = Pattern.compile("name=\"categorias\" value=\"(\\d+)\" checked>");
+
+	abstract Resposta executa(Cliente cliente, Catalogo catalogo, Random aleatorio) throws IOException;
+
+	static Map<String, List<String>> campos(String formulario) {
+		Map<String, List<String>> campos = new LinkedHashMap<>();
+
+		Matcher input = INPUT.matcher(formulario);
+		while (input.find()) {
+			if (!input.group(1).equals("categorias"))
+				campos.put(input.group(1), Collections.singletonList(input.group(2)));
+		}
+
+		Matcher descricao = DESCRICAO.matcher(formulario);
+		if (descricao.find())
+			campos.put("descricao", Collections.singletonList(descricao.group(1)));
+
+		Matcher loja = LOJA.matcher(formulario);
+		if (loja.find())
+			campos.put("loja.id", Collections.singletonList(loja.group(1)));
+
+		List<String> categorias = new ArrayList<>();
+		Matcher categoria = CATEGORIA.matcher(formulario);
+		while (categoria.find()) {
+			categorias.add(categoria.group(1));
+		}
+		campos.put("categorias", categorias);
+
+		return campos;
+	}
+
+}
@@ -0,0 +1,53 @@
+package br.com.caelum.carga;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * Sobe o war do projeto num Tomcat embarcado, na mesma JVM do teste. As
+ * propriedades de sistema (jdbc.url, inicioRapido, ...) valem também para a
+ * aplicação.
+ */
+public class ServidorEmbarcado {
+
+	static final String CONTEXTO = "/projeto-jpa-2";
+
+	private final Tomcat tomcat = new Tomcat();
+	private final int porta;
+
+	public ServidorEmbarcado(int porta) {
+		this.porta = porta;
+	}
+
+	/**
+	 * Só sobe a aplicação, sem teste, até o processo ser encerrado. Aceita os
+	 * mesmos argumentos chave=valor do {@link TesteDeCarga} (carga.war,
+	 * carga.porta, jdbc.url, inicioRapido...); é como o
+	 * {@link MedidorDeInicializacao} mede cada inicialização numa JVM nova.
+	 */
+	public static void main(String[] args) throws Exception {
+		TesteDeCarga.propriedades(args);
+		new ServidorEmbarcado(Integer.getInteger("carga.porta", 8089)).inicia(TesteDeCarga.war());
+		Thread.currentThread().join();
+	}
+
+	public String inicia(File war) throws IOException, LifecycleException {
+		tomcat.setBaseDir(Files.createTempDirectory("carga-tomcat").toString());
+		tomcat.setPort(porta);
+		tomcat.getConnector();
+		tomcat.addWebapp(CONTEXTO, war.getAbsolutePath());
+		tomcat.start();
+
+		return "http://localhost:" + porta + CONTEXTO;
+	}
+
+	public void para() throws LifecycleException {
+		tomcat.stop();
+		tomcat.destroy();
+	}
+
+}
@@ -0,0 +1,393 @@
+package br.com.caelum.carga;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import br.com.caelum.carga.Cliente.Resposta;
+
+/**
+ * Teste de carga do projeto: sobe a aplicação num Tomcat embarcado apontando
+ * para um banco local, dispara um mix configurável de navegação, detalhe,
+ * busca e edição de produtos e, no fim, mostra vazão, latências (p50, p99 e
+ * p99.9), erros e a diferença nas estatísticas do Hibernate durante a rodada.
+ *
+ * Uso (na raiz do projeto, depois de mvn package):
+ *
+ * <pre>
+ * mvn -f carga/pom.xml compile exec:exec -Dcarga="jdbc.url=jdbc:postgresql://localhost:5432/projeto_jpa_carga \
+ *     carga.usuarios=50 carga.duracao=120 carga.mix=home=40,detalhe=35,busca=20,edicao=5"
+ * </pre>
+ *
+ * Cada argumento chave=valor vira uma propriedade de sistema, visível também
+ * para a aplicação (jdbc.url, jdbc.usuario, jdbc.senha, inicioRapido...).
+ *
+ * Propriedades do teste:
+ *
+ * <ul>
+ * <li>carga.url: testa uma aplicação que já está no ar, sem subir o Tomcat</li>
+ * <li>carga.war: war ou diretório explodido (padrão: target/projeto-jpa-2)</li>
+ * <li>carga.porta: porta do Tomcat embarcado (padrão: 8089)</li>
+ * <li>carga.usuarios: usuários simultâneos (padrão: 20)</li>
+ * <li>carga.aquecimento e carga.duracao: em segundos (padrão: 10 e 60)</li>
+ * <li>carga.mix: peso de cada operação (padrão: home=40,detalhe=35,busca=20,edicao=5)</li>
+ * <li>carga.distribuicao: uniforme (padrão) ou zipf, para o sorteio dos produtos</li>
+ * <li>carga.zipf: expoente da distribuição zipf (padrão: 1.0)</li>
+ * <li>carga.novosProdutos: produtos a cadastrar antes da rodada, copiando os
+ * existentes, para o catálogo ser maior que o cache (padrão: 0)</li>
+ * <li>carga.jfr: grava a rodada com o JFR nesse arquivo (veja abaixo)</li>
+ * <li>carga.jfc: perfil com os eventos da aplicação (padrão: carga/jfr/projeto-jpa.jfc)</li>
+ * <li>carga.lentidao: atraso@segundos, deixa o banco lento durante a rodada
+ * (veja abaixo)</li>
+ * </ul>
+ *
+ * Para comparar os provedores do cache de segundo nível, rode o mesmo teste
+ * com cache.provedor=ehcache e cache.provedor=caffeine, num catálogo maior que
+ * a região de produtos. As configurações em carga/cache limitam a região a 200
+ * produtos nos dois provedores:
+ *
+ * <pre>
+ * mvn -f carga/pom.xml compile exec:exec -Dcarga="jdbc.url=... carga.novosProdutos=2000 \
+ *     carga.distribuicao=zipf carga.mix=detalhe=90,busca=10 \
+ *     cache.provedor=caffeine config.file=carga/cache/caffeine-zipf.conf"
+ * mvn -f carga/pom.xml compile exec:exec -Dcarga="jdbc.url=... carga.novosProdutos=2000 \
+ *     carga.distribuicao=zipf carga.mix=detalhe=90,busca=10 \
+ *     cache.provedor=ehcache cache.configuracao=file:carga/cache/ehcache-zipf.xml"
+ * </pre>
+ *
+ * O resumo mostra, por região, acertos e faltas no cache (regiao.*).
+ *
+ * Para saber onde o tempo foi, carga.jfr=arquivo.jfr grava com o JFR só os
+ * segundos medidos, com o perfil default do JDK mais os eventos da aplicação
+ * (carga/jfr/projeto-jpa.jfc, ou outro em carga.jfc), e no fim imprime o
+ * resumo por endpoint do {@link AnalisadorDeGravacao}. Só faz sentido com o
+ * Tomcat embarcado, que roda na mesma JVM do teste.
+ *
+ * Para ver o controle de admissão agindo, suba a aplicação com o simulador de
+ * banco lento (banco.simulador=true) e use carga.lentidao=200@20: depois de 20
+ * segundos medidos cada SQL passa a demorar mais 200 ms. Compare o p99 e a
+ * coluna 503 com admissao.ativa=true e admissao.ativa=false. Os usuários
+ * simulados respeitam o Retry-After das respostas 503.
+ */
+public class TesteDeCarga {
+
+	private final Cliente cliente;
+	private final Map<Operacao, Integer> mix;
+	private final int pesoTotal;
+
+	private volatile boolean medindo;
+	private volatile boolean rodando = true;
+
+	public TesteDeCarga(String base, Map<Operacao, Integer> mix) {
+		this.cliente = new Cliente(base);
+		this.mix = mix;
+		this.pesoTotal = mix.values().stream().mapToInt(Integer::intValue).sum();
+	}
+
+	public static void main(String[] args) throws Exception {
+		propriedades(args);
+
+		Map<Operacao, Integer> mix = mix(System.getProperty("carga.mix", "home=40,detalhe=35,busca=20,edicao=5"));
+		int usuarios = Integer.getInteger("carga.usuarios", 20);
+		int aquecimento = Integer.getInteger("carga.aquecimento", 10);
+		int duracao = Integer.getInteger("carga.duracao", 60);
+
+		ServidorEmbarcado servidor = null;
+		String base = System.getProperty("carga.url");
+		if (base == null) {
+			servidor = new ServidorEmbarcado(Integer.getInteger("carga.porta", 8089));
+			base = servidor.inicia(war());
+		}
+
+		try {
+			TesteDeCarga teste = new TesteDeCarga(base, mix);
+			teste.aguardaProntidao(TimeUnit.MINUTES.toMillis(2));
+			teste.cadastraProdutos(Integer.getInteger("carga.novosProdutos", 0));
+			teste.roda(usuarios, aquecimento, duracao);
+		} finally {
+			if (servidor != null)
+				servidor.para();
+		}
+	}
+
+	private void aguardaProntidao(long tempoMaximo) throws InterruptedException {
+		long limite = System.currentTimeMillis() + tempoMaximo;
+		while (System.currentTimeMillis() < limite) {
+			try {
+				if (cliente.get("/pronto").getStatus() == 200)
+					return;
+			} catch (IOException e) {
+				// ainda subindo
+			}
+			Thread.sleep(500);
+		}
+		throw new IllegalStateException("A aplicacao nao ficou pronta a tempo");
+	}
+
+	/*
+	 * Cadastra cópias dos produtos existentes, sem id nem versão, com o nome
+	 * numerado. Como o cadastro redireciona para a página inicial, os ids novos
+	 * são lidos depois, no Catalogo.
+	 */
+	private void cadastraProdutos(int quantidade) throws IOException {
+		if (quantidade <= 0)
+			return;
+
+		Catalogo catalogo = Catalogo.le(cliente);
+		Random aleatorio = new Random(0);
+		for (int i = 1; i <= quantidade; i++) {
+			Resposta formulario = cliente.get("/produto/" + catalogo.produto(aleatorio) + "/form");
+			Map<String, List<String>> campos = Operacao.campos(formulario.getCorpo());
+			campos.remove("id");
+			campos.remove("versao");
+			String nome = campos.containsKey("nome") ? campos.get("nome").get(0) : "Produto";
+			campos.put("nome", Collections.singletonList(nome.replaceAll(" #\\d+$", "") + " #" + i));
+
+			Resposta cadastro = cliente.post("/produto/cadastraProduto", campos);
+			if (cadastro.getStatus() / 100 != 3)
+				throw new IllegalStateException("Falha ao cadastrar produto: HTTP " + cadastro.getStatus());
+		}
+		System.out.printf("%d produtos cadastrados%n", quantidade);
+	}
+
+	public void roda(int usuarios, int aquecimento, int duracao) throws Exception {
+		Catalogo catalogo = Catalogo.le(cliente);
+		System.out.printf("Catalogo: %d produtos (%s). %d usuarios, %ds de aquecimento, %ds medidos, mix %s%n",
+				catalogo.getQuantidadeDeProdutos(), catalogo.getDistribuicao(), usuarios, aquecimento, duracao, mix);
+
+		ExecutorService executor = Executors.newFixedThreadPool(usuarios);
+		List<Future<Map<Operacao, Medicoes>>> resultados = new ArrayList<>();
+		for (int i = 0; i < usuarios; i++) {
+			long semente = i;
+			resultados.add(executor.submit(() -> usuario(catalogo, new Random(semente))));
+		}
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(aquecimento));
+		Properties antes = estatisticas();
+		Recording gravacao = iniciaGravacao();
+		medindo = true;
+		long inicio = System.nanoTime();
+
+		String lentidao = System.getProperty("carga.lentidao");
+		if (lentidao != null) {
+			String[] partes = lentidao.split("@");
+			long depoisDe = Math.min(duracao, Long.parseLong(partes[1].trim()));
+			Thread.sleep(TimeUnit.SECONDS.toMillis(depoisDe));
+			atrasaBanco(Long.parseLong(partes[0].trim()));
+			Thread.sleep(TimeUnit.SECONDS.toMillis(duracao - depoisDe));
+		} else {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(duracao));
+		}
+		medindo = false;
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+		if (gravacao != null)
+			gravacao.stop();
+		Properties depois = estatisticas();
+		rodando = false;
+		if (lentidao != null)
+			atrasaBanco(0);
+
+		Map<Operacao, Medicoes> total = new EnumMap<>(Operacao.class);
+		for (Future<Map<Operacao, Medicoes>> resultado : resultados) {
+			for (Map.Entry<Operacao, Medicoes> medicoes : resultado.get().entrySet()) {
+				total.computeIfAbsent(medicoes.getKey(), operacao -> new Medicoes()).soma(medicoes.getValue());
+			}
+		}
+		executor.shutdown();
+
+		relatorio(total, segundos);
+		diferenca(antes, depois);
+		if (gravacao != null)
+			analisa(gravacao);
+	}
+
+	private void atrasaBanco(long atraso) throws IOException {
+		Resposta resposta = cliente.post("/estatisticas/banco-lento?atraso=" + atraso, Collections.emptyMap());
+		if (!resposta.isSucesso())
+			throw new IllegalStateException(
+					"Simulador de banco lento indisponivel (suba com banco.simulador=true): HTTP " + resposta.getStatus());
+		System.out.printf("Banco com %d ms a mais por SQL%n", atraso);
+	}
+
+	private static Recording iniciaGravacao() throws IOException, ParseException {
+		String arquivo = System.getProperty("carga.jfr");
+		if (arquivo == null)
+			return null;
+		if (System.getProperty("carga.url") != null) {
+			System.out.println("carga.jfr ignorado: a aplicacao nao esta nesta JVM (carga.url)");
+			return null;
+		}
+
+		Map<String, String> configuracao = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+		configuracao.putAll(Configuration.create(perfil()).getSettings());
+
+		Recording gravacao = new Recording(configuracao);
+		gravacao.setName("carga");
+		gravacao.setDestination(Paths.get(arquivo));
+		gravacao.start();
+		return gravacao;
+	}
+
+	private static void analisa(Recording gravacao) throws IOException {
+		Path arquivo = gravacao.getDestination();
+		gravacao.close();
+		System.out.printf("%nGravacao do JFR: %s%n", arquivo);
+
+		AnalisadorDeGravacao analisador = new AnalisadorDeGravacao();
+		analisador.le(arquivo);
+		analisador.imprime(System.out);
+	}
+
+	private static Path perfil() {
+		String configurado = System.getProperty("carga.jfc");
+		if (configurado != null)
+			return Paths.get(configurado);
+
+		for (String candidato : new String[] { "carga/jfr/projeto-jpa.jfc", "jfr/projeto-jpa.jfc" }) {
+			if (new File(candidato).exists())
+				return Paths.get(candidato);
+		}
+		throw new IllegalStateException("Perfil do JFR nao encontrado: informe -Dcarga.jfc");
+	}
+
+	private Map<Operacao, Medicoes> usuario(Catalogo catalogo, Random aleatorio) {
+		Map<Operacao, Medicoes> medicoes = new EnumMap<>(Operacao.class);
+		for (Operacao operacao : mix.keySet()) {
+			medicoes.put(operacao, new Medicoes());
+		}
+
+		while (rodando) {
+			Operacao operacao = sorteia(aleatorio);
+			boolean contabiliza = medindo;
+			long inicio = System.nanoTime();
+			try {
+				Resposta resposta = operacao.executa(cliente, catalogo, aleatorio);
+				long duracao = System.nanoTime() - inicio;
+				if (resposta.isRecusada()) {
+					if (contabiliza)
+						medicoes.get(operacao).recusada();
+					espera(resposta.getRetryAfter());
+					continue;
+				}
+				if (!contabiliza)
+					continue;
+
+				medicoes.get(operacao).registra(duracao);
+				if (!resposta.isSucesso())
+					medicoes.get(operacao).erro();
+				else if (operacao == Operacao.EDICAO && resposta.getStatus() == 200)
+					medicoes.get(operacao).rejeitada();
+			} catch (IOException e) {
+				if (contabiliza)
+					medicoes.get(operacao).erro();
+			}
+		}
+		return medicoes;
+	}
+
+	// como um navegador educado: tenta de novo depois do Retry-After
+	private void espera(int segundos) {
+		if (segundos <= 0)
+			return;
+		try {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(segundos));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Operacao sorteia(Random aleatorio) {
+		int sorteado = aleatorio.nextInt(pesoTotal);
+		for (Map.Entry<Operacao, Integer> peso : mix.entrySet()) {
+			sorteado -= peso.getValue();
+			if (sorteado < 0)
+				return peso.getKey();
+		}
+		throw new IllegalStateException();
+	}
+
+	private void relatorio(Map<Operacao, Medicoes> total, double segundos) {
+		System.out.printf("%n%-10s %10s %10s %10s %10s %10s %8s %10s %8s%n", "operacao", "req/s", "p50 ms", "p99 ms",
+				"p99.9 ms", "total", "erros", "rejeitadas", "503");
+
+		Medicoes geral = new Medicoes();
+		for (Map.Entry<Operacao, Medicoes> operacao : total.entrySet()) {
+			linha(operacao.getKey().name().toLowerCase(), operacao.getValue(), segundos);
+			geral.soma(operacao.getValue());
+		}
+		linha("todas", geral, segundos);
+	}
+
+	private void linha(String nome, Medicoes medicoes, double segundos) {
+		System.out.printf("%-10s %10.1f %10.2f %10.2f %10.2f %10d %8d %10d %8d%n", nome,
+				medicoes.getQuantidade() / segundos, medicoes.percentil(0.5), medicoes.percentil(0.99),
+				medicoes.percentil(0.999), medicoes.getQuantidade(), medicoes.getErros(), medicoes.getRejeitadas(),
+				medicoes.getRecusadas());
+	}
+
+	private void diferenca(Properties antes, Properties depois) {
+		System.out.printf("%nEstatisticas do Hibernate durante a rodada:%n");
+		for (String chave : new TreeSet<>(depois.stringPropertyNames())) {
+			long delta = Long.parseLong(depois.getProperty(chave)) - Long.parseLong(antes.getProperty(chave, "0"));
+			System.out.printf("  %-32s %12d%n", chave, delta);
+		}
+	}
+
+	private Properties estatisticas() throws IOException {
+		Properties estatisticas = new Properties();
+		estatisticas.load(new StringReader(cliente.get("/estatisticas/resumo").getCorpo()));
+		return estatisticas;
+	}
+
+	private static Map<Operacao, Integer> mix(String definicao) {
+		Map<Operacao, Integer> mix = new EnumMap<>(Operacao.class);
+		for (String item : definicao.split(",")) {
+			String[] partes = item.trim().split("=");
+			int peso = Integer.parseInt(partes[1].trim());
+			if (peso > 0)
+				mix.put(Operacao.valueOf(partes[0].trim().toUpperCase()), peso);
+		}
+		return mix;
+	}
+
+	// cada argumento chave=valor vira uma propriedade de sistema
+	static void propriedades(String[] args) {
+		for (String argumento : args) {
+			int igual = argumento.indexOf('=');
+			if (igual > 0)
+				System.setProperty(argumento.substring(0, igual), argumento.substring(igual + 1));
+		}
+	}
+
+	static File war() {
+		String configurado = System.getProperty("carga.war");
+		if (configurado != null)
+			return new File(configurado);
+
+		for (String candidato : new String[] { "target/projeto-jpa-2", "../target/projeto-jpa-2" }) {
+			if (new File(candidato).exists())
+				return new File(candidato);
+		}
+		throw new IllegalStateException("War nao encontrado: rode mvn package na raiz ou informe -Dcarga.war");
+	}
+
+}
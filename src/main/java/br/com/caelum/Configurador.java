@@ -2,25 +2,31 @@ package br.com.caelum;
 
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
-import org.springframework.context.support.ReloadableResourceBundleMessageSource;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.env.Environment;
 import org.springframework.format.FormatterRegistry;
 import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 
-import br.com.caelum.dao.CategoriaDao;
-import br.com.caelum.dao.LojaDao;
+import br.com.caelum.admissao.ControleDeAdmissao;
 import br.com.caelum.dao.ProdutoDao;
+import br.com.caelum.jfr.EventosDaRequisicao;
 import br.com.caelum.model.Categoria;
 import br.com.caelum.model.Loja;
 import br.com.caelum.model.Produto;
@@ -35,6 +41,7 @@ import br.com.caelum.model.Produto;
 @EnableWebMvc
 @ComponentScan("br.com.caelum")
 @EnableTransactionManagement
+@EnableScheduling
 public class Configurador extends WebMvcConfigurerAdapter {
 
 	@Bean
@@ -45,27 +52,38 @@ public class Configurador extends WebMvcConfigurerAdapter {
 		return produtos;
 	}
 
+	@Autowired
+	private Prontidao prontidao;
+
+	@Autowired
+	private ControleDeAdmissao controleDeAdmissao;
+
+	/*
+	 * As listas de referncia (usadas no menu de busca e no formulrio) so
+	 * singletons sem consulta por requisio: ficam em ListasDeReferencia, que as
+	 * rel quando a carga inicial termina.
+	 */
 	@Bean
-	public List<Categoria> categorias(CategoriaDao categoriaDao) {
-		List<Categoria> categorias = categoriaDao.getCategorias();
+	public List<Categoria> categorias(ListasDeReferencia listas) {
+		List<Categoria> categorias = listas.getCategorias();
 
 		return categorias;
 	}
 
 	@Bean
-	public List<Loja> lojas(LojaDao lojaDao) {
-		List<Loja> lojas = lojaDao.getLojas();
+	public List<Loja> lojas(ListasDeReferencia listas) {
+		List<Loja> lojas = listas.getLojas();
 
 		return lojas;
 	}
 
+	/*
+	 * As mensagens so lidas uma vez e relidas s quando o arquivo muda (veja
+	 * MessageSourceObservado), sem conferir o arquivo a cada segundo.
+	 */
 	@Bean
 	public MessageSource messageSource() {
-		ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
-
-		messageSource.setBasename("/WEB-INF/messages");
-		messageSource.setCacheSeconds(1);
-		messageSource.setDefaultEncoding("ISO-8859-1");
+		MessageSourceObservado messageSource = new MessageSourceObservado("/WEB-INF/messages");
 
 		return messageSource;
 
@@ -98,9 +116,13 @@ public class Configurador extends WebMvcConfigurerAdapter {
 		});
 	}
 
+	@Autowired
+	private Environment environment;
+
+	// nas requisies GET o EntityManager  aberto somente para leitura
 	@Bean
 	public OpenEntityManagerInViewInterceptor getOpenEntityManagerInViewInterceptor() {
-		return new OpenEntityManagerInViewInterceptor();
+		return new LeituraNoGetInterceptor(environment.getProperty("leituraNoGet", Boolean.class, true));
 	}
 
 	/*
@@ -133,7 +155,32 @@ public class Configurador extends WebMvcConfigurerAdapter {
 	 */
 	@Override
 	public void addInterceptors(InterceptorRegistry registry) {
-		registry.addWebRequestInterceptor(getOpenEntityManagerInViewInterceptor());
+		// eventos do JFR por requisio, antes de todos para medir a requisio inteira
+		registry.addInterceptor(new EventosDaRequisicao());
+
+		/*
+		 * Recusa com 503 quando o banco est lento, antes de abrir o EntityManager.
+		 * Sugestes e preos respondem da memria e ficam de fora, assim como as
+		 * estatsticas, que precisam responder justamente nessa hora.
+		 */
+		registry.addInterceptor(controleDeAdmissao).excludePathPatterns("/produto/sugestoes", "/precos/**",
+				"/estatisticas/**", "/pronto");
+
+		/*
+		 * As sugestes da busca e os preos respondem da memria, e a exportao
+		 * usa JDBC direto: nenhuma delas precisa de EntityManager.
+		 */
+		registry.addWebRequestInterceptor(getOpenEntityManagerInViewInterceptor())
+				.excludePathPatterns("/produto/sugestoes", "/precos/**", "/exportacao/**");
+
+		// mede o tempo at a primeira requisio de verdade (fora a sonda de prontido)
+		registry.addInterceptor(new HandlerInterceptorAdapter() {
+			@Override
+			public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+					Exception ex) {
+				prontidao.registraRequisicao();
+			}
+		}).excludePathPatterns("/pronto");
 	}
 
 }
@@ -1,16 +1,21 @@
 package br.com.caelum;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import br.com.caelum.dao.ProdutoDao;
 import br.com.caelum.model.Categoria;
 import br.com.caelum.model.Loja;
 import br.com.caelum.model.Produto;
@@ -24,8 +29,69 @@ public class CriadorDeProdutos {
 	@Autowired
 	private JpaTransactionManager transactionManager;
 
+	@Autowired
+	private Prontidao prontidao;
+
+	// os produtos passam pelo dao para os índices em memória ficarem sabendo deles
+	@Autowired
+	private ProdutoDao produtoDao;
+
+	@Autowired
+	private ListasDeReferencia listas;
+
+	private final AtomicBoolean iniciado = new AtomicBoolean();
+
 	@PostConstruct
 	public void init() {
+		if (prontidao.isInicioRapido())
+			return;
+
+		cadastra();
+	}
+
+	/*
+	 * No início rápido a carga sai do caminho crítico: roda numa thread separada
+	 * depois que o contexto sobe e só quando o banco (que agora não é recriado a
+	 * cada inicialização) ainda está vazio. A aplicação fica pronta assim que o
+	 * banco responde, antes da carga e das listas de referência, que chegam logo
+	 * depois. O evento chega uma vez para o contexto raiz e outra para o do
+	 * DispatcherServlet, por isso o AtomicBoolean.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public void aposSubirOContexto() {
+		if (!iniciado.compareAndSet(false, true))
+			return;
+
+		if (!prontidao.isInicioRapido()) {
+			listas.carrega();
+			prontidao.marcaPronto();
+			return;
+		}
+
+		Thread carga = new Thread(() -> {
+			// espera o EntityManagerFactory, que sobe na sua própria thread
+			boolean vazio = bancoVazio();
+			prontidao.marcaPronto();
+			try {
+				if (vazio)
+					cadastra();
+			} finally {
+				listas.carrega();
+			}
+		}, "carga-inicial");
+		carga.setDaemon(true);
+		carga.start();
+	}
+
+	private boolean bancoVazio() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		Long produtos = template.execute(
+				status -> em.createQuery("select count(p) from Produto p", Long.class).getSingleResult());
+		return produtos == 0;
+	}
+
+	private void cadastra() {
 		TransactionTemplate template = new TransactionTemplate(transactionManager);
 		template.execute(new TransactionCallbackWithoutResult() {
 			@Override
@@ -65,7 +131,7 @@ public class CriadorDeProdutos {
 				livroSpringFramework.setLinkDaFoto(
 						"http://cdn.shopify.com/s/files/1/0155/7645/products/spring-framework-featured_large.png?v=1411567960");
 
-				em.persist(livroSpringFramework);
+				produtoDao.insere(livroSpringFramework);
 			}
 
 			private void cadastrarLivro2(Loja modelViewController, Categoria mvc) {
@@ -83,7 +149,7 @@ public class CriadorDeProdutos {
 				livroSpringMVC.setLinkDaFoto(
 						"https://cdn.shopify.com/s/files/1/0155/7645/products/spring-mvc-featured_large.png?v=1411567960");
 
-				em.persist(livroSpringMVC);
+				produtoDao.insere(livroSpringMVC);
 			}
 
 			private void cadastrarLivro1(Loja casaDoCodigo, Categoria tecnologia) {
@@ -102,7 +168,7 @@ public class CriadorDeProdutos {
 				livroSpringBoot.setLinkDaFoto(
 						"https://cdn.shopify.com/s/files/1/0155/7645/products/7aXPAWM4TObeQ4OOv3mUY-mrVzqf23Ty6enIslrhXvM_large.jpg?v=1501874081");
 
-				em.persist(livroSpringBoot);
+				produtoDao.insere(livroSpringBoot);
 			}
 		});
 	}
@@ -8,8 +8,15 @@ import javax.sql.DataSource;
 
 import org.hibernate.SessionFactory;
 import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
@@ -17,10 +24,22 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
+import br.com.caelum.consultas.BancoLento;
+import br.com.caelum.consultas.DataSourceMonitorado;
+import br.com.caelum.consultas.MonitorDeConsultas;
+import br.com.caelum.jfr.EstatisticasComEventos;
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.Loja;
+import br.com.caelum.model.Produto;
+import br.com.caelum.model.VisualizacaoProduto;
+
 @Configuration
 @EnableTransactionManagement
 public class JpaConfigurator {
 
+	@Autowired
+	private Environment environment;
+
 	/*
 	 * Estamos usando o atributo destroyMethod na anotao @Bean. Esse atributo
 	 * define o mtodo (close) do Pool que o Spring chama quando o Tomcat 
@@ -45,9 +64,29 @@ public class JpaConfigurator {
 		ComboPooledDataSource dataSource = new ComboPooledDataSource();
 
 		dataSource.setDriverClass("org.postgresql.Driver");
-		dataSource.setJdbcUrl("jdbc:postgresql://localhost:5432/projeto_jpa");
-		dataSource.setUser("usuarioteste");
-		dataSource.setPassword("teste123");
+		/*
+		 * Os dados de conexo podem ser trocados pelas propriedades de sistema
+		 * jdbc.url, jdbc.usuario e jdbc.senha, por exemplo para apontar o teste de
+		 * carga para um banco local descartvel.
+		 */
+		dataSource.setJdbcUrl(environment.getProperty("jdbc.url", "jdbc:postgresql://localhost:5432/projeto_jpa"));
+
+		/*
+		 * prepareThreshold=1 faz o driver do PostgreSQL preparar o statement no
+		 * servidor j na primeira execuo, em vez de esperar cinco. Como o pool
+		 * guarda os PreparedStatements (abaixo), o plano preparado no servidor 
+		 * reaproveitado nas prximas buscas pela mesma conexo.
+		 *
+		 * Vai como propriedade do driver, e no na URL, para valer tambm quando
+		 * jdbc.url  trocada. Tem que vir antes de setUser e setPassword, que so
+		 * guardados nas mesmas propriedades.
+		 */
+		Properties propriedadesDoDriver = new Properties();
+		propriedadesDoDriver.setProperty("prepareThreshold", "1");
+		dataSource.setProperties(propriedadesDoDriver);
+
+		dataSource.setUser(environment.getProperty("jdbc.usuario", "usuarioteste"));
+		dataSource.setPassword(environment.getProperty("jdbc.senha", "teste123"));
 
 		/*
 		 * Quando todas as conexes em MinPoolSize estiverem em uso, o C3PO criar novas
@@ -73,23 +112,80 @@ public class JpaConfigurator {
 		 */
 		dataSource.setIdleConnectionTestPeriod(60);
 
+		/*
+		 * Cache de PreparedStatements por conexo. Sem ele, cada execuo prepara o
+		 * statement de novo, mesmo sendo o mesmo SQL. As buscas do ProdutoDao geram
+		 * no mximo 8 SQLs diferentes, alm dos finds e inserts, ento 50 por conexo
+		 *  mais que suficiente.
+		 */
+		dataSource.setMaxStatementsPerConnection(50);
+
 		return dataSource;
 	}
 
+	/*
+	 * Lista fixa das entidades. Evita varrer o classpath de br.com.caelum a cada
+	 * inicializao; ao criar uma nova entidade, lembre de inclu-la aqui.
+	 */
+	static final Class<?>[] ENTIDADES = { Produto.class, Categoria.class, Loja.class, VisualizacaoProduto.class };
+
 	@Bean
-	public LocalContainerEntityManagerFactoryBean getEntityManagerFactory(DataSource dataSource) {
+	public LocalContainerEntityManagerFactoryBean getEntityManagerFactory(DataSource dataSource,
+			Prontidao prontidao, MonitorDeConsultas monitorDeConsultas, BancoLento bancoLento) {
 		LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
 
-		entityManagerFactory.setPackagesToScan("br.com.caelum");
-		entityManagerFactory.setDataSource(dataSource);
+		// nenhum pacote para varrer: as entidades vm da lista acima
+		entityManagerFactory.setPackagesToScan();
+		entityManagerFactory.setPersistenceUnitPostProcessors(unidade -> {
+			for (Class<?> entidade : ENTIDADES) {
+				unidade.addManagedClassName(entidade.getName());
+			}
+			unidade.setExcludeUnlistedClasses(true);
+		});
+		// cada SQL do Hibernate  cronometrado (veja MonitorDeConsultas); o banco lento, s no simulador
+		entityManagerFactory.setDataSource(new DataSourceMonitorado(dataSource, monitorDeConsultas,
+				bancoLento.isAtivo() ? bancoLento : null));
 
 		entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
 
+		/*
+		 * No incio rpido o Hibernate sobe numa thread prpria, em paralelo com o
+		 * restante do contexto do Spring. Quem usar o EntityManagerFactory antes
+		 * dele ficar pronto simplesmente espera.
+		 *
+		 * Na mesma thread, antes do Hibernate validar o schema, o schema.sql cria as
+		 * tabelas que ainda no existirem (banco novo ou entidade nova).
+		 */
+		if (prontidao.isInicioRapido()) {
+			entityManagerFactory.setBootstrapExecutor(new SimpleAsyncTaskExecutor("jpa-bootstrap-") {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void doExecute(Runnable inicializacao) {
+					super.doExecute(() -> {
+						DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")),
+								dataSource);
+						inicializacao.run();
+					});
+				}
+			});
+		}
+
 		Properties props = new Properties();
 
 		props.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
-		props.setProperty("hibernate.show_sql", "true");
-		props.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+		/*
+		 * Sem show_sql: imprimir cada SQL no stdout, na thread da requisio, custa
+		 * caro e no mostra tempos. Os SQLs lentos vo para o log pelo
+		 * MonitorDeConsultas; -Dsql.mostra=true volta a imprimir todos.
+		 */
+		props.setProperty("hibernate.show_sql", environment.getProperty("sql.mostra", "false"));
+
+		/*
+		 * create-drop recria o schema a cada inicializao. No incio rpido o schema
+		 * vem do schema.sql (acima) e apenas conferimos se ele bate com as entidades.
+		 */
+		props.setProperty("hibernate.hbm2ddl.auto", prontidao.isInicioRapido() ? "validate" : "create-drop");
 
 		/*
 		 * O que precisamos  de um espao de "cache" que seja compartilhado entre os
@@ -123,8 +219,7 @@ public class JpaConfigurator {
 		 * Acessar a classe Produto e procurar a anotao @Cache para entender as outras
 		 * configuraes.
 		 */
-		props.setProperty("hibernate.cache.region.factory_class",
-				"org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+		configuraProvedorDeCache(props);
 
 		/*
 		 * Permitindo fazer cache das queries criadas por ns (ex.: busca de produto por
@@ -151,11 +246,50 @@ public class JpaConfigurator {
 		 */
 		props.setProperty("hibernate.generate_statistics", "true");
 
+		/*
+		 * As mesmas estatsticas, gerando tambm um evento do JFR a cada acerto ou
+		 * falha no cache (veja br.com.caelum.jfr).
+		 */
+		props.setProperty("hibernate.stats.factory", EstatisticasComEventos.Fabrica.class.getName());
+
 		entityManagerFactory.setJpaProperties(props);
 		return entityManagerFactory;
 	}
 
+	/*
+	 * O provedor do cache de segundo nvel  escolhido pela propriedade de sistema
+	 * cache.provedor:
+	 * 
+	 * ehcache (padro): EhCache 2.x, configurado por regio em /ehcache.xml (ou no
+	 * recurso/URL informado em cache.configuracao).
+	 * 
+	 * caffeine: JCache com o Caffeine, que usa o W-TinyLFU para decidir quem sai
+	 * do cache e costuma acertar mais quando poucos produtos concentram a maior
+	 * parte dos acessos. Configurado por regio em application.conf; para usar
+	 * outro arquivo, -Dconfig.file=/caminho/arquivo.conf.
+	 * 
+	 * Nos dois arquivos as regies tm o nome da entidade ou coleo (ex.:
+	 * br.com.caelum.model.Produto.categorias), com tamanho, expirao e
+	 * estatsticas prprios.
+	 */
+	private void configuraProvedorDeCache(Properties props) {
+		if ("caffeine".equals(environment.getProperty("cache.provedor"))) {
+			props.setProperty("hibernate.cache.region.factory_class", "org.hibernate.cache.jcache.JCacheRegionFactory");
+			props.setProperty("hibernate.javax.cache.provider",
+					"com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider");
+			// regies que no estiverem no application.conf usam a configurao default
+			props.setProperty("hibernate.javax.cache.missing_cache_strategy", "create");
+			return;
+		}
+
+		props.setProperty("hibernate.cache.region.factory_class",
+				"org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+		props.setProperty("net.sf.ehcache.configurationResourceName",
+				environment.getProperty("cache.configuracao", "/ehcache.xml"));
+	}
+
 	@Bean
+	@Lazy
 	public Statistics statistics(EntityManagerFactory emf) {
 		return emf.unwrap(SessionFactory.class).getStatistics();
 	}
@@ -0,0 +1,67 @@
+package br.com.caelum;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.springframework.http.HttpMethod;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * OpenEntityManagerInView que abre o EntityManager somente para leitura nas
+ * requisições GET (e HEAD).
+ *
+ * Com a sessão do Hibernate em defaultReadOnly as entidades carregadas não
+ * guardam a cópia do estado usada para descobrir o que mudou, e com
+ * FlushMode.MANUAL o Hibernate não verifica alterações antes de cada query.
+ * Gravar nesse modo é erro (veja ProdutoDao.insere): as alterações seriam
+ * ignoradas em silêncio.
+ *
+ * As listagens já pedem org.hibernate.readOnly na própria query (inclusive as
+ * que vêm do cache de consultas), então o que sobra para a sessão cobrir são
+ * as entidades do em.find e do multiLoad, que não aceitam a dica: no detalhe,
+ * o produto, os relacionados e as lojas deles. São poucas cópias por
+ * requisição; a alocação é quase toda da renderização da JSP.
+ *
+ * Pode ser desligado com a propriedade de sistema leituraNoGet=false, para
+ * comparar.
+ */
+public class LeituraNoGetInterceptor extends OpenEntityManagerInViewInterceptor {
+
+	private final boolean ativo;
+
+	public LeituraNoGetInterceptor(boolean ativo) {
+		this.ativo = ativo;
+	}
+
+	@Override
+	public void preHandle(WebRequest request) {
+		super.preHandle(request);
+
+		if (!ativo || !somenteLeitura(request))
+			return;
+
+		EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager
+				.getResource(obtainEntityManagerFactory());
+		if (holder == null)
+			return;
+
+		EntityManager em = holder.getEntityManager();
+		Session session = em.unwrap(Session.class);
+		session.setDefaultReadOnly(true);
+		session.setHibernateFlushMode(FlushMode.MANUAL);
+	}
+
+	private boolean somenteLeitura(WebRequest request) {
+		if (!(request instanceof ServletWebRequest))
+			return false;
+
+		HttpMethod metodo = ((ServletWebRequest) request).getHttpMethod();
+		return metodo == HttpMethod.GET || metodo == HttpMethod.HEAD;
+	}
+
+}
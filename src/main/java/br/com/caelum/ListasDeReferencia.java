@@ -0,0 +1,90 @@
+package br.com.caelum;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.dao.CategoriaDao;
+import br.com.caelum.dao.LojaDao;
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.Loja;
+
+/**
+ * As categorias e lojas do menu de busca e do formulário de produto, lidas do
+ * banco uma vez e guardadas em memória.
+ *
+ * Os beans categorias e lojas do {@link Configurador} são estas listas, então
+ * continuam singletons e as páginas não consultam nada por elas. Só a carga
+ * inicial ({@link CriadorDeProdutos}) grava categorias e lojas, e ela chama
+ * {@link #carrega()} ao terminar. No início rápido isso acontece depois de a
+ * aplicação ficar pronta, e até lá as listas estão vazias.
+ */
+@Component
+public class ListasDeReferencia {
+
+	@Autowired
+	private CategoriaDao categoriaDao;
+
+	@Autowired
+	private LojaDao lojaDao;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	private final Lista<Categoria> categorias = new Lista<>();
+	private final Lista<Loja> lojas = new Lista<>();
+
+	public void carrega() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		template.execute(status -> {
+			categorias.troca(categoriaDao.getCategorias());
+			lojas.troca(lojaDao.getLojas());
+			return null;
+		});
+	}
+
+	public List<Categoria> getCategorias() {
+		return categorias;
+	}
+
+	public List<Loja> getLojas() {
+		return lojas;
+	}
+
+	/*
+	 * Só leitura, sempre com o resultado da última carga. O iterador é de uma
+	 * carga só, mesmo que outra termine no meio do forEach da página.
+	 */
+	private static class Lista<T> extends AbstractList<T> {
+
+		private volatile List<T> itens = Collections.emptyList();
+
+		void troca(List<T> novos) {
+			itens = Collections.unmodifiableList(new ArrayList<>(novos));
+		}
+
+		@Override
+		public T get(int indice) {
+			return itens.get(indice);
+		}
+
+		@Override
+		public int size() {
+			return itens.size();
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return itens.iterator();
+		}
+	}
+
+}
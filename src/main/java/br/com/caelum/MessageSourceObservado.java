@@ -0,0 +1,302 @@
+package br.com.caelum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.context.support.AbstractMessageSource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternUtils;
+
+/**
+ * MessageSource que lê os .properties uma vez só e os relê quando o arquivo
+ * muda, avisado por um WatchService, em vez de conferir a data do arquivo a
+ * cada segundo como o ReloadableResourceBundleMessageSource com
+ * cacheSeconds=1.
+ *
+ * Cada carga monta um {@link Pacote} imutável, com os textos e os
+ * MessageFormat já compilados, que substitui o anterior de uma vez (um campo
+ * volatile). Resolver uma mensagem é ler esse campo e consultar dois mapas:
+ * sem travas e sem criar objetos, mesmo quando o código não existe, o que é o
+ * caso da maioria dos códigos que o Spring tenta para um erro de validação
+ * (Min.produto.preco, Min.preco, ...). Só a formatação com argumentos
+ * sincroniza no MessageFormat, como em qualquer AbstractMessageSource.
+ *
+ * Como antes, os arquivos são ISO-8859-1 e messages_pt_BR.properties,
+ * messages_pt.properties etc. têm precedência sobre messages.properties. Há
+ * uma tabela por arquivo, não por idioma: pt_BR, pt_PT e en_US caem todos em
+ * messages.properties enquanto só ele existir. Os argumentos são formatados
+ * no idioma do arquivo (o da JVM para messages.properties).
+ * Se o war não estiver expandido não há arquivo para observar, e as
+ * mensagens ficam as da subida.
+ */
+public class MessageSourceObservado extends AbstractMessageSource implements ResourceLoaderAware {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MessageSourceObservado.class);
+
+	// editores costumam gravar em mais de um passo: esperamos os eventos pararem
+	private static final long ESPERA_ENTRE_EVENTOS = 200;
+
+	// idiomas pedidos pelos navegadores que guardamos já ligados à sua tabela
+	private static final int IDIOMAS = 32;
+
+	private final String basename;
+	private ResourceLoader resourceLoader;
+
+	private volatile Pacote pacote;
+	private final AtomicLong recargas = new AtomicLong();
+
+	// null se o war não estiver expandido
+	private Path diretorio;
+	private WatchService observador;
+
+	public MessageSourceObservado(String basename) {
+		this.basename = basename;
+	}
+
+	@Override
+	public void setResourceLoader(ResourceLoader resourceLoader) {
+		this.resourceLoader = resourceLoader;
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		Resource padrao = resourceLoader.getResource(basename + ".properties");
+		if (padrao.isFile())
+			diretorio = padrao.getFile().toPath().getParent();
+		else
+			LOG.info("{} não está num diretório (war não expandido?): mensagens sem recarga", basename);
+
+		pacote = carrega();
+		if (diretorio != null)
+			observa();
+	}
+
+	// a thread de recarga sai com o WatchService fechado
+	@PreDestroy
+	public void encerra() throws IOException {
+		if (observador != null)
+			observador.close();
+	}
+
+	@Override
+	protected String resolveCodeWithoutArguments(String code, Locale locale) {
+		return pacote.tabela(locale).textos.get(code);
+	}
+
+	@Override
+	protected MessageFormat resolveCode(String code, Locale locale) {
+		return pacote.tabela(locale).formatos.get(code);
+	}
+
+	public long getRecargas() {
+		return recargas.get();
+	}
+
+	/*
+	 * Os arquivos de todos os idiomas que existem, do sufixo (_pt_BR, ou vazio
+	 * para o padrão) para o conteúdo. Um padrão inválido de MessageFormat
+	 * derruba a carga inteira: na subida é erro, numa recarga continuamos com as
+	 * mensagens anteriores.
+	 */
+	private Pacote carrega() throws IOException {
+		Map<String, Properties> arquivos = new HashMap<>();
+		for (Resource arquivo : arquivos()) {
+			String nome = arquivo.getFilename();
+			String sufixo = nome.substring(prefixo().length(), nome.length() - ".properties".length());
+			if (!sufixo.isEmpty() && !sufixo.startsWith("_"))
+				continue;
+
+			Properties mensagens = new Properties();
+			try (InputStream entrada = arquivo.getInputStream()) {
+				mensagens.load(entrada);
+			}
+			arquivos.put(sufixo, mensagens);
+		}
+
+		Pacote novo = new Pacote(arquivos);
+		novo.tabela(Locale.getDefault());
+		return novo;
+	}
+
+	/*
+	 * Com o war expandido lemos direto do diretório: pelo ServletContext o Tomcat
+	 * guarda o conteúdo dos recursos em cache por alguns segundos, e a recarga
+	 * leria o arquivo antigo.
+	 */
+	private List<Resource> arquivos() throws IOException {
+		if (diretorio == null)
+			return Arrays.asList(ResourcePatternUtils.getResourcePatternResolver(resourceLoader)
+					.getResources(basename + "*.properties"));
+
+		List<Resource> arquivos = new ArrayList<>();
+		try (DirectoryStream<Path> encontrados = Files.newDirectoryStream(diretorio, prefixo() + "*.properties")) {
+			for (Path arquivo : encontrados) {
+				arquivos.add(new FileSystemResource(arquivo.toFile()));
+			}
+		}
+		return arquivos;
+	}
+
+	// o nome do arquivo sem o diretório: messages
+	private String prefixo() {
+		return basename.substring(basename.lastIndexOf('/') + 1);
+	}
+
+	private void observa() {
+		try {
+			observador = FileSystems.getDefault().newWatchService();
+			diretorio.register(observador, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			LOG.warn("Não foi possível observar " + diretorio + ": mensagens sem recarga", e);
+			return;
+		}
+
+		String prefixo = prefixo();
+		Thread recarregador = new Thread(() -> recarrega(prefixo), "mensagens");
+		recarregador.setDaemon(true);
+		recarregador.start();
+	}
+
+	private void recarrega(String prefixo) {
+		try {
+			while (true) {
+				WatchKey chave = observador.take();
+				boolean mudou = mudou(chave, prefixo);
+				chave.reset();
+
+				// junta os eventos de uma mesma gravação numa recarga só
+				while ((chave = observador.poll(ESPERA_ENTRE_EVENTOS, TimeUnit.MILLISECONDS)) != null) {
+					mudou |= mudou(chave, prefixo);
+					chave.reset();
+				}
+
+				if (!mudou)
+					continue;
+				try {
+					pacote = carrega();
+					recargas.incrementAndGet();
+					LOG.info("Mensagens de {} recarregadas", basename);
+				} catch (IOException | RuntimeException e) {
+					LOG.warn("Falha ao recarregar " + basename + ", mantendo as mensagens anteriores", e);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// encerrando
+		}
+	}
+
+	private static boolean mudou(WatchKey chave, String prefixo) {
+		boolean mudou = false;
+		for (WatchEvent<?> evento : chave.pollEvents()) {
+			Object arquivo = evento.context();
+			if (evento.kind() == StandardWatchEventKinds.OVERFLOW
+					|| arquivo != null && arquivo.toString().startsWith(prefixo)
+							&& arquivo.toString().endsWith(".properties"))
+				mudou = true;
+		}
+		return mudou;
+	}
+
+	/*
+	 * As mensagens de uma carga. A tabela de cada arquivo é montada na primeira
+	 * vez que um idioma cai nele e depois só lida. Os primeiros IDIOMAS idiomas
+	 * ficam ligados direto à sua tabela; os demais procuram o arquivo a cada vez,
+	 * o que cria só umas strings.
+	 */
+	private static class Pacote {
+
+		private final Map<String, Properties> arquivos;
+		private final ConcurrentMap<String, Tabela> porSufixo = new ConcurrentHashMap<>();
+		private final ConcurrentMap<Locale, Tabela> porIdioma = new ConcurrentHashMap<>();
+
+		Pacote(Map<String, Properties> arquivos) {
+			this.arquivos = arquivos;
+		}
+
+		Tabela tabela(Locale locale) {
+			Tabela tabela = porIdioma.get(locale);
+			if (tabela != null)
+				return tabela;
+
+			tabela = porSufixo.computeIfAbsent(sufixo(locale), sufixo -> new Tabela(arquivos, sufixo));
+			if (porIdioma.size() < IDIOMAS)
+				porIdioma.putIfAbsent(locale, tabela);
+			return tabela;
+		}
+
+		// o arquivo mais específico que existe para o idioma: _pt_BR, _pt ou o padrão
+		private String sufixo(Locale locale) {
+			if (locale.getLanguage().isEmpty())
+				return "";
+
+			String idioma = "_" + locale.getLanguage();
+			if (!locale.getCountry().isEmpty() && arquivos.containsKey(idioma + "_" + locale.getCountry()))
+				return idioma + "_" + locale.getCountry();
+			return arquivos.containsKey(idioma) ? idioma : "";
+		}
+	}
+
+	private static class Tabela {
+
+		final Map<String, String> textos;
+		final Map<String, MessageFormat> formatos;
+
+		Tabela(Map<String, Properties> arquivos, String sufixo) {
+			// do mais genérico para o mais específico, que sobrescreve: "", _pt, _pt_BR
+			String[] partes = sufixo.split("_");
+			Map<String, String> textos = new HashMap<>();
+			String atual = "";
+			for (int i = 0; i < partes.length; i++) {
+				if (i > 0)
+					atual += "_" + partes[i];
+				Properties arquivo = arquivos.get(atual);
+				if (arquivo == null)
+					continue;
+				for (String codigo : arquivo.stringPropertyNames()) {
+					textos.put(codigo, arquivo.getProperty(codigo));
+				}
+			}
+
+			Locale locale = sufixo.isEmpty() ? Locale.getDefault()
+					: new Locale(partes[1], partes.length > 2 ? partes[2] : "");
+			Map<String, MessageFormat> formatos = new HashMap<>();
+			for (Map.Entry<String, String> texto : textos.entrySet()) {
+				formatos.put(texto.getKey(), new MessageFormat(texto.getValue(), locale));
+			}
+
+			this.textos = Collections.unmodifiableMap(textos);
+			this.formatos = Collections.unmodifiableMap(formatos);
+		}
+	}
+
+}
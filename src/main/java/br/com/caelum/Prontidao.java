@@ -0,0 +1,70 @@
+package br.com.caelum;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Diz se a aplicação já pode receber tráfego e mede quanto tempo ela levou
+ * para chegar lá.
+ *
+ * Com a propriedade de sistema inicioRapido=true (nós do autoscaling) o schema
+ * só é validado e a aplicação fica pronta assim que o banco responde; a carga
+ * inicial e as listas de referência vêm depois, em segundo plano. O
+ * balanceador deve consultar /pronto antes de mandar requisições.
+ *
+ * Os tempos são contados a partir do início da JVM e vão para o log, o que
+ * permite comparar inicializações com e sem o modo rápido.
+ */
+@Component
+public class Prontidao {
+
+	private static final Logger LOG = LoggerFactory.getLogger(Prontidao.class);
+
+	@Autowired
+	private Environment environment;
+
+	private volatile boolean pronto;
+	private volatile long tempoAtePronto;
+	private volatile long tempoAtePrimeiraRequisicao;
+	private final AtomicBoolean primeiraRequisicao = new AtomicBoolean();
+
+	public boolean isInicioRapido() {
+		return environment.getProperty("inicioRapido", Boolean.class, false);
+	}
+
+	public void marcaPronto() {
+		tempoAtePronto = desdeOInicioDaJvm();
+		pronto = true;
+		LOG.info("Aplicacao pronta em {} ms (inicio rapido: {})", tempoAtePronto, isInicioRapido());
+	}
+
+	public void registraRequisicao() {
+		if (primeiraRequisicao.compareAndSet(false, true)) {
+			tempoAtePrimeiraRequisicao = desdeOInicioDaJvm();
+			LOG.info("Primeira requisicao atendida {} ms apos o inicio da JVM", tempoAtePrimeiraRequisicao);
+		}
+	}
+
+	private long desdeOInicioDaJvm() {
+		return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+	}
+
+	public boolean isPronto() {
+		return pronto;
+	}
+
+	public long getTempoAtePronto() {
+		return tempoAtePronto;
+	}
+
+	public long getTempoAtePrimeiraRequisicao() {
+		return tempoAtePrimeiraRequisicao;
+	}
+
+}
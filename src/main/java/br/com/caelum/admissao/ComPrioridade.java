@@ -0,0 +1,19 @@
+package br.com.caelum.admissao;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Prioridade de um método de controller (ou de todos os de uma classe) no
+ * {@link ControleDeAdmissao}. Sem a anotação, GET é {@link Prioridade#ALTA} e
+ * os demais métodos HTTP são {@link Prioridade#BAIXA}.
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ComPrioridade {
+
+	Prioridade value();
+
+}
@@ -0,0 +1,182 @@
+package br.com.caelum.admissao;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import br.com.caelum.consultas.TempoNoBanco;
+
+/**
+ * Controle de admissão na frente dos controllers: quando o banco fica lento,
+ * recusa na hora com 503 e Retry-After as requisições que passariam do
+ * {@link LimiteAdaptativo}, em vez de deixá-las na fila do pool de conexões
+ * segurando threads do Tomcat até estourar o tempo do cliente.
+ *
+ * Cada {@link Prioridade} tem o seu contador de requisições em andamento e
+ * pode ocupar uma fração do limite, contando só as suas e as das prioridades
+ * acima: buscas e gravações não tiram o lugar das leituras baratas, que só são
+ * recusadas quando elas mesmas enchem o limite. Por isso a soma das três pode
+ * passar do limite enquanto as de prioridade mais baixa já admitidas terminam.
+ * A latência usada é o tempo médio de cada SQL da requisição
+ * ({@link TempoNoBanco}); requisições que não executaram SQL (tudo no cache)
+ * não contam.
+ *
+ * Com admissao.ativa=false nada é recusado, mas o limite continua sendo
+ * calculado e aparece nas estatísticas, para comparar. admissao.limite
+ * (inicial), admissao.minimo, admissao.maximo e admissao.latencia (o alvo, em
+ * ms por SQL) ajustam o {@link LimiteAdaptativo}.
+ */
+@Component
+public class ControleDeAdmissao extends HandlerInterceptorAdapter {
+
+	private static final String ADMITIDA = ControleDeAdmissao.class.getName() + ".admitida";
+
+	// segundos para o cliente tentar de novo
+	private static final String ESPERA = "1";
+
+	@Autowired
+	private Environment environment;
+
+	private boolean ativo;
+	private LimiteAdaptativo limite;
+
+	private final Map<Prioridade, AtomicInteger> emAndamento = new EnumMap<>(Prioridade.class);
+	private final Map<Prioridade, LongAdder> admitidas = new EnumMap<>(Prioridade.class);
+	private final Map<Prioridade, LongAdder> recusadas = new EnumMap<>(Prioridade.class);
+
+	public ControleDeAdmissao() {
+		for (Prioridade prioridade : Prioridade.values()) {
+			emAndamento.put(prioridade, new AtomicInteger());
+			admitidas.put(prioridade, new LongAdder());
+			recusadas.put(prioridade, new LongAdder());
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		ativo = environment.getProperty("admissao.ativa", Boolean.class, true);
+		limite = new LimiteAdaptativo(environment.getProperty("admissao.limite", Integer.class, 20),
+				environment.getProperty("admissao.minimo", Integer.class, 4),
+				environment.getProperty("admissao.maximo", Integer.class, 100),
+				TimeUnit.MILLISECONDS.toNanos(environment.getProperty("admissao.latencia", Long.class, 50L)));
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+		if (!(handler instanceof HandlerMethod))
+			return true;
+
+		Prioridade prioridade = prioridade((HandlerMethod) handler, request);
+		int teto = prioridade.teto(limite.getLimite());
+		AtomicInteger daPrioridade = emAndamento.get(prioridade);
+		while (true) {
+			int atual = daPrioridade.get();
+			if (ativo && atual + acima(prioridade) >= teto) {
+				recusadas.get(prioridade).increment();
+				response.setHeader("Retry-After", ESPERA);
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				return false;
+			}
+			if (daPrioridade.compareAndSet(atual, atual + 1))
+				break;
+		}
+
+		admitidas.get(prioridade).increment();
+		request.setAttribute(ADMITIDA, prioridade);
+		TempoNoBanco.inicia();
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		Prioridade prioridade = (Prioridade) request.getAttribute(ADMITIDA);
+		if (prioridade == null)
+			return;
+		request.removeAttribute(ADMITIDA);
+
+		long nanos = TempoNoBanco.termina();
+		int andamento = getEmAndamento();
+		emAndamento.get(prioridade).decrementAndGet();
+		if (nanos >= 0)
+			limite.registra(nanos, andamento);
+	}
+
+	// em andamento das prioridades mais altas que esta
+	private int acima(Prioridade prioridade) {
+		int soma = 0;
+		for (Prioridade outra : Prioridade.values()) {
+			if (outra == prioridade)
+				break;
+			soma += emAndamento.get(outra).get();
+		}
+		return soma;
+	}
+
+	private static Prioridade prioridade(HandlerMethod handler, HttpServletRequest request) {
+		ComPrioridade anotacao = handler.getMethodAnnotation(ComPrioridade.class);
+		if (anotacao == null)
+			anotacao = AnnotatedElementUtils.findMergedAnnotation(handler.getBeanType(), ComPrioridade.class);
+		if (anotacao != null)
+			return anotacao.value();
+		return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod()) ? Prioridade.ALTA
+				: Prioridade.BAIXA;
+	}
+
+	public boolean isAtivo() {
+		return ativo;
+	}
+
+	public int getLimite() {
+		return limite.getLimite();
+	}
+
+	public int getEmAndamento() {
+		int soma = 0;
+		for (AtomicInteger daPrioridade : emAndamento.values()) {
+			soma += daPrioridade.get();
+		}
+		return soma;
+	}
+
+	// em ms por SQL
+	public double getLatencia() {
+		return limite.getLatencia();
+	}
+
+	public double getLatenciaAlvo() {
+		return limite.getAlvo();
+	}
+
+	public Map<String, Long> getAdmitidas() {
+		return porPrioridade(admitidas);
+	}
+
+	public Map<String, Long> getRecusadas() {
+		return porPrioridade(recusadas);
+	}
+
+	private static Map<String, Long> porPrioridade(Map<Prioridade, LongAdder> contadores) {
+		Map<String, Long> valores = new LinkedHashMap<>();
+		for (Map.Entry<Prioridade, LongAdder> contador : contadores.entrySet()) {
+			valores.put(contador.getKey().name(), contador.getValue().sum());
+		}
+		return valores;
+	}
+
+}
@@ -0,0 +1,76 @@
+package br.com.caelum.admissao;
+
+/**
+ * Limite de requisições simultâneas que se ajusta pela latência do banco, por
+ * AIMD (aumento aditivo, redução multiplicativa), como o AIMDLimit do
+ * concurrency-limits da Netflix.
+ *
+ * A latência é uma média móvel exponencial das últimas ~10 amostras. Acima da
+ * {@link #alvo}, cada amostra multiplica o limite por {@link #REDUCAO}: de 20
+ * para 4 em pouco mais de uma dezena de requisições. Abaixo dela o limite
+ * sobe 1 por amostra, então volta rápido quando o banco se recupera.
+ *
+ * O alvo é fixo de propósito. Um alvo relativo à latência de longo prazo (o
+ * Gradient2) acompanha um banco que ficou lento e, alguns segundos depois,
+ * volta a deixar as requisições se acumularem na fila do pool de conexões.
+ *
+ * Enquanto menos da metade do limite está em uso não há por que aumentá-lo: a
+ * latência não diz nada sobre um limite que não está sendo usado.
+ */
+class LimiteAdaptativo {
+
+	private static final double PESO = 2.0 / (10 + 1);
+	private static final double REDUCAO = 0.9;
+
+	private final int minimo;
+	private final int maximo;
+	private final long alvo;
+
+	private double limite;
+	private double latencia;
+	private boolean primeira = true;
+
+	// lido sem trava a cada requisição
+	private volatile int atual;
+
+	LimiteAdaptativo(int inicial, int minimo, int maximo, long alvo) {
+		this.minimo = minimo;
+		this.maximo = maximo;
+		this.alvo = alvo;
+		this.limite = Math.max(minimo, Math.min(maximo, inicial));
+		this.atual = (int) limite;
+	}
+
+	int getLimite() {
+		return atual;
+	}
+
+	// em ms
+	synchronized double getLatencia() {
+		return latencia / 1e6;
+	}
+
+	double getAlvo() {
+		return alvo / 1e6;
+	}
+
+	/**
+	 * Uma amostra: o tempo médio de cada SQL de uma requisição, e
+	 * quantas estavam em andamento quando ela terminou (contando ela).
+	 */
+	synchronized void registra(long nanos, int emAndamento) {
+		if (primeira) {
+			latencia = nanos;
+			primeira = false;
+		} else {
+			latencia += (nanos - latencia) * PESO;
+		}
+
+		if (latencia > alvo)
+			limite = Math.max(minimo, limite * REDUCAO);
+		else if (emAndamento >= limite / 2)
+			limite = Math.min(maximo, limite + 1);
+		atual = (int) limite;
+	}
+
+}
@@ -0,0 +1,34 @@
+package br.com.caelum.admissao;
+
+/**
+ * Quanto do limite de concorrência cada tipo de requisição pode ocupar. Com o
+ * banco lento e o limite baixando, as escritas e exportações são recusadas
+ * primeiro, depois as buscas, e as leituras baratas (quase sempre no cache de
+ * segundo nível) por último.
+ */
+public enum Prioridade {
+
+	// páginas de produto, home, mais vistos: GETs em geral
+	ALTA(1.0),
+
+	// buscas e filtros, que vão ao banco com mais frequência
+	MEDIA(0.75),
+
+	// gravações e exportação do catálogo
+	BAIXA(0.5);
+
+	private final double fracao;
+
+	private Prioridade(double fracao) {
+		this.fracao = fracao;
+	}
+
+	/**
+	 * Quantas requisições em andamento desta prioridade e das mais altas
+	 * (declaradas antes) ainda deixam entrar uma desta.
+	 */
+	int teto(int limite) {
+		return Math.max(1, (int) Math.ceil(limite * fracao));
+	}
+
+}
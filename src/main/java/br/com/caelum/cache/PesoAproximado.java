@@ -0,0 +1,59 @@
+package br.com.caelum.cache;
+
+import java.io.Serializable;
+
+import org.hibernate.cache.spi.entry.CacheEntry;
+import org.hibernate.cache.spi.entry.CollectionCacheEntry;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+/**
+ * Peso aproximado, em bytes, de uma entrada do cache de segundo nível.
+ *
+ * Usado pelo Caffeine (maximum.weigher no application.conf) para limitar as
+ * regiões em memória ocupada e não em quantidade: um produto com uma
+ * descrição longa pesa bem mais que um com duas linhas. Não precisa ser
+ * exato, só proporcional; por isso contamos apenas os Strings e números do
+ * estado desmontado que o Hibernate guarda no cache.
+ */
+public class PesoAproximado implements Weigher<Object, Object> {
+
+	private static final int CABECALHO = 16;
+	private static final int REFERENCIA = 8;
+
+	@Override
+	public int weigh(Object chave, Object valor) {
+		long peso = CABECALHO + peso(chave);
+
+		if (valor instanceof CacheEntry)
+			peso += peso(((CacheEntry) valor).getDisassembledState());
+		else if (valor instanceof CollectionCacheEntry)
+			peso += peso(((CollectionCacheEntry) valor).getState());
+		else
+			peso += peso(valor);
+
+		return (int) Math.min(peso, Integer.MAX_VALUE);
+	}
+
+	private long peso(Serializable[] estado) {
+		long peso = CABECALHO;
+		if (estado == null)
+			return peso;
+
+		for (Serializable campo : estado) {
+			peso += REFERENCIA + peso(campo);
+		}
+		return peso;
+	}
+
+	private long peso(Object valor) {
+		if (valor == null)
+			return 0;
+		if (valor instanceof String)
+			return CABECALHO + 24 + ((String) valor).length();
+		if (valor instanceof Serializable[])
+			return peso((Serializable[]) valor);
+		return CABECALHO + REFERENCIA;
+	}
+
+}
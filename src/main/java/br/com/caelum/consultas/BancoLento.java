@@ -0,0 +1,63 @@
+package br.com.caelum.consultas;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Simulador de banco lento, para testes locais: cada SQL executado pelo
+ * {@link DataSourceMonitorado} espera mais alguns milissegundos, segurando a
+ * conexão como faria um PostgreSQL sobrecarregado.
+ *
+ * Só é ligado ao {@link DataSourceMonitorado} com a propriedade de sistema
+ * banco.simulador=true. O atraso começa em banco.atraso (ms, padrão 0) e pode
+ * ser trocado com a aplicação no ar por POST
+ * /estatisticas/banco-lento?atraso=200, o que o teste de carga faz com
+ * carga.lentidao.
+ */
+@Component
+public class BancoLento {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BancoLento.class);
+
+	@Autowired
+	private Environment environment;
+
+	private boolean ativo;
+	private volatile long atraso;
+
+	@PostConstruct
+	public void init() {
+		ativo = environment.getProperty("banco.simulador", Boolean.class, false);
+		if (ativo)
+			setAtraso(environment.getProperty("banco.atraso", Long.class, 0L));
+	}
+
+	void espera() throws InterruptedException {
+		long atraso = this.atraso;
+		if (atraso > 0)
+			TimeUnit.MILLISECONDS.sleep(atraso);
+	}
+
+	public boolean isAtivo() {
+		return ativo;
+	}
+
+	public long getAtraso() {
+		return atraso;
+	}
+
+	public void setAtraso(long atraso) {
+		if (!ativo)
+			throw new IllegalStateException("Simulador de banco lento desligado (banco.simulador=true)");
+		this.atraso = Math.max(0, atraso);
+		LOG.warn("Simulador de banco lento: {} ms a mais por SQL", this.atraso);
+	}
+
+}
@@ -0,0 +1,315 @@
+package br.com.caelum.consultas;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Conexão do {@link DataSourceMonitorado}: devolve os statements embrulhados
+ * e repassa todo o resto para a conexão do pool, com chamadas diretas.
+ *
+ * O prepareCall fica de fora: o projeto não usa procedures.
+ */
+final class ConexaoMonitorada implements Connection {
+
+	private final Connection conexao;
+	private final DataSourceMonitorado dataSource;
+
+	ConexaoMonitorada(Connection conexao, DataSourceMonitorado dataSource) {
+		this.conexao = conexao;
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		return new StatementMonitorado<>(conexao.createStatement(), dataSource);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return new PreparedStatementMonitorado(conexao.prepareStatement(sql), sql, dataSource);
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		return conexao.prepareCall(sql);
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		return conexao.nativeSQL(sql);
+	}
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		conexao.setAutoCommit(autoCommit);
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		return conexao.getAutoCommit();
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		conexao.commit();
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		conexao.rollback();
+	}
+
+	@Override
+	public void close() throws SQLException {
+		conexao.close();
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return conexao.isClosed();
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return conexao.getMetaData();
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		conexao.setReadOnly(readOnly);
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		return conexao.isReadOnly();
+	}
+
+	@Override
+	public void setCatalog(String catalog) throws SQLException {
+		conexao.setCatalog(catalog);
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		return conexao.getCatalog();
+	}
+
+	@Override
+	public void setTransactionIsolation(int level) throws SQLException {
+		conexao.setTransactionIsolation(level);
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		return conexao.getTransactionIsolation();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		return conexao.getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		conexao.clearWarnings();
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		return new StatementMonitorado<>(conexao.createStatement(resultSetType, resultSetConcurrency), dataSource);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return new PreparedStatementMonitorado(conexao.prepareStatement(sql, resultSetType, resultSetConcurrency), sql,
+				dataSource);
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		return conexao.prepareCall(sql, resultSetType, resultSetConcurrency);
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return conexao.getTypeMap();
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		conexao.setTypeMap(map);
+	}
+
+	@Override
+	public void setHoldability(int holdability) throws SQLException {
+		conexao.setHoldability(holdability);
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		return conexao.getHoldability();
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		return conexao.setSavepoint();
+	}
+
+	@Override
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return conexao.setSavepoint(name);
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		conexao.rollback(savepoint);
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		conexao.releaseSavepoint(savepoint);
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return new StatementMonitorado<>(conexao.createStatement(resultSetType, resultSetConcurrency,
+				resultSetHoldability), dataSource);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return new PreparedStatementMonitorado(conexao.prepareStatement(sql, resultSetType, resultSetConcurrency,
+				resultSetHoldability), sql, dataSource);
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return conexao.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		return new PreparedStatementMonitorado(conexao.prepareStatement(sql, autoGeneratedKeys), sql, dataSource);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		return new PreparedStatementMonitorado(conexao.prepareStatement(sql, columnIndexes), sql, dataSource);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		return new PreparedStatementMonitorado(conexao.prepareStatement(sql, columnNames), sql, dataSource);
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		return conexao.createClob();
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		return conexao.createBlob();
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		return conexao.createNClob();
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		return conexao.createSQLXML();
+	}
+
+	@Override
+	public boolean isValid(int timeout) throws SQLException {
+		return conexao.isValid(timeout);
+	}
+
+	@Override
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		conexao.setClientInfo(name, value);
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		conexao.setClientInfo(properties);
+	}
+
+	@Override
+	public String getClientInfo(String name) throws SQLException {
+		return conexao.getClientInfo(name);
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		return conexao.getClientInfo();
+	}
+
+	@Override
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		return conexao.createArrayOf(typeName, elements);
+	}
+
+	@Override
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		return conexao.createStruct(typeName, attributes);
+	}
+
+	@Override
+	public void setSchema(String schema) throws SQLException {
+		conexao.setSchema(schema);
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		return conexao.getSchema();
+	}
+
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		conexao.abort(executor);
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		conexao.setNetworkTimeout(executor, milliseconds);
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		return conexao.getNetworkTimeout();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return conexao.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return conexao.isWrapperFor(iface);
+	}
+
+}
@@ -0,0 +1,60 @@
+package br.com.caelum.consultas;
+
+import java.util.Date;
+
+/**
+ * Uma execução que passou do limite (consultas.limite), com o SQL já com os
+ * valores usados e, depois que a thread das consultas lentas rodar o EXPLAIN,
+ * o plano.
+ */
+public class ConsultaLenta {
+
+	private final EstatisticaDaConsulta estatistica;
+	private final String sql;
+	private final String comValores;
+	private final long micros;
+	private final Date momento = new Date();
+
+	private volatile String plano;
+
+	ConsultaLenta(EstatisticaDaConsulta estatistica, String sql, String comValores, long micros) {
+		this.estatistica = estatistica;
+		this.sql = sql;
+		this.comValores = comValores;
+		this.micros = micros;
+	}
+
+	EstatisticaDaConsulta getEstatistica() {
+		return estatistica;
+	}
+
+	// null quando o driver não soube mostrar os valores
+	String getComValores() {
+		return comValores;
+	}
+
+	void setPlano(String plano) {
+		this.plano = plano;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public String getImpressao() {
+		return estatistica.getImpressao();
+	}
+
+	public double getDuracao() {
+		return micros / 1000.0;
+	}
+
+	public Date getMomento() {
+		return momento;
+	}
+
+	public String getPlano() {
+		return plano;
+	}
+
+}
@@ -0,0 +1,106 @@
+package br.com.caelum.consultas;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.ReflectionUtils;
+
+import com.mchange.v2.c3p0.C3P0ProxyStatement;
+
+import br.com.caelum.jfr.EsperaPorConexao;
+
+/**
+ * DataSource que mede cada execução de SQL e avisa o
+ * {@link MonitorDeConsultas}.
+ *
+ * Embrulha conexões e statements em classes que repassam cada chamada
+ * direto para o pool por baixo ({@link ConexaoMonitorada},
+ * {@link StatementMonitorado} e {@link PreparedStatementMonitorado}), sem
+ * proxies dinâmicos nem reflexão: só os métodos execute* fazem algo a mais,
+ * que é cronometrar. A espera pelo pool em getConnection vira o evento
+ * {@link EsperaPorConexao} do JFR.
+ *
+ * O tempo de cada execução também vai para o {@link TempoNoBanco} da thread,
+ * e o {@link BancoLento} pode atrasar cada execução. Ele vem null fora do
+ * simulador (banco.simulador=true), para não custar nada em produção.
+ */
+public class DataSourceMonitorado extends DelegatingDataSource {
+
+	private static final Method TO_STRING = ReflectionUtils.findMethod(Object.class, "toString");
+
+	private final MonitorDeConsultas monitor;
+	private final BancoLento bancoLento;
+
+	public DataSourceMonitorado(DataSource dataSource, MonitorDeConsultas monitor, BancoLento bancoLento) {
+		super(dataSource);
+		this.monitor = monitor;
+		this.bancoLento = bancoLento;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		EsperaPorConexao espera = new EsperaPorConexao();
+		espera.begin();
+		Connection conexao = super.getConnection();
+		espera.termina();
+		return new ConexaoMonitorada(conexao, this);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		EsperaPorConexao espera = new EsperaPorConexao();
+		espera.begin();
+		Connection conexao = super.getConnection(username, password);
+		espera.termina();
+		return new ConexaoMonitorada(conexao, this);
+	}
+
+	long inicia() throws SQLException {
+		long inicio = System.nanoTime();
+		if (bancoLento == null)
+			return inicio;
+		try {
+			bancoLento.espera();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrompido esperando o banco lento", e);
+		}
+		return inicio;
+	}
+
+	/*
+	 * O preparado é null quando o SQL já traz os valores (Statement simples).
+	 * Os parâmetros só são lidos se a execução foi lenta: guardar os de todo
+	 * set* deixava o monitor mais caro que o show_sql.
+	 */
+	void termina(String sql, PreparedStatement preparado, long inicio) {
+		long nanos = System.nanoTime() - inicio;
+		TempoNoBanco.soma(nanos);
+		if (monitor.registra(sql, nanos))
+			monitor.registraLenta(sql, preparado == null ? sql : comValores(preparado), nanos);
+	}
+
+	/*
+	 * O driver do PostgreSQL devolve no toString do PreparedStatement o SQL com
+	 * os valores atuais no lugar dos ?, escapados como literais. O
+	 * PreparedStatement do c3p0 0.9.1 não repassa o toString (nem tem unwrap),
+	 * daí o rawStatementOperation. Com outro driver o texto não é SQL e o
+	 * EXPLAIN falha, o que só deixa a consulta lenta sem plano.
+	 */
+	private static String comValores(PreparedStatement preparado) {
+		try {
+			if (preparado instanceof C3P0ProxyStatement)
+				return String.valueOf(((C3P0ProxyStatement) preparado).rawStatementOperation(TO_STRING,
+						C3P0ProxyStatement.RAW_STATEMENT, new Object[0]));
+			return preparado.toString();
+		} catch (ReflectiveOperationException | SQLException | RuntimeException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package br.com.caelum.consultas;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Números de todas as execuções de uma mesma impressão digital de SQL. Os
+ * tempos são expostos em milissegundos, para a página de estatísticas.
+ */
+public class EstatisticaDaConsulta {
+
+	private final String impressao;
+	private final Histograma histograma = new Histograma();
+	private final LongAdder execucoes = new LongAdder();
+	private final LongAdder microsTotais = new LongAdder();
+	private final LongAccumulator maximo = new LongAccumulator(Long::max, 0);
+	private final LongAdder lentas = new LongAdder();
+
+	// só a thread das consultas lentas mexe
+	volatile String ultimoPlano;
+	volatile long planoCapturadoEm;
+
+	EstatisticaDaConsulta(String impressao) {
+		this.impressao = impressao;
+	}
+
+	void registra(long micros, boolean lenta) {
+		histograma.registra(micros);
+		execucoes.increment();
+		microsTotais.add(micros);
+		maximo.accumulate(micros);
+		if (lenta)
+			lentas.increment();
+	}
+
+	public String getImpressao() {
+		return impressao;
+	}
+
+	public long getExecucoes() {
+		return execucoes.sum();
+	}
+
+	public double getTotal() {
+		return microsTotais.sum() / 1000.0;
+	}
+
+	public double getMedia() {
+		long execucoes = getExecucoes();
+		return execucoes == 0 ? 0 : getTotal() / execucoes;
+	}
+
+	public double getP50() {
+		return histograma.percentil(0.50) / 1000.0;
+	}
+
+	public double getP95() {
+		return histograma.percentil(0.95) / 1000.0;
+	}
+
+	public double getP99() {
+		return histograma.percentil(0.99) / 1000.0;
+	}
+
+	public double getMaximo() {
+		return maximo.get() / 1000.0;
+	}
+
+	public long getLentas() {
+		return lentas.sum();
+	}
+
+	public String getUltimoPlano() {
+		return ultimoPlano;
+	}
+
+}
@@ -0,0 +1,58 @@
+package br.com.caelum.consultas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de tempos em microssegundos com faixas logarítmicas: quatro
+ * faixas por potência de dois, então cada percentil sai com no máximo 25% de
+ * erro, num array de tamanho fixo e sem travas.
+ */
+class Histograma {
+
+	private static final int SUBFAIXAS = 4;
+	private static final int FAIXAS = 36 * SUBFAIXAS;
+
+	private final AtomicLongArray contagens = new AtomicLongArray(FAIXAS);
+
+	void registra(long micros) {
+		contagens.incrementAndGet(faixa(Math.max(micros, 0)));
+	}
+
+	/*
+	 * Limite superior da faixa onde cai o percentil: um valor que pelo menos a
+	 * fração pedida das execuções não ultrapassou.
+	 */
+	long percentil(double fracao) {
+		long total = 0;
+		for (int i = 0; i < FAIXAS; i++) {
+			total += contagens.get(i);
+		}
+		if (total == 0)
+			return 0;
+
+		long posicao = (long) Math.ceil(total * fracao);
+		long acumulado = 0;
+		for (int i = 0; i < FAIXAS; i++) {
+			acumulado += contagens.get(i);
+			if (acumulado >= posicao)
+				return inicio(i + 1) - 1;
+		}
+		return inicio(FAIXAS) - 1;
+	}
+
+	static int faixa(long micros) {
+		if (micros < SUBFAIXAS)
+			return (int) micros;
+		int expoente = 63 - Long.numberOfLeadingZeros(micros);
+		int subfaixa = (int) (micros >> (expoente - 2)) & (SUBFAIXAS - 1);
+		return Math.min((expoente - 1) * SUBFAIXAS + subfaixa, FAIXAS - 1);
+	}
+
+	static long inicio(int faixa) {
+		if (faixa < SUBFAIXAS)
+			return faixa;
+		int expoente = faixa / SUBFAIXAS + 1;
+		return (long) (SUBFAIXAS + faixa % SUBFAIXAS) << (expoente - 2);
+	}
+
+}
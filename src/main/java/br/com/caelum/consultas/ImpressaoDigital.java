@@ -0,0 +1,30 @@
+package br.com.caelum.consultas;
+
+import java.util.regex.Pattern;
+
+/**
+ * Reduz um SQL à sua "impressão digital": o mesmo texto sem os valores.
+ *
+ * Literais de texto e números viram ?, listas de IN de qualquer tamanho viram
+ * IN (...) e os espaços são normalizados. Assim o multi-get com 3 ou com 1000
+ * ids, ou uma query montada com valores concatenados, caem na mesma linha das
+ * estatísticas.
+ */
+final class ImpressaoDigital {
+
+	private static final Pattern TEXTOS = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMEROS = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern LISTAS = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+	private static final Pattern ESPACOS = Pattern.compile("\\s+");
+
+	private ImpressaoDigital() {
+	}
+
+	static String de(String sql) {
+		String impressao = TEXTOS.matcher(sql).replaceAll("?");
+		impressao = NUMEROS.matcher(impressao).replaceAll("?");
+		impressao = LISTAS.matcher(impressao).replaceAll("in (...)");
+		return ESPACOS.matcher(impressao).replaceAll(" ").trim();
+	}
+
+}
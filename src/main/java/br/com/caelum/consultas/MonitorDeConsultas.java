@@ -0,0 +1,242 @@
+package br.com.caelum.consultas;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tempos de todos os SQLs executados, agrupados por impressão digital (veja
+ * {@link ImpressaoDigital}), e o log das consultas lentas. Substitui o
+ * hibernate.show_sql, que imprimia cada SQL na thread da requisição e não
+ * dizia quanto tempo ele levou.
+ *
+ * Quem mede é o {@link DataSourceMonitorado}. Na requisição só somamos num
+ * histograma e, se a execução passou de consultas.limite (em ms, padrão 100),
+ * oferecemos a consulta numa fila limitada, sem esperar: com a fila cheia a
+ * consulta é descartada e contada. Uma thread própria esvazia a fila, escreve
+ * no log e captura o plano com EXPLAIN (no máximo um por impressão digital a
+ * cada minuto), numa conexão que não passa pelo monitor.
+ */
+@Component
+public class MonitorDeConsultas {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MonitorDeConsultas.class);
+
+	private static final int TAMANHO_DA_FILA = 256;
+	private static final int LENTAS_RECENTES = 20;
+	static final int PIORES = 10;
+
+	// limites de memória para quem monta SQL concatenando valores
+	private static final int SQLS_CONHECIDOS = 2000;
+	private static final int IMPRESSOES = 500;
+
+	private static final long INTERVALO_ENTRE_PLANOS = TimeUnit.MINUTES.toMillis(1);
+	private static final Pattern EXPLICAVEL = Pattern.compile("(?is)^\\s*(select|insert|update|delete|with)\\b.*");
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private Environment environment;
+
+	private long limite;
+
+	private final ConcurrentMap<String, EstatisticaDaConsulta> porSql = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, EstatisticaDaConsulta> porImpressao = new ConcurrentHashMap<>();
+	private final EstatisticaDaConsulta outras = new EstatisticaDaConsulta("(outras)");
+
+	private final BlockingQueue<ConsultaLenta> fila = new ArrayBlockingQueue<>(TAMANHO_DA_FILA);
+	private final Deque<ConsultaLenta> recentes = new ArrayDeque<>(LENTAS_RECENTES);
+	private Thread registrador;
+
+	private final LongAdder lentas = new LongAdder();
+	private final LongAdder descartadas = new LongAdder();
+	private final LongAdder planos = new LongAdder();
+
+	@PostConstruct
+	public void init() {
+		limite = TimeUnit.MILLISECONDS.toMicros(environment.getProperty("consultas.limite", Long.class, 100L));
+
+		registrador = new Thread(this::registraLentas, "consultas-lentas");
+		registrador.setDaemon(true);
+		registrador.start();
+	}
+
+	@PreDestroy
+	public void encerra() {
+		registrador.interrupt();
+	}
+
+	/**
+	 * Soma a execução no histograma do SQL e diz se ela passou do limite: nesse
+	 * caso quem mediu chama {@link #registraLenta}, com o SQL já com os valores.
+	 */
+	boolean registra(String sql, long nanos) {
+		if (sql == null)
+			return false;
+
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		boolean lenta = micros >= limite;
+		estatistica(sql).registra(micros, lenta);
+		return lenta;
+	}
+
+	void registraLenta(String sql, String comValores, long nanos) {
+		lentas.increment();
+		ConsultaLenta consulta = new ConsultaLenta(estatistica(sql), sql, comValores,
+				TimeUnit.NANOSECONDS.toMicros(nanos));
+		if (!fila.offer(consulta))
+			descartadas.increment();
+	}
+
+	private EstatisticaDaConsulta estatistica(String sql) {
+		EstatisticaDaConsulta estatistica = porSql.get(sql);
+		if (estatistica != null)
+			return estatistica;
+
+		String impressao = ImpressaoDigital.de(sql);
+		estatistica = porImpressao.get(impressao);
+		if (estatistica == null) {
+			estatistica = porImpressao.size() < IMPRESSOES
+					? porImpressao.computeIfAbsent(impressao, EstatisticaDaConsulta::new)
+					: outras;
+		}
+		if (porSql.size() < SQLS_CONHECIDOS)
+			porSql.putIfAbsent(sql, estatistica);
+		return estatistica;
+	}
+
+	private void registraLentas() {
+		while (!Thread.currentThread().isInterrupted()) {
+			ConsultaLenta consulta;
+			try {
+				consulta = fila.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			try {
+				LOG.warn("Consulta lenta ({} ms): {}", consulta.getDuracao(), consulta.getSql());
+				capturaPlano(consulta);
+			} catch (RuntimeException e) {
+				LOG.warn("Falha ao registrar consulta lenta", e);
+			}
+
+			synchronized (recentes) {
+				if (recentes.size() == LENTAS_RECENTES)
+					recentes.removeLast();
+				recentes.addFirst(consulta);
+			}
+		}
+	}
+
+	private void capturaPlano(ConsultaLenta consulta) {
+		EstatisticaDaConsulta estatistica = consulta.getEstatistica();
+		long agora = System.currentTimeMillis();
+		if (agora - estatistica.planoCapturadoEm < INTERVALO_ENTRE_PLANOS) {
+			consulta.setPlano(estatistica.ultimoPlano);
+			return;
+		}
+		if (consulta.getComValores() == null || !EXPLICAVEL.matcher(consulta.getComValores()).matches())
+			return;
+
+		String plano;
+		try {
+			plano = explica(consulta.getComValores());
+			planos.increment();
+		} catch (SQLException e) {
+			plano = "Plano indisponível: " + e.getMessage();
+		}
+		estatistica.ultimoPlano = plano;
+		estatistica.planoCapturadoEm = agora;
+		consulta.setPlano(plano);
+		LOG.info("Plano de {}:\n{}", estatistica.getImpressao(), plano);
+	}
+
+	/*
+	 * EXPLAIN sem ANALYZE: o PostgreSQL só planeja, não executa, então vale até
+	 * para INSERT e UPDATE. Os valores são os da execução lenta, para o plano
+	 * ser o mesmo que ela teve.
+	 *
+	 * O driver do PostgreSQL divide o texto nos ';' e executa cada comando que
+	 * encontrar, mesmo num PreparedStatement; o que impede um valor de virar
+	 * outro comando é só o escape dos literais no toString do driver. Por isso o
+	 * EXPLAIN roda numa transação somente leitura, desfeita no fim: um comando a
+	 * mais não teria como gravar nada.
+	 */
+	private String explica(String comValores) throws SQLException {
+		try (Connection conexao = dataSource.getConnection()) {
+			conexao.setAutoCommit(false);
+			conexao.setReadOnly(true);
+			try (PreparedStatement explain = conexao.prepareStatement("EXPLAIN " + comValores)) {
+				explain.setQueryTimeout(5);
+
+				StringBuilder plano = new StringBuilder();
+				try (ResultSet linhas = explain.executeQuery()) {
+					while (linhas.next()) {
+						plano.append(linhas.getString(1)).append('\n');
+					}
+				}
+				return plano.toString();
+			} finally {
+				conexao.rollback();
+				conexao.setReadOnly(false);
+				conexao.setAutoCommit(true);
+			}
+		}
+	}
+
+	public List<EstatisticaDaConsulta> getPiores() {
+		List<EstatisticaDaConsulta> piores = new ArrayList<>(porImpressao.values());
+		if (outras.getExecucoes() > 0)
+			piores.add(outras);
+		piores.sort(Comparator.comparingDouble(EstatisticaDaConsulta::getTotal).reversed());
+		return piores.subList(0, Math.min(PIORES, piores.size()));
+	}
+
+	public List<ConsultaLenta> getRecentes() {
+		synchronized (recentes) {
+			return new ArrayList<>(recentes);
+		}
+	}
+
+	public long getLimite() {
+		return TimeUnit.MICROSECONDS.toMillis(limite);
+	}
+
+	public long getLentas() {
+		return lentas.sum();
+	}
+
+	public long getDescartadas() {
+		return descartadas.sum();
+	}
+
+	public long getPlanos() {
+		return planos.sum();
+	}
+
+}
@@ -0,0 +1,339 @@
+package br.com.caelum.consultas;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * PreparedStatement do {@link DataSourceMonitorado}. Os set* vão direto para
+ * o driver, sem guardar nada: os valores de uma execução lenta são pedidos ao
+ * próprio driver depois dela (veja DataSourceMonitorado.termina).
+ */
+final class PreparedStatementMonitorado extends StatementMonitorado<PreparedStatement> implements PreparedStatement {
+
+	private final String sql;
+
+	PreparedStatementMonitorado(PreparedStatement statement, String sql, DataSourceMonitorado dataSource) {
+		super(statement, dataSource);
+		this.sql = sql;
+	}
+
+	@Override
+	public ResultSet executeQuery() throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeQuery();
+		} finally {
+			dataSource.termina(sql, statement, inicio);
+		}
+	}
+
+	@Override
+	public int executeUpdate() throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeUpdate();
+		} finally {
+			dataSource.termina(sql, statement, inicio);
+		}
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		statement.setNull(parameterIndex, sqlType);
+	}
+
+	@Override
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		statement.setBoolean(parameterIndex, x);
+	}
+
+	@Override
+	public void setByte(int parameterIndex, byte x) throws SQLException {
+		statement.setByte(parameterIndex, x);
+	}
+
+	@Override
+	public void setShort(int parameterIndex, short x) throws SQLException {
+		statement.setShort(parameterIndex, x);
+	}
+
+	@Override
+	public void setInt(int parameterIndex, int x) throws SQLException {
+		statement.setInt(parameterIndex, x);
+	}
+
+	@Override
+	public void setLong(int parameterIndex, long x) throws SQLException {
+		statement.setLong(parameterIndex, x);
+	}
+
+	@Override
+	public void setFloat(int parameterIndex, float x) throws SQLException {
+		statement.setFloat(parameterIndex, x);
+	}
+
+	@Override
+	public void setDouble(int parameterIndex, double x) throws SQLException {
+		statement.setDouble(parameterIndex, x);
+	}
+
+	@Override
+	public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+		statement.setBigDecimal(parameterIndex, x);
+	}
+
+	@Override
+	public void setString(int parameterIndex, String x) throws SQLException {
+		statement.setString(parameterIndex, x);
+	}
+
+	@Override
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		statement.setBytes(parameterIndex, x);
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x) throws SQLException {
+		statement.setDate(parameterIndex, x);
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x) throws SQLException {
+		statement.setTime(parameterIndex, x);
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+		statement.setTimestamp(parameterIndex, x);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		statement.setAsciiStream(parameterIndex, x, length);
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		statement.setUnicodeStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		statement.setBinaryStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void clearParameters() throws SQLException {
+		statement.clearParameters();
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+		statement.setObject(parameterIndex, x, targetSqlType);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x) throws SQLException {
+		statement.setObject(parameterIndex, x);
+	}
+
+	@Override
+	public boolean execute() throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.execute();
+		} finally {
+			dataSource.termina(sql, statement, inicio);
+		}
+	}
+
+	@Override
+	public void addBatch() throws SQLException {
+		statement.addBatch();
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+		statement.setCharacterStream(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setRef(int parameterIndex, Ref x) throws SQLException {
+		statement.setRef(parameterIndex, x);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, Blob x) throws SQLException {
+		statement.setBlob(parameterIndex, x);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Clob x) throws SQLException {
+		statement.setClob(parameterIndex, x);
+	}
+
+	@Override
+	public void setArray(int parameterIndex, Array x) throws SQLException {
+		statement.setArray(parameterIndex, x);
+	}
+
+	@Override
+	public ResultSetMetaData getMetaData() throws SQLException {
+		return statement.getMetaData();
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+		statement.setDate(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+		statement.setTime(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+		statement.setTimestamp(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+		statement.setNull(parameterIndex, sqlType, typeName);
+	}
+
+	@Override
+	public void setURL(int parameterIndex, URL x) throws SQLException {
+		statement.setURL(parameterIndex, x);
+	}
+
+	@Override
+	public ParameterMetaData getParameterMetaData() throws SQLException {
+		return statement.getParameterMetaData();
+	}
+
+	@Override
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+		statement.setRowId(parameterIndex, x);
+	}
+
+	@Override
+	public void setNString(int parameterIndex, String x) throws SQLException {
+		statement.setNString(parameterIndex, x);
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+		statement.setNCharacterStream(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, NClob x) throws SQLException {
+		statement.setNClob(parameterIndex, x);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+		statement.setClob(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException {
+		statement.setBlob(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+		statement.setNClob(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+		statement.setSQLXML(parameterIndex, x);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+		statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+		statement.setAsciiStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+		statement.setBinaryStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+		statement.setCharacterStream(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+		statement.setAsciiStream(parameterIndex, x);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+		statement.setBinaryStream(parameterIndex, x);
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+		statement.setCharacterStream(parameterIndex, reader);
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+		statement.setNCharacterStream(parameterIndex, reader);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader) throws SQLException {
+		statement.setClob(parameterIndex, reader);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream x) throws SQLException {
+		statement.setBlob(parameterIndex, x);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+		statement.setNClob(parameterIndex, reader);
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeBatch();
+		} finally {
+			dataSource.termina(sql, statement, inicio);
+		}
+	}
+
+}
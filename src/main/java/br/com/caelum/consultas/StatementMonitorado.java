@@ -0,0 +1,295 @@
+package br.com.caelum.consultas;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * Statement do {@link DataSourceMonitorado}: os execute* são cronometrados,
+ * o resto vai direto para o statement do pool. Num Statement simples o SQL
+ * chega em cada execute, já com os valores; os lotes de SQLs soltos só somam
+ * no {@link TempoNoBanco}.
+ */
+class StatementMonitorado<S extends Statement> implements Statement {
+
+	final S statement;
+	final DataSourceMonitorado dataSource;
+
+	StatementMonitorado(S statement, DataSourceMonitorado dataSource) {
+		this.statement = statement;
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public ResultSet executeQuery(String sql) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeQuery(sql);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public int executeUpdate(String sql) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeUpdate(sql);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		statement.close();
+	}
+
+	@Override
+	public int getMaxFieldSize() throws SQLException {
+		return statement.getMaxFieldSize();
+	}
+
+	@Override
+	public void setMaxFieldSize(int max) throws SQLException {
+		statement.setMaxFieldSize(max);
+	}
+
+	@Override
+	public int getMaxRows() throws SQLException {
+		return statement.getMaxRows();
+	}
+
+	@Override
+	public void setMaxRows(int max) throws SQLException {
+		statement.setMaxRows(max);
+	}
+
+	@Override
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+		statement.setEscapeProcessing(enable);
+	}
+
+	@Override
+	public int getQueryTimeout() throws SQLException {
+		return statement.getQueryTimeout();
+	}
+
+	@Override
+	public void setQueryTimeout(int seconds) throws SQLException {
+		statement.setQueryTimeout(seconds);
+	}
+
+	@Override
+	public void cancel() throws SQLException {
+		statement.cancel();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		return statement.getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		statement.clearWarnings();
+	}
+
+	@Override
+	public void setCursorName(String name) throws SQLException {
+		statement.setCursorName(name);
+	}
+
+	@Override
+	public boolean execute(String sql) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.execute(sql);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public ResultSet getResultSet() throws SQLException {
+		return statement.getResultSet();
+	}
+
+	@Override
+	public int getUpdateCount() throws SQLException {
+		return statement.getUpdateCount();
+	}
+
+	@Override
+	public boolean getMoreResults() throws SQLException {
+		return statement.getMoreResults();
+	}
+
+	@Override
+	public void setFetchDirection(int direction) throws SQLException {
+		statement.setFetchDirection(direction);
+	}
+
+	@Override
+	public int getFetchDirection() throws SQLException {
+		return statement.getFetchDirection();
+	}
+
+	@Override
+	public void setFetchSize(int rows) throws SQLException {
+		statement.setFetchSize(rows);
+	}
+
+	@Override
+	public int getFetchSize() throws SQLException {
+		return statement.getFetchSize();
+	}
+
+	@Override
+	public int getResultSetConcurrency() throws SQLException {
+		return statement.getResultSetConcurrency();
+	}
+
+	@Override
+	public int getResultSetType() throws SQLException {
+		return statement.getResultSetType();
+	}
+
+	@Override
+	public void addBatch(String sql) throws SQLException {
+		statement.addBatch(sql);
+	}
+
+	@Override
+	public void clearBatch() throws SQLException {
+		statement.clearBatch();
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeBatch();
+		} finally {
+			dataSource.termina(null, null, inicio);
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return statement.getConnection();
+	}
+
+	@Override
+	public boolean getMoreResults(int current) throws SQLException {
+		return statement.getMoreResults(current);
+	}
+
+	@Override
+	public ResultSet getGeneratedKeys() throws SQLException {
+		return statement.getGeneratedKeys();
+	}
+
+	@Override
+	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeUpdate(sql, autoGeneratedKeys);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeUpdate(sql, columnIndexes);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.executeUpdate(sql, columnNames);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.execute(sql, autoGeneratedKeys);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.execute(sql, columnIndexes);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public boolean execute(String sql, String[] columnNames) throws SQLException {
+		long inicio = dataSource.inicia();
+		try {
+			return statement.execute(sql, columnNames);
+		} finally {
+			dataSource.termina(sql, null, inicio);
+		}
+	}
+
+	@Override
+	public int getResultSetHoldability() throws SQLException {
+		return statement.getResultSetHoldability();
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return statement.isClosed();
+	}
+
+	@Override
+	public void setPoolable(boolean poolable) throws SQLException {
+		statement.setPoolable(poolable);
+	}
+
+	@Override
+	public boolean isPoolable() throws SQLException {
+		return statement.isPoolable();
+	}
+
+	@Override
+	public void closeOnCompletion() throws SQLException {
+		statement.closeOnCompletion();
+	}
+
+	@Override
+	public boolean isCloseOnCompletion() throws SQLException {
+		return statement.isCloseOnCompletion();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return statement.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return statement.isWrapperFor(iface);
+	}
+
+}
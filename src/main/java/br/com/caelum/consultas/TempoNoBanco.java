@@ -0,0 +1,49 @@
+package br.com.caelum.consultas;
+
+/**
+ * Tempo que a thread passou executando SQL durante uma medição, somado pelo
+ * {@link DataSourceMonitorado}.
+ *
+ * A espera por uma conexão do pool fica de fora: com o EntityManager aberto
+ * até o fim da view, ela mede mais a CPU da aplicação do que o banco.
+ *
+ * Um array por thread, reaproveitado de uma medição para a outra: fora de uma
+ * medição soma só confere uma posição do array.
+ */
+public final class TempoNoBanco {
+
+	private static final int MEDINDO = 0;
+	private static final int NANOS = 1;
+	private static final int EXECUCOES = 2;
+
+	private static final ThreadLocal<long[]> MEDICAO = ThreadLocal.withInitial(() -> new long[3]);
+
+	private TempoNoBanco() {
+	}
+
+	public static void inicia() {
+		long[] medicao = MEDICAO.get();
+		medicao[MEDINDO] = 1;
+		medicao[NANOS] = 0;
+		medicao[EXECUCOES] = 0;
+	}
+
+	/**
+	 * Encerra a medição e devolve o tempo médio de cada SQL, em nanossegundos,
+	 * ou -1 se nenhum SQL foi executado.
+	 */
+	public static long termina() {
+		long[] medicao = MEDICAO.get();
+		medicao[MEDINDO] = 0;
+		return medicao[EXECUCOES] == 0 ? -1 : medicao[NANOS] / medicao[EXECUCOES];
+	}
+
+	static void soma(long nanos) {
+		long[] medicao = MEDICAO.get();
+		if (medicao[MEDINDO] != 0) {
+			medicao[NANOS] += nanos;
+			medicao[EXECUCOES]++;
+		}
+	}
+
+}
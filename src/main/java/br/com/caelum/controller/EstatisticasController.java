@@ -1,13 +1,29 @@
 package br.com.caelum.controller;
 
+import java.util.Map;
+
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+import org.hibernate.stat.CacheRegionStatistics;
 import org.hibernate.stat.Statistics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import br.com.caelum.admissao.ControleDeAdmissao;
+import br.com.caelum.consultas.BancoLento;
+import br.com.caelum.consultas.MonitorDeConsultas;
+import br.com.caelum.dao.CarregamentoUnico;
+import br.com.caelum.dao.GravadorDeProdutos;
+import br.com.caelum.visualizacao.ContadorDeVisualizacoes;
 
 @Controller
 @RequestMapping("/estatisticas")
@@ -16,14 +32,107 @@ public class EstatisticasController {
 	@PersistenceContext
 	private EntityManager em;
 	
+	@Lazy
 	@Autowired(required=false)
 	private Statistics statistics;
+	
+	@Autowired
+	private GravadorDeProdutos gravadorDeProdutos;
+
+	@Autowired
+	private CarregamentoUnico carregamentoUnico;
+
+	@Autowired
+	private ContadorDeVisualizacoes contadorDeVisualizacoes;
+
+	@Autowired
+	private MonitorDeConsultas monitorDeConsultas;
+
+	@Autowired
+	private ControleDeAdmissao controleDeAdmissao;
+
+	@Autowired
+	private BancoLento bancoLento;
 
 	@RequestMapping
 	public String index(Model model) {
 		return "estatisticas/index";
 	}
 	
+	/*
+	 * Os mesmos números em texto puro (chave=valor, no formato de um .properties),
+	 * para ferramentas como o teste de carga calcularem a diferença entre antes e
+	 * depois de uma rodada.
+	 */
+	@ResponseBody
+	@RequestMapping(value = "/resumo", produces = "text/plain")
+	public String resumo() {
+		StringBuilder resumo = new StringBuilder();
+		linha(resumo, "connectCount", statistics.getConnectCount());
+		linha(resumo, "transactionCount", statistics.getTransactionCount());
+		linha(resumo, "prepareStatementCount", statistics.getPrepareStatementCount());
+		linha(resumo, "queryExecutionCount", statistics.getQueryExecutionCount());
+		linha(resumo, "queryCacheHitCount", statistics.getQueryCacheHitCount());
+		linha(resumo, "queryCacheMissCount", statistics.getQueryCacheMissCount());
+		linha(resumo, "queryCachePutCount", statistics.getQueryCachePutCount());
+		linha(resumo, "secondLevelCacheHitCount", statistics.getSecondLevelCacheHitCount());
+		linha(resumo, "secondLevelCacheMissCount", statistics.getSecondLevelCacheMissCount());
+		linha(resumo, "secondLevelCachePutCount", statistics.getSecondLevelCachePutCount());
+		linha(resumo, "updateTimestampsCachePutCount", statistics.getUpdateTimestampsCachePutCount());
+		linha(resumo, "entityLoadCount", statistics.getEntityLoadCount());
+		linha(resumo, "entityFetchCount", statistics.getEntityFetchCount());
+		linha(resumo, "entityUpdateCount", statistics.getEntityUpdateCount());
+		linha(resumo, "collectionFetchCount", statistics.getCollectionFetchCount());
+		linha(resumo, "optimisticFailureCount", statistics.getOptimisticFailureCount());
+		linha(resumo, "gravacoes", gravadorDeProdutos.getGravacoes());
+		linha(resumo, "retentativas", gravadorDeProdutos.getRetentativas());
+		linha(resumo, "conflitos", gravadorDeProdutos.getConflitos());
+		linha(resumo, "carregamentos", carregamentoUnico.getCarregamentos());
+		linha(resumo, "coalescidas", carregamentoUnico.getCoalescidas());
+		linha(resumo, "desistencias", carregamentoUnico.getDesistencias());
+		linha(resumo, "visualizacoesPendentes", contadorDeVisualizacoes.getPendentes());
+		linha(resumo, "gravacoesDeVisualizacoes", contadorDeVisualizacoes.getGravacoes());
+		linha(resumo, "falhasDeVisualizacoes", contadorDeVisualizacoes.getFalhas());
+		linha(resumo, "consultasLentas", monitorDeConsultas.getLentas());
+		linha(resumo, "consultasLentasDescartadas", monitorDeConsultas.getDescartadas());
+		linha(resumo, "planosCapturados", monitorDeConsultas.getPlanos());
+		for (Map.Entry<String, Long> admitidas : controleDeAdmissao.getAdmitidas().entrySet()) {
+			linha(resumo, "admissao.admitidas." + admitidas.getKey(), admitidas.getValue());
+		}
+		for (Map.Entry<String, Long> recusadas : controleDeAdmissao.getRecusadas().entrySet()) {
+			linha(resumo, "admissao.recusadas." + recusadas.getKey(), recusadas.getValue());
+		}
+
+		// por região do cache de segundo nível, para comparar provedores (cache.provedor)
+		for (String regiao : statistics.getSecondLevelCacheRegionNames()) {
+			CacheRegionStatistics regiaoStatistics = statistics.getCacheRegionStatistics(regiao);
+			if (regiaoStatistics == null)
+				continue;
+			linha(resumo, "regiao." + regiao + ".hitCount", regiaoStatistics.getHitCount());
+			linha(resumo, "regiao." + regiao + ".missCount", regiaoStatistics.getMissCount());
+			linha(resumo, "regiao." + regiao + ".putCount", regiaoStatistics.getPutCount());
+		}
+		return resumo.toString();
+	}
+
+	private void linha(StringBuilder resumo, String chave, long valor) {
+		resumo.append(chave).append('=').append(valor).append('\n');
+	}
+	
+	/*
+	 * Muda o atraso do simulador de banco lento (veja BancoLento), em ms por
+	 * SQL. Só existe com -Dbanco.simulador=true.
+	 */
+	@ResponseBody
+	@RequestMapping(value = "/banco-lento", method = RequestMethod.POST, produces = "text/plain")
+	public ResponseEntity<String> bancoLento(@RequestParam long atraso) {
+		if (!bancoLento.isAtivo())
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("simulador desligado\n");
+
+		bancoLento.setAtraso(atraso);
+		return ResponseEntity.ok("atraso=" + bancoLento.getAtraso() + "\n");
+	}
+
 	@RequestMapping("/limpar")
 	public String invalidar() {
 		statistics.clear();
@@ -0,0 +1,54 @@
+package br.com.caelum.controller;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import br.com.caelum.admissao.ComPrioridade;
+import br.com.caelum.admissao.Prioridade;
+import br.com.caelum.exportacao.ExportadorDeCatalogo;
+import br.com.caelum.exportacao.RegistroDeAlteracoes;
+
+// exportar o catálogo inteiro pode esperar o banco se recuperar
+@Controller
+@ComPrioridade(Prioridade.BAIXA)
+@RequestMapping("/exportacao")
+public class ExportacaoController {
+	
+	@Autowired
+	private ExportadorDeCatalogo exportador;
+	
+	@Autowired
+	private RegistroDeAlteracoes registroDeAlteracoes;
+	
+	/*
+	 * Catálogo no formato colunar (veja LeitorDeCatalogo), escrito direto na
+	 * resposta. Com desde=<marca d'água de uma exportação anterior> vêm só os
+	 * produtos gravados depois dela; a marca para a próxima vez vai no cabeçalho
+	 * X-Marca-Dagua e no próprio arquivo. Ela vem do banco (RegistroDeAlteracoes)
+	 * e é lida antes de começar, então o que for gravado durante a exportação
+	 * sai de novo na próxima, e vale em qualquer servidor, mesmo depois de
+	 * reiniciar.
+	 */
+	@RequestMapping(value="/catalogo", method=RequestMethod.GET)
+	public void catalogo(@RequestParam(required=false) String desde, HttpServletResponse response)
+			throws IOException, SQLException {
+		
+		String marca = registroDeAlteracoes.getMarca();
+		Long alteradosDesde = desde == null ? null : registroDeAlteracoes.desde(desde);
+		
+		response.setContentType("application/octet-stream");
+		response.setHeader("Content-Disposition", "attachment; filename=catalogo.col");
+		response.setHeader("X-Marca-Dagua", marca);
+		response.setHeader("X-Exportacao", alteradosDesde == null ? "completa" : "incremental");
+		
+		exportador.exporta(response.getOutputStream(), alteradosDesde, marca);
+	}
+}
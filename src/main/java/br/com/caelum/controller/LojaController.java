@@ -1,14 +1,40 @@
 package br.com.caelum.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import br.com.caelum.indice.CatalogoDasLojas;
+import br.com.caelum.indice.LojaInexistente;
+import br.com.caelum.indice.Vitrine;
 
 @Controller
 @RequestMapping("/loja")
 public class LojaController {
 	
+	@Autowired
+	private CatalogoDasLojas catalogoDasLojas;
+	
 	@RequestMapping("/form")
 	public String form() { 
 		return "loja/form";
 	}
+	
+	/*
+	 * Os produtos de uma loja, nos mesmos cartões da home, direto do modelo de
+	 * leitura em memória (veja CatalogoDasLojas): nenhuma query.
+	 */
+	@RequestMapping(value="/{id}", method=RequestMethod.GET)
+	public String vitrine(@PathVariable Integer id, Model model) {
+		Vitrine vitrine = catalogoDasLojas.daLoja(id);
+		if (vitrine == null)
+			throw new LojaInexistente(id);
+		
+		model.addAttribute("vitrine", vitrine);
+		model.addAttribute("produtos", vitrine.getProdutos());
+		return "home";
+	}
 }
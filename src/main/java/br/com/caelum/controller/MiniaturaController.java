@@ -0,0 +1,109 @@
+package br.com.caelum.controller;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import br.com.caelum.dao.ProdutoDao;
+import br.com.caelum.imagem.CacheDeMiniaturas;
+import br.com.caelum.imagem.Tamanho;
+import br.com.caelum.model.Produto;
+
+/**
+ * Serve as fotos dos produtos já reduzidas, a partir do {@link CacheDeMiniaturas}.
+ *
+ * Assim o navegador não baixa a imagem inteira de cada cartão e as páginas não
+ * dependem das CDNs externas a cada acesso. Se a foto original não puder ser
+ * baixada, redirecionamos para o link original.
+ */
+@Controller
+@RequestMapping("/miniatura")
+public class MiniaturaController {
+
+	@Autowired
+	private ProdutoDao produtoDao;
+
+	@Autowired
+	private CacheDeMiniaturas miniaturas;
+
+	@RequestMapping(value = "/{id}/{tamanho}", method = RequestMethod.GET)
+	public void miniatura(@PathVariable Integer id, @PathVariable String tamanho, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Tamanho formato = tamanho(tamanho);
+		Produto produto = produtoDao.getProduto(id);
+		if (formato == null || produto == null || produto.getLinkDaFoto() == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String etag = "\"" + miniaturas.chave(produto.getLinkDaFoto(), formato) + "\"";
+
+		// o conteúdo de uma chave nunca muda, então basta comparar a ETag
+		if (etag.equals(request.getHeader("If-None-Match"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		Path arquivo;
+		try {
+			arquivo = miniaturas.miniatura(produto.getLinkDaFoto(), formato);
+		} catch (IOException e) {
+			response.sendRedirect(produto.getLinkDaFoto());
+			return;
+		}
+
+		long tamanhoDoArquivo;
+		try {
+			tamanhoDoArquivo = Files.size(arquivo);
+		} catch (NoSuchFileException e) {
+			// removido do cache entre a busca e o envio
+			response.sendRedirect(produto.getLinkDaFoto());
+			return;
+		}
+
+		response.setContentType("image/png");
+		response.setContentLengthLong(tamanhoDoArquivo);
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", "public, max-age=86400");
+
+		/*
+		 * Com o conector do Tomcat que suporta sendfile, só dizemos qual arquivo
+		 * enviar e o próprio Tomcat o entrega depois que o método retorna, com
+		 * sendfile (cópia feita pelo sistema operacional, sem passar pela JVM). O
+		 * arquivo acabou de ser usado, então é o último que o cache removeria.
+		 */
+		if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+			request.setAttribute("org.apache.tomcat.sendfile.filename", arquivo.toAbsolutePath().toString());
+			request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+			request.setAttribute("org.apache.tomcat.sendfile.end", tamanhoDoArquivo);
+			return;
+		}
+
+		// sem sendfile, uma cópia comum pelo OutputStream da resposta
+		try {
+			Files.copy(arquivo, response.getOutputStream());
+		} catch (NoSuchFileException e) {
+			response.reset();
+			response.sendRedirect(produto.getLinkDaFoto());
+		}
+	}
+
+	private Tamanho tamanho(String nome) {
+		for (Tamanho tamanho : Tamanho.values()) {
+			if (tamanho.name().equalsIgnoreCase(nome))
+				return tamanho;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,52 @@
+package br.com.caelum.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import br.com.caelum.indice.Precos;
+import br.com.caelum.indice.ResumoDePrecos;
+
+/*
+ * Resumo dos preços em JSON, para painéis e a barra lateral da loja. Responde
+ * da memória (veja Precos) e fica fora do OpenEntityManagerInView
+ * (Configurador).
+ */
+@Controller
+@RequestMapping(value="/precos", method=RequestMethod.GET, produces="application/json")
+public class PrecosController {
+	
+	@Autowired
+	private Precos precos;
+	
+	@ResponseBody
+	@RequestMapping
+	public Map<String, Object> todos() {
+		Map<String, Object> resumo = new LinkedHashMap<>();
+		resumo.put("todos", precos.getTodos());
+		resumo.put("categorias", precos.getPorCategoria());
+		resumo.put("lojas", precos.getPorLoja());
+		return resumo;
+	}
+	
+	@RequestMapping("/categoria/{id}")
+	public ResponseEntity<ResumoDePrecos> categoria(@PathVariable Integer id) {
+		return encontrado(precos.daCategoria(id));
+	}
+	
+	@RequestMapping("/loja/{id}")
+	public ResponseEntity<ResumoDePrecos> loja(@PathVariable Integer id) {
+		return encontrado(precos.daLoja(id));
+	}
+	
+	private ResponseEntity<ResumoDePrecos> encontrado(ResumoDePrecos resumo) {
+		return resumo == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(resumo);
+	}
+}
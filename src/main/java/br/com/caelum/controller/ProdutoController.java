@@ -1,12 +1,14 @@
 package br.com.caelum.controller;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.ModelAttribute;
@@ -14,19 +16,57 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import br.com.caelum.admissao.ComPrioridade;
+import br.com.caelum.admissao.Prioridade;
+import br.com.caelum.dao.GravadorDeProdutos;
 import br.com.caelum.dao.ProdutoDao;
+import br.com.caelum.dao.ResultadoDaGravacao;
+import br.com.caelum.indice.CatalogoDasLojas;
+import br.com.caelum.indice.IndiceDeFiltros;
+import br.com.caelum.indice.PaginaDeIds;
+import br.com.caelum.indice.ProdutosRelacionados;
+import br.com.caelum.indice.Sugestao;
+import br.com.caelum.indice.Sugestoes;
+import br.com.caelum.indice.Vitrine;
 import br.com.caelum.model.Produto;
+import br.com.caelum.visualizacao.ContadorDeVisualizacoes;
+import br.com.caelum.visualizacao.MaisVisto;
 
 @Controller
 @RequestMapping("/produto")
 public class ProdutoController {
 	
+	private static final int PRODUTOS_POR_PAGINA = 12;
+	private static final int MAIS_VISTOS = 24;
+	
 	@Autowired
 	private ProdutoDao produtoDao;
 	
-	@Transactional
+	@Autowired
+	private IndiceDeFiltros indiceDeFiltros;
+	
+	@Autowired
+	private Sugestoes sugestoes;
+	
+	@Autowired
+	private GravadorDeProdutos gravadorDeProdutos;
+	
+	@Autowired
+	private ContadorDeVisualizacoes contadorDeVisualizacoes;
+	
+	@Autowired
+	private ProdutosRelacionados produtosRelacionados;
+	
+	@Autowired
+	private CatalogoDasLojas catalogoDasLojas;
+	
+	/*
+	 * Sem @Transactional: o GravadorDeProdutos abre uma transação por tentativa
+	 * para poder repetir a gravação quando houver conflito de versão.
+	 */
 	@RequestMapping(method=RequestMethod.POST, name="cadastra_produto", value="cadastraProduto")
 	public String salvar(@ModelAttribute @Valid Produto produto, BindingResult result, RedirectAttributes atts) {
 		
@@ -34,7 +74,22 @@ public class ProdutoController {
 			return form(produto);
 		}
 		
-		produtoDao.insere(produto);
+		ResultadoDaGravacao gravacao = gravadorDeProdutos.grava(produto);
+		
+		if(gravacao.isConflito()) {
+			for (String campo : gravacao.getCamposEmConflito()) {
+				result.rejectValue(campo, "Conflito");
+			}
+			if(gravacao.getCamposEmConflito().isEmpty()) {
+				result.reject("Conflito");
+			}
+			
+			// permite reenviar, conscientemente, sobre a versão atual
+			if(gravacao.getAtual() != null) {
+				produto.setVersao(gravacao.getAtual().getVersao());
+			}
+			return form(produto);
+		}
 		
 		return "redirect:/";
 	}
@@ -47,6 +102,7 @@ public class ProdutoController {
 	@RequestMapping(value="/{id}/form", method=RequestMethod.GET)
 	public String update(@PathVariable Integer id, Model model) {
 		Produto produto = produtoDao.getProduto(id);
+		gravadorDeProdutos.registraVersao(produto);
 		
 		model.addAttribute("produto", produto);
 		return form(produto);
@@ -55,17 +111,31 @@ public class ProdutoController {
 	@RequestMapping("/{id}")
 	public String detalhe(@PathVariable Integer id, Model model) {
 		Produto produto = produtoDao.getProduto(id);
+		if(produto != null) {
+			contadorDeVisualizacoes.registra(id);
+			// já calculados em memória; os produtos em si vêm do cache de segundo nível
+			model.addAttribute("relacionados", produtoDao.getProdutos(produtosRelacionados.de(id)));
+		}
 		
 		model.addAttribute("produto", produto);
 		return "produto/detalhe";
 	}	
 	
+	@ComPrioridade(Prioridade.MEDIA)
 	@RequestMapping(value="/buscar", method=RequestMethod.POST, name="buscarProdutos")
 	public String buscarPor(Model model,
 			@RequestParam String nome, 
 			@RequestParam Integer categoriaId,
 			@RequestParam(required=false) Integer lojaId) {
 		
+		// só a loja (e a categoria): a vitrine da loja já tem os cartões prontos
+		if (nome.isEmpty() && lojaId != null) {
+			Vitrine vitrine = catalogoDasLojas.daLoja(lojaId);
+			model.addAttribute("produtos",
+					vitrine == null ? Collections.emptyList() : vitrine.daCategoria(categoriaId));
+			return "home";
+		}
+		
 		List<Produto> produtos = produtoDao.getProdutos(nome, categoriaId, lojaId);
 		
 		model.addAttribute("produtos", produtos);
@@ -73,4 +143,51 @@ public class ProdutoController {
 		return "home";
 		
 	}
+	
+	/*
+	 * Filtro por combinações de categorias e lojas, ex.:
+	 * /produto/filtrar?expressao=categoria:1 AND categoria:2 (veja Expressao).
+	 * Os ids saem do índice em memória e só a página pedida vai ao banco.
+	 */
+	@ComPrioridade(Prioridade.MEDIA)
+	@RequestMapping(value="/filtrar", method=RequestMethod.GET)
+	public String filtrar(Model model, @RequestParam String expressao,
+			@RequestParam(defaultValue="0") int pagina) {
+		
+		PaginaDeIds ids = indiceDeFiltros.filtra(expressao, Math.max(pagina, 0), PRODUTOS_POR_PAGINA);
+		
+		model.addAttribute("produtos", produtoDao.getProdutos(ids.getIds()));
+		model.addAttribute("expressao", expressao);
+		model.addAttribute("paginacao", ids);
+		
+		return "home";
+	}
+	
+	/*
+	 * Ranking aproximado, atualizado a cada gravação dos contadores (veja
+	 * ContadorDeVisualizacoes): não conta nada no banco, só carrega os produtos.
+	 */
+	@RequestMapping(value="/mais-vistos", method=RequestMethod.GET)
+	public String maisVistos(Model model) {
+		Map<Integer, Long> visualizacoes = new LinkedHashMap<>();
+		for (MaisVisto maisVisto : contadorDeVisualizacoes.getMaisVistos(MAIS_VISTOS)) {
+			visualizacoes.put(maisVisto.getProdutoId(), maisVisto.getVisualizacoes());
+		}
+		
+		model.addAttribute("produtos", produtoDao.getProdutos(visualizacoes.keySet()));
+		model.addAttribute("visualizacoes", visualizacoes);
+		
+		return "home";
+	}
+	
+	/*
+	 * Autocompletar da busca: chamado a cada tecla, responde da memória (veja
+	 * Sugestoes) e fica fora do OpenEntityManagerInView (Configurador).
+	 */
+	@ResponseBody
+	@RequestMapping(value="/sugestoes", method=RequestMethod.GET, produces="application/json")
+	public List<Sugestao> sugestoes(@RequestParam String prefixo,
+			@RequestParam(defaultValue="10") int quantidade) {
+		return sugestoes.sugere(prefixo, quantidade);
+	}
 }
@@ -0,0 +1,32 @@
+package br.com.caelum.controller;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import br.com.caelum.Prontidao;
+
+/**
+ * Sonda de prontidão para o balanceador: 200 quando a aplicação já pode receber
+ * tráfego e 503 enquanto a carga inicial ainda está rodando.
+ */
+@Controller
+public class ProntidaoController {
+
+	@Autowired
+	private Prontidao prontidao;
+
+	@ResponseBody
+	@RequestMapping(value = "/pronto", produces = "text/plain")
+	public String pronto(HttpServletResponse response) {
+		if (!prontidao.isPronto()) {
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return "iniciando";
+		}
+
+		return "pronto em " + prontidao.getTempoAtePronto() + " ms";
+	}
+}
@@ -0,0 +1,91 @@
+package br.com.caelum.dao;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Junta leituras simultâneas da mesma chave numa única ida ao banco.
+ *
+ * Quando um produto popular sai do cache de segundo nível (por exemplo, pela
+ * invalidação do NONSTRICT_READ_WRITE ao gravar), centenas de requisições de
+ * detalhe erram o cache ao mesmo tempo e cada uma faria o seu SELECT, ocupando
+ * uma conexão do pool. Aqui só a primeira carrega; as outras esperam ela
+ * terminar e repetem a leitura, que agora encontra o produto no cache.
+ *
+ * Cada requisição tem o seu EntityManager (OpenEntityManagerInView), então
+ * não dá para entregar a entidade carregada por uma thread às outras: o que é
+ * compartilhado é o cache de segundo nível (ou o cache de queries) que a
+ * primeira leitura preenche.
+ */
+@Component
+public class CarregamentoUnico {
+
+	/*
+	 * Quem espera desiste depois disso e carrega por conta própria, para uma
+	 * leitura travada não segurar todas as outras.
+	 */
+	private static final long ESPERA_MAXIMA = 5000;
+
+	private final Map<Object, CompletableFuture<Void>> emAndamento = new ConcurrentHashMap<>();
+
+	private final LongAdder carregamentos = new LongAdder();
+	private final LongAdder coalescidas = new LongAdder();
+	private final LongAdder desistencias = new LongAdder();
+
+	public <T> T carrega(Object chave, Supplier<T> leitura) {
+		CompletableFuture<Void> minha = new CompletableFuture<>();
+		CompletableFuture<Void> outra = emAndamento.putIfAbsent(chave, minha);
+
+		if (outra != null) {
+			coalescidas.increment();
+			aguarda(outra);
+			return leitura.get();
+		}
+
+		carregamentos.increment();
+		try {
+			return leitura.get();
+		} finally {
+			emAndamento.remove(chave, minha);
+			// mesmo se a leitura falhou: quem espera tenta sozinho
+			minha.complete(null);
+		}
+	}
+
+	private void aguarda(CompletableFuture<Void> outra) {
+		try {
+			outra.get(ESPERA_MAXIMA, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			desistencias.increment();
+		} catch (ExecutionException e) {
+			// nunca completamos com erro
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getCarregamentos() {
+		return carregamentos.sum();
+	}
+
+	public long getCoalescidas() {
+		return coalescidas.sum();
+	}
+
+	public long getDesistencias() {
+		return desistencias.sum();
+	}
+
+	public int getEmAndamento() {
+		return emAndamento.size();
+	}
+
+}
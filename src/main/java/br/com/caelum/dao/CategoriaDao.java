@@ -18,6 +18,8 @@ public class CategoriaDao {
 
 	public List<Categoria> getCategorias() {
 		TypedQuery<Categoria> query = em.createQuery("from Categoria", Categoria.class);
+		query.setHint("org.hibernate.readOnly", true);
+		query.setHint("org.hibernate.cacheable", true);
 
 		return query.getResultList();
 	}
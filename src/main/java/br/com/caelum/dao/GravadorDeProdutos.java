@@ -0,0 +1,247 @@
+package br.com.caelum.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.model.EstadoDoProduto;
+import br.com.caelum.model.Produto;
+
+/**
+ * Grava produtos resolvendo conflitos de lock otimista (@Version).
+ *
+ * Quando dois usuários editam o mesmo produto, o segundo a salvar recebe uma
+ * OptimisticLockException. Em vez de perder a requisição inteira, comparamos
+ * campo a campo (os mesmos que o @DynamicUpdate colocaria no UPDATE) três
+ * estados: a versão que o usuário abriu para editar (base), o que ele enviou e
+ * o que está no banco agora.
+ *
+ * Se cada campo foi alterado por no máximo um dos lados, as alterações são
+ * mescladas e a gravação é repetida algumas vezes, com uma espera aleatória
+ * (jitter) para não colidir de novo com quem está gravando o mesmo produto. Se
+ * os dois lados alteraram o mesmo campo, devolvemos um conflito com a lista de
+ * campos para o usuário decidir.
+ *
+ * Cada tentativa roda na sua própria transação (TransactionTemplate, como no
+ * CriadorDeProdutos), por isso quem chama não deve estar dentro de um
+ * método @Transactional.
+ */
+@Component
+public class GravadorDeProdutos {
+
+	static final int MAXIMO_DE_TENTATIVAS = 3;
+	private static final int VERSOES_EM_MEMORIA = 1000;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private ProdutoDao produtoDao;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	/*
+	 * Versões recentes de cada produto, usadas como base da mescla. Registramos a
+	 * versão aberta no formulário de edição e a versão resultante de cada gravação.
+	 */
+	private final Map<String, EstadoDoProduto> versoes = new LinkedHashMap<String, EstadoDoProduto>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, EstadoDoProduto> maisAntiga) {
+			return size() > VERSOES_EM_MEMORIA;
+		}
+	};
+
+	private final LongAdder gravacoes = new LongAdder();
+	private final LongAdder retentativas = new LongAdder();
+	private final LongAdder mesclas = new LongAdder();
+	private final LongAdder conflitos = new LongAdder();
+
+	public void registraVersao(Produto produto) {
+		if (produto == null || produto.getId() == null || produto.getVersao() == null)
+			return;
+
+		synchronized (versoes) {
+			versoes.put(chave(produto.getId(), produto.getVersao()), EstadoDoProduto.de(produto));
+		}
+	}
+
+	public ResultadoDaGravacao grava(Produto produto) {
+		gravacoes.increment();
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+		if (produto.getId() == null) {
+			Produto gravado = template.execute(status -> insere(produto));
+			registraVersao(gravado);
+			return ResultadoDaGravacao.gravado(gravado);
+		}
+
+		EstadoDoProduto base = versao(produto.getId(), produto.getVersao());
+		boolean mesclado = false;
+
+		for (int tentativa = 1;; tentativa++) {
+			try {
+				Produto gravado = template.execute(status -> insere(produto));
+				registraVersao(gravado);
+
+				if (mesclado) {
+					mesclas.increment();
+					return ResultadoDaGravacao.mesclado(gravado);
+				}
+				return ResultadoDaGravacao.gravado(gravado);
+			} catch (OptimisticLockException | OptimisticLockingFailureException e) {
+				Produto atual = template.execute(status -> buscaNoBanco(produto.getId()));
+
+				List<String> emConflito = mescla(base, produto, atual);
+				if (!emConflito.isEmpty() || tentativa >= MAXIMO_DE_TENTATIVAS) {
+					conflitos.increment();
+					return ResultadoDaGravacao.conflito(atual, emConflito);
+				}
+
+				mesclado = true;
+				retentativas.increment();
+				espera(tentativa);
+			}
+		}
+	}
+
+	private Produto insere(Produto produto) {
+		Produto gravado = produtoDao.insere(produto);
+		em.flush();
+		return gravado;
+	}
+
+	/*
+	 * Ignora o cache de segundo nível: com NONSTRICT_READ_WRITE ele pode estar
+	 * justamente com a versão antiga que causou o conflito.
+	 */
+	private Produto buscaNoBanco(Integer id) {
+		Map<String, Object> dicas = Collections.<String, Object>singletonMap("javax.persistence.cache.retrieveMode",
+				CacheRetrieveMode.BYPASS);
+		return em.find(Produto.class, id, dicas);
+	}
+
+	/*
+	 * Leva para o produto enviado os campos que só o outro usuário alterou e
+	 * devolve os campos alterados pelos dois lados. Sem a versão base não há como
+	 * saber quem alterou o quê, então toda diferença é conflito.
+	 */
+	private List<String> mescla(EstadoDoProduto base, Produto meu, Produto atual) {
+		List<String> emConflito = new ArrayList<>();
+		if (atual == null) {
+			emConflito.add("id");
+			return emConflito;
+		}
+
+		EstadoDoProduto enviado = EstadoDoProduto.de(meu);
+		EstadoDoProduto banco = EstadoDoProduto.de(atual);
+
+		if (usaDoBanco("nome", base == null ? null : base.getNome(), enviado.getNome(), banco.getNome(), base,
+				emConflito))
+			meu.setNome(atual.getNome());
+
+		if (usaDoBanco("linkDaFoto", base == null ? null : base.getLinkDaFoto(), enviado.getLinkDaFoto(),
+				banco.getLinkDaFoto(), base, emConflito))
+			meu.setLinkDaFoto(atual.getLinkDaFoto());
+
+		if (usaDoBanco("descricao", base == null ? null : base.getDescricao(), enviado.getDescricao(),
+				banco.getDescricao(), base, emConflito))
+			meu.setDescricao(atual.getDescricao());
+
+		if (usaDoBanco("preco", base == null ? null : base.getPreco(), enviado.getPreco(), banco.getPreco(), base,
+				emConflito))
+			meu.setPreco(atual.getPreco());
+
+		if (usaDoBanco("loja.id", base == null ? null : base.getLojaId(), enviado.getLojaId(), banco.getLojaId(), base,
+				emConflito))
+			meu.setLoja(atual.getLoja());
+
+		if (usaDoBanco("categorias", base == null ? null : base.getCategoriaIds(), enviado.getCategoriaIds(),
+				banco.getCategoriaIds(), base, emConflito))
+			meu.setCategorias(new ArrayList<>(atual.getCategorias()));
+
+		meu.setVersao(atual.getVersao());
+		return emConflito;
+	}
+
+	private boolean usaDoBanco(String campo, Object original, Object meu, Object doBanco, EstadoDoProduto base,
+			List<String> emConflito) {
+		if (Objects.equals(meu, doBanco))
+			return false;
+
+		if (base == null) {
+			emConflito.add(campo);
+			return false;
+		}
+
+		boolean euAlterei = !Objects.equals(original, meu);
+		boolean outroAlterou = !Objects.equals(original, doBanco);
+
+		if (euAlterei && outroAlterou)
+			emConflito.add(campo);
+
+		return !euAlterei && outroAlterou;
+	}
+
+	private void espera(int tentativa) {
+		long limite = 20L << tentativa;
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(limite / 2, limite));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private EstadoDoProduto versao(Integer id, Integer versao) {
+		if (versao == null)
+			return null;
+
+		synchronized (versoes) {
+			return versoes.get(chave(id, versao));
+		}
+	}
+
+	private static String chave(Integer id, Integer versao) {
+		return id + ":" + versao;
+	}
+
+	public long getGravacoes() {
+		return gravacoes.sum();
+	}
+
+	public long getRetentativas() {
+		return retentativas.sum();
+	}
+
+	public long getMesclas() {
+		return mesclas.sum();
+	}
+
+	public long getConflitos() {
+		return conflitos.sum();
+	}
+
+	public double getTaxaDeConflito() {
+		long total = gravacoes.sum();
+		return total == 0 ? 0 : (double) conflitos.sum() / total;
+	}
+
+}
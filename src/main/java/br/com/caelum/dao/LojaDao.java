@@ -18,6 +18,8 @@ public class LojaDao {
 	
 	public List<Loja> getLojas() { 
 		TypedQuery<Loja> query = em.createQuery("from Loja", Loja.class);
+		query.setHint("org.hibernate.readOnly", true);
+		query.setHint("org.hibernate.cacheable", true);
 		
 		return query.getResultList();
 	}
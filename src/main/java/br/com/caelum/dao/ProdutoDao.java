@@ -1,28 +1,60 @@
 package br.com.caelum.dao;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
 
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.EstadoDoProduto;
 import br.com.caelum.model.Loja;
 import br.com.caelum.model.Produto;
 
 @Repository
 public class ProdutoDao {
 
+	private static final int POR_NOME = 1;
+	private static final int POR_CATEGORIA = 2;
+	private static final int POR_LOJA = 4;
+
+	/*
+	 * Ids por SELECT ... WHERE id IN (...) em getProdutos(ids). O driver do
+	 * PostgreSQL aceita at 32767 parmetros por comando; 1000 mantm o SQL
+	 * pequeno e ainda traz 500 produtos numa ida s ao banco.
+	 */
+	private static final int IDS_POR_CONSULTA = 1000;
+
 	@PersistenceContext
 	private EntityManager em;
 
+	@Autowired
+	private CarregamentoUnico carregamentoUnico;
+
+	@Autowired
+	private ApplicationEventPublisher eventos;
+
+	// JPQL das buscas j montadas, indexado pela combinao de filtros (POR_NOME | ...)
+	private final Map<Integer, String> buscas = new ConcurrentHashMap<>();
+
 	public List<Produto> getProdutos() {
 		/*
 		 * O cdigo comentado abaixo faz um SELECT na tabela de produtos j trazendo
@@ -49,15 +81,86 @@ public class ProdutoDao {
 
 		// return em.createQuery("SELECT DISTINCT p FROM Produto p JOIN FETCH
 		// p.categorias", Produto.class)
-		return em.createQuery("FROM Produto", Produto.class).getResultList();
+		return em.createQuery("FROM Produto", Produto.class).setHint("org.hibernate.readOnly", true)
+				.getResultList();
 	}
 
 	public Produto getProduto(Integer id) {
-		Produto produto = em.find(Produto.class, id);
+		// j est no cache de segundo nvel: nada a coalescer
+		if (em.getEntityManagerFactory().getCache().contains(Produto.class, id))
+			return em.find(Produto.class, id);
+
+		Produto produto = carregamentoUnico.carrega(Arrays.asList(Produto.class, id),
+				() -> em.find(Produto.class, id));
 		return produto;
 	}
 
+	/*
+	 * Busca vrios produtos de uma vez (carrinho, relacionados, resultados de
+	 * ndices...), na ordem dos ids pedidos. Ids inexistentes so ignorados.
+	 * 
+	 * O multiLoad do Hibernate procura cada id primeiro no contexto de
+	 * persistncia e no cache de segundo nvel; s os que faltarem vo ao banco,
+	 * em consultas com IN de at IDS_POR_CONSULTA ids, em vez de um em.find por
+	 * produto.
+	 */
+	public List<Produto> getProdutos(Collection<Integer> ids) {
+		if (ids.isEmpty())
+			return new ArrayList<>();
+
+		// sem um CacheMode explcito o multiLoad no consulta o cache de segundo nvel
+		List<Produto> encontrados = em.unwrap(Session.class).byMultipleIds(Produto.class).with(CacheMode.NORMAL)
+				.enableSessionCheck(true).enableOrderedReturn(true).withBatchSize(IDS_POR_CONSULTA)
+				.multiLoad(new ArrayList<>(ids));
+
+		List<Produto> produtos = new ArrayList<>(encontrados.size());
+		for (Produto produto : encontrados) {
+			if (produto != null)
+				produtos.add(produto);
+		}
+		return produtos;
+	}
+
 	public List<Produto> getProdutos(String nome, Integer categoriaId, Integer lojaId) {
+		int filtros = (nome.isEmpty() ? 0 : POR_NOME) | (categoriaId != null ? POR_CATEGORIA : 0)
+				| (lojaId != null ? POR_LOJA : 0);
+
+		String jpql = buscas.computeIfAbsent(filtros, this::montaBusca);
+
+		TypedQuery<Produto> typedQuery = em.createQuery(jpql, Produto.class);
+
+		if ((filtros & POR_NOME) != 0)
+			typedQuery.setParameter("nome", "%" + nome + "%");
+		if ((filtros & POR_CATEGORIA) != 0)
+			typedQuery.setParameter("categoriaId", categoriaId);
+		if ((filtros & POR_LOJA) != 0)
+			typedQuery.setParameter("lojaId", lojaId);
+
+		// Permitindo fazer cache dessa query criada por ns
+		typedQuery.setHint("org.hibernate.cacheable", "true");
+
+		// os produtos da busca s so exibidos: sem cpia para dirty checking
+		typedQuery.setHint("org.hibernate.readOnly", true);
+
+		/*
+		 * Buscas iguais ao mesmo tempo esperam a primeira, que preenche o cache de
+		 * queries, e ento executam j encontrando o resultado l.
+		 */
+		return carregamentoUnico.carrega(Arrays.asList("busca", filtros, nome, categoriaId, lojaId),
+				typedQuery::getResultList);
+	}
+
+	/*
+	 * Monta uma das 8 combinaes de filtros da busca (nome, categoria e loja
+	 * presentes ou no). Os valores entram como parmetros, e no como literais,
+	 * ento cada combinao gera sempre o mesmo SQL: o Hibernate reaproveita o
+	 * plano da query e o pool reaproveita o PreparedStatement.
+	 *
+	 * A cada em.createQuery(criteria) o Hibernate traduz a CriteriaQuery de novo
+	 * para JPQL. Por isso guardamos em buscas o JPQL traduzido na primeira vez, e
+	 * as prximas buscas vo direto ao cache de planos pelo texto da query.
+	 */
+	private String montaBusca(int filtros) {
 
 		/*
 		 * CriteriaBuilder  uma fbrica auxiliar para criar expresses sobre as funes
@@ -109,6 +212,12 @@ public class ProdutoDao {
 		 */
 		Root<Produto> root = query.from(Produto.class);
 
+		/*
+		 * Apelidos fixos, para o JPQL traduzido (que fica guardado e aparece nos
+		 * logs) usar produto e categoria em vez de apelidos gerados.
+		 */
+		root.alias("produto");
+
 		Path<String> nomePath = root.<String>get("nome");
 
 		/*
@@ -124,7 +233,9 @@ public class ProdutoDao {
 		 * relacionamento de "categoria"  @ManyToMany. Ou seja, precisaremos de um join
 		 * - a partir do produto - como j vimos.
 		 */
-		Path<Integer> categoriaPath = root.join("categorias").<Integer>get("id");
+		Join<Produto, Categoria> categorias = root.join("categorias");
+		categorias.alias("categoria");
+		Path<Integer> categoriaPath = categorias.<Integer>get("id");
 
 		/*
 		 * Ou seja, precisamos fazer um join a partir do produto e se o id da categoria
@@ -134,42 +245,59 @@ public class ProdutoDao {
 
 		// Criando uma clusula para ser inserida no WHERE que verifica se o nome do
 		// produto existe
-		if (!nome.isEmpty()) {
-			Predicate nomeIgual = criteriaBuilder.like(nomePath, "%" + nome + "%");
+		if ((filtros & POR_NOME) != 0) {
+			Predicate nomeIgual = criteriaBuilder.like(nomePath, criteriaBuilder.parameter(String.class, "nome"));
 			predicates.add(nomeIgual);
 		}
 
 		// Criando uma clusula para ser inserida no WHERE que verifica se a categoria 
 		// igual a escolhida
-		if (categoriaId != null) {
-			Predicate categoriaIgual = criteriaBuilder.equal(categoriaPath, categoriaId);
+		if ((filtros & POR_CATEGORIA) != 0) {
+			Predicate categoriaIgual = criteriaBuilder.equal(categoriaPath,
+					criteriaBuilder.parameter(Integer.class, "categoriaId"));
 			predicates.add(categoriaIgual);
 		}
 
 		// Criando uma clusula para ser inserida no WHERE que verifica se o id da loja
 		//  igual
-		if (lojaId != null) {
-			Predicate lojaIgual = criteriaBuilder.equal(lojaPath, lojaId);
+		if ((filtros & POR_LOJA) != 0) {
+			Predicate lojaIgual = criteriaBuilder.equal(lojaPath, criteriaBuilder.parameter(Integer.class, "lojaId"));
 			predicates.add(lojaIgual);
 		}
 
 		// Inserindo todos os Predicates (clusulas para consulta) no WHERE
 		query.where((Predicate[]) predicates.toArray(new Predicate[0]));
 
-		TypedQuery<Produto> typedQuery = em.createQuery(query);
-		
-		// Permitindo fazer cache dessa query criada por ns
-		typedQuery.setHint("org.hibernate.cacheable", "true");
-		
-		return typedQuery.getResultList();
-
+		return em.createQuery(query).unwrap(Query.class).getQueryString();
 	}
 
-	public void insere(Produto produto) {
-		if (produto.getId() == null)
+	/*
+	 * Alm de gravar, avisa quem mantm dados derivados dos produtos em memria
+	 * (ProdutoGravado). O estado anterior  lido antes do merge, que copia os
+	 * valores novos por cima da instncia gerenciada.
+	 *
+	 * A alteracao  o txid desta transao, para a exportao incremental
+	 * (RegistroDeAlteracoes).
+	 */
+	public Produto insere(Produto produto) {
+		if (em.unwrap(Session.class).isDefaultReadOnly())
+			throw new IllegalStateException(
+					"Gravacao de produto num EntityManager somente leitura (requisicao GET?): " + produto.getId());
+
+		produto.setAlteracao(((Number) em.createNativeQuery("select txid_current()").getSingleResult()).longValue());
+
+		if (produto.getId() == null) {
 			em.persist(produto);
-		else
-			em.merge(produto);
+			eventos.publishEvent(new ProdutoGravado(null, EstadoDoProduto.de(produto)));
+			return produto;
+		}
+
+		Produto anterior = em.find(Produto.class, produto.getId());
+		EstadoDoProduto estadoAnterior = anterior == null ? null : EstadoDoProduto.de(anterior);
+
+		Produto gravado = em.merge(produto);
+		eventos.publishEvent(new ProdutoGravado(estadoAnterior, EstadoDoProduto.de(gravado)));
+		return gravado;
 	}
 
 }
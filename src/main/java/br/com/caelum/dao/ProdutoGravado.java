@@ -0,0 +1,48 @@
+package br.com.caelum.dao;
+
+import br.com.caelum.model.EstadoDoProduto;
+
+/**
+ * Evento publicado pelo {@link ProdutoDao} a cada produto inserido ou
+ * alterado, com o estado antes e depois da gravação.
+ *
+ * Serve para manter atualizadas as estruturas em memória derivadas dos
+ * produtos (índices, sugestões...). Quem escuta deve usar
+ * {@code @TransactionalEventListener(fallbackExecution = true)}, para só
+ * aplicar a alteração depois do commit: uma gravação desfeita por conflito de
+ * versão não chega aos índices.
+ *
+ * O anterior é só informativo: vem de um em.find, que pode devolver uma cópia
+ * velha do cache de segundo nível. Quem mantém um índice deve tirar dele o que
+ * o próprio índice guardou para o produto. E como os eventos de gravações
+ * concorrentes podem chegar fora de ordem, deve ignorar os de versão menor que
+ * a indexada ({@link EstadoDoProduto#isAnteriorA(Integer)}). A versão do atual
+ * é a lida antes do commit, que ainda a incrementa: a gravação seguinte traz a
+ * versão que o banco tem depois desta.
+ */
+public class ProdutoGravado {
+
+	private final EstadoDoProduto anterior;
+	private final EstadoDoProduto atual;
+
+	public ProdutoGravado(EstadoDoProduto anterior, EstadoDoProduto atual) {
+		this.anterior = anterior;
+		this.atual = atual;
+	}
+
+	/**
+	 * Estado antes da gravação, ou null se o produto é novo.
+	 */
+	public EstadoDoProduto getAnterior() {
+		return anterior;
+	}
+
+	public EstadoDoProduto getAtual() {
+		return atual;
+	}
+
+	public boolean isNovo() {
+		return anterior == null;
+	}
+
+}
@@ -0,0 +1,60 @@
+package br.com.caelum.dao;
+
+import java.util.Collections;
+import java.util.List;
+
+import br.com.caelum.model.Produto;
+
+/**
+ * Resposta do {@link GravadorDeProdutos}: diz se o produto foi gravado (direto
+ * ou após mesclar alterações concorrentes) ou se houve conflito.
+ *
+ * Em caso de conflito, camposEmConflito traz os caminhos de binding (ex.:
+ * "nome", "loja.id") que foram alterados pelos dois lados e atual traz o
+ * produto como está no banco.
+ */
+public class ResultadoDaGravacao {
+
+	public enum Situacao {
+		GRAVADO, MESCLADO, CONFLITO
+	}
+
+	private final Situacao situacao;
+	private final Produto atual;
+	private final List<String> camposEmConflito;
+
+	private ResultadoDaGravacao(Situacao situacao, Produto atual, List<String> camposEmConflito) {
+		this.situacao = situacao;
+		this.atual = atual;
+		this.camposEmConflito = Collections.unmodifiableList(camposEmConflito);
+	}
+
+	static ResultadoDaGravacao gravado(Produto produto) {
+		return new ResultadoDaGravacao(Situacao.GRAVADO, produto, Collections.<String>emptyList());
+	}
+
+	static ResultadoDaGravacao mesclado(Produto produto) {
+		return new ResultadoDaGravacao(Situacao.MESCLADO, produto, Collections.<String>emptyList());
+	}
+
+	static ResultadoDaGravacao conflito(Produto atual, List<String> campos) {
+		return new ResultadoDaGravacao(Situacao.CONFLITO, atual, campos);
+	}
+
+	public boolean isConflito() {
+		return situacao == Situacao.CONFLITO;
+	}
+
+	public Situacao getSituacao() {
+		return situacao;
+	}
+
+	public Produto getAtual() {
+		return atual;
+	}
+
+	public List<String> getCamposEmConflito() {
+		return camposEmConflito;
+	}
+
+}
@@ -0,0 +1,166 @@
+package br.com.caelum.exportacao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Escreve o catálogo em grupos de linhas, coluna por coluna, cada grupo
+ * comprimido com gzip. O formato está descrito em {@link LeitorDeCatalogo}.
+ *
+ * Só o grupo atual fica em memória ({@link #LINHAS_POR_GRUPO} linhas), em
+ * arrays de primitivos: o preço é um double[], e a loja e as categorias viram
+ * posições em dicionários, então o nome de cada loja e de cada categoria é
+ * escrito uma vez só no arquivo, no primeiro grupo em que aparece.
+ */
+class EscritorColunar {
+
+	static final int LINHAS_POR_GRUPO = 4096;
+
+	private final DataOutputStream saida;
+
+	private final Map<Integer, Integer> lojas = new HashMap<>();
+	private final Map<Integer, Integer> categorias = new HashMap<>();
+	private final List<Object[]> lojasNovas = new ArrayList<>();
+	private final List<Object[]> categoriasNovas = new ArrayList<>();
+
+	private int linhas;
+	private long linhasEscritas;
+	private final int[] ids = new int[LINHAS_POR_GRUPO];
+	private final int[] versoes = new int[LINHAS_POR_GRUPO];
+	private final double[] precos = new double[LINHAS_POR_GRUPO];
+	private final int[] lojaDaLinha = new int[LINHAS_POR_GRUPO];
+	private final int[] categoriasPorLinha = new int[LINHAS_POR_GRUPO];
+	private int[] categoriasDasLinhas = new int[LINHAS_POR_GRUPO];
+	private int totalDeCategorias;
+	private final String[] nomes = new String[LINHAS_POR_GRUPO];
+	private final String[] descricoes = new String[LINHAS_POR_GRUPO];
+	private final String[] fotos = new String[LINHAS_POR_GRUPO];
+
+	EscritorColunar(OutputStream saida, String marca) throws IOException {
+		this.saida = new DataOutputStream(saida);
+		this.saida.write(LeitorDeCatalogo.ASSINATURA);
+		this.saida.writeInt(LeitorDeCatalogo.VERSAO_DO_FORMATO);
+		texto(this.saida, marca);
+	}
+
+	/*
+	 * Começa uma linha; as categorias dela vêm depois, em adicionaCategoria.
+	 */
+	void adiciona(int id, int versao, String nome, String descricao, String linkDaFoto, double preco,
+			Integer lojaId, String lojaNome) throws IOException {
+		if (linhas == LINHAS_POR_GRUPO)
+			escreveGrupo();
+
+		ids[linhas] = id;
+		versoes[linhas] = versao;
+		nomes[linhas] = nome;
+		descricoes[linhas] = descricao;
+		fotos[linhas] = linkDaFoto;
+		precos[linhas] = preco;
+		lojaDaLinha[linhas] = lojaId == null ? -1 : posicao(lojas, lojasNovas, lojaId, lojaNome);
+		categoriasPorLinha[linhas] = 0;
+		linhas++;
+	}
+
+	void adicionaCategoria(int categoriaId, String categoriaNome) {
+		if (totalDeCategorias == categoriasDasLinhas.length)
+			categoriasDasLinhas = Arrays.copyOf(categoriasDasLinhas, totalDeCategorias * 2);
+		categoriasDasLinhas[totalDeCategorias++] = posicao(categorias, categoriasNovas, categoriaId, categoriaNome);
+		categoriasPorLinha[linhas - 1]++;
+	}
+
+	long fecha() throws IOException {
+		if (linhas > 0)
+			escreveGrupo();
+		saida.writeInt(0);
+		saida.flush();
+		return linhasEscritas;
+	}
+
+	private int posicao(Map<Integer, Integer> dicionario, List<Object[]> novas, int id, String nome) {
+		Integer posicao = dicionario.get(id);
+		if (posicao == null) {
+			posicao = dicionario.size();
+			dicionario.put(id, posicao);
+			novas.add(new Object[] { id, nome });
+		}
+		return posicao;
+	}
+
+	private void escreveGrupo() throws IOException {
+		ByteArrayOutputStream comprimido = new ByteArrayOutputStream();
+		try (DataOutputStream grupo = new DataOutputStream(new GZIPOutputStream(comprimido, 8192))) {
+			grupo.writeInt(linhas);
+			dicionario(grupo, lojasNovas);
+			dicionario(grupo, categoriasNovas);
+
+			for (int i = 0; i < linhas; i++) {
+				grupo.writeInt(ids[i]);
+			}
+			for (int i = 0; i < linhas; i++) {
+				grupo.writeInt(versoes[i]);
+			}
+			for (int i = 0; i < linhas; i++) {
+				grupo.writeDouble(precos[i]);
+			}
+			for (int i = 0; i < linhas; i++) {
+				grupo.writeInt(lojaDaLinha[i]);
+			}
+			for (int i = 0; i < linhas; i++) {
+				grupo.writeInt(categoriasPorLinha[i]);
+			}
+			for (int i = 0; i < totalDeCategorias; i++) {
+				grupo.writeInt(categoriasDasLinhas[i]);
+			}
+			for (int i = 0; i < linhas; i++) {
+				texto(grupo, nomes[i]);
+			}
+			for (int i = 0; i < linhas; i++) {
+				texto(grupo, descricoes[i]);
+			}
+			for (int i = 0; i < linhas; i++) {
+				texto(grupo, fotos[i]);
+			}
+		}
+
+		saida.writeInt(comprimido.size());
+		comprimido.writeTo(saida);
+
+		linhasEscritas += linhas;
+		linhas = 0;
+		totalDeCategorias = 0;
+		Arrays.fill(nomes, null);
+		Arrays.fill(descricoes, null);
+		Arrays.fill(fotos, null);
+	}
+
+	private static void dicionario(DataOutputStream grupo, List<Object[]> novas) throws IOException {
+		grupo.writeInt(novas.size());
+		for (Object[] entrada : novas) {
+			grupo.writeInt((Integer) entrada[0]);
+			texto(grupo, (String) entrada[1]);
+		}
+		novas.clear();
+	}
+
+	// writeUTF não serve: limita o texto a 64 KB e a descrição é TEXT
+	private static void texto(DataOutputStream saida, String texto) throws IOException {
+		if (texto == null) {
+			saida.writeInt(-1);
+			return;
+		}
+		byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+		saida.writeInt(bytes.length);
+		saida.write(bytes);
+	}
+
+}
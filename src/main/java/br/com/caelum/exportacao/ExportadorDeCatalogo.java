@@ -0,0 +1,102 @@
+package br.com.caelum.exportacao;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exporta o catálogo inteiro (ou só os produtos alterados) para o time de
+ * análise, sem montar a lista de produtos em memória.
+ *
+ * Em vez do getProdutos(), que carrega todas as entidades com loja e
+ * categorias, uma única query em JDBC puro traz produto, loja e categorias
+ * já juntos, por um cursor só de ida: com o autocommit desligado o driver do
+ * PostgreSQL busca {@link #LINHAS_POR_BUSCA} linhas por vez em vez do
+ * resultado inteiro. Cada linha vai direto para o {@link EscritorColunar},
+ * que guarda no máximo um grupo de linhas antes de comprimir e escrever.
+ */
+@Component
+public class ExportadorDeCatalogo {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ExportadorDeCatalogo.class);
+
+	static final int LINHAS_POR_BUSCA = 1000;
+
+	// uma linha por produto e categoria, em ordem de produto
+	private static final String CONSULTA = "select p.id, p.versao, p.nome, p.descricao, p.linkDaFoto, p.preco,"
+			+ " l.id, l.nome, c.id, c.nome"
+			+ " from Produto p left join Loja l on l.id = p.loja_id"
+			+ " left join categoria_produto cp on cp.Produto_id = p.id"
+			+ " left join Categoria c on c.id = cp.categorias_id";
+
+	@Autowired
+	private DataSource dataSource;
+
+	/**
+	 * Escreve os produtos em saida e devolve quantos foram. Com desde null
+	 * exporta todos; senão só os gravados a partir desse txid (veja
+	 * {@link RegistroDeAlteracoes}), pelo índice de Produto.alteracao.
+	 */
+	public long exporta(OutputStream saida, Long desde, String marca) throws IOException, SQLException {
+		long inicio = System.currentTimeMillis();
+		EscritorColunar escritor = new EscritorColunar(saida, marca);
+
+		try (Connection conexao = dataSource.getConnection()) {
+			conexao.setAutoCommit(false);
+			conexao.setReadOnly(true);
+			try {
+				String sql = CONSULTA + (desde == null ? "" : " where p.alteracao >= ?") + " order by p.id";
+				try (PreparedStatement consulta = conexao.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY)) {
+					consulta.setFetchSize(LINHAS_POR_BUSCA);
+					if (desde != null)
+						consulta.setLong(1, desde);
+
+					try (ResultSet linhas = consulta.executeQuery()) {
+						escreve(linhas, escritor);
+					}
+				}
+			} finally {
+				conexao.rollback();
+				conexao.setReadOnly(false);
+				conexao.setAutoCommit(true);
+			}
+		}
+
+		long produtos = escritor.fecha();
+		LOG.info("Catálogo exportado ({}): {} produtos em {} ms", desde == null ? "completo" : "incremental", produtos,
+				System.currentTimeMillis() - inicio);
+		return produtos;
+	}
+
+	private void escreve(ResultSet linhas, EscritorColunar escritor) throws SQLException, IOException {
+		int ultimoId = 0;
+		boolean primeira = true;
+		while (linhas.next()) {
+			int id = linhas.getInt(1);
+			if (primeira || id != ultimoId) {
+				int lojaId = linhas.getInt(7);
+				Integer loja = linhas.wasNull() ? null : lojaId;
+				escritor.adiciona(id, linhas.getInt(2), linhas.getString(3), linhas.getString(4),
+						linhas.getString(5), linhas.getDouble(6), loja, linhas.getString(8));
+				ultimoId = id;
+				primeira = false;
+			}
+
+			int categoriaId = linhas.getInt(9);
+			if (!linhas.wasNull())
+				escritor.adicionaCategoria(categoriaId, linhas.getString(10));
+		}
+	}
+
+}
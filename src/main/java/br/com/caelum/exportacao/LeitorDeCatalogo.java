@@ -0,0 +1,252 @@
+package br.com.caelum.exportacao;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lê o arquivo do catálogo exportado (/exportacao/catalogo), um grupo de
+ * linhas por vez.
+ *
+ * Formato, com inteiros e doubles big-endian (DataOutputStream) e textos como
+ * um int com o tamanho em bytes UTF-8 (-1 para null) seguido dos bytes:
+ *
+ * <pre>
+ * "CATALOGO", int versão do formato, texto marca d'água
+ * para cada grupo:
+ *   int tamanho do bloco, bloco comprimido com gzip:
+ *     int linhas
+ *     lojas novas: int n, n vezes (int id, texto nome)
+ *     categorias novas: int n, n vezes (int id, texto nome)
+ *     id: linhas x int
+ *     versao: linhas x int
+ *     preco: linhas x double
+ *     loja: linhas x int, posição no dicionário de lojas (-1 sem loja)
+ *     categorias: linhas x int quantidade, depois a soma delas x int posição
+ *     nome, descricao, linkDaFoto: linhas x texto cada
+ * int 0
+ * </pre>
+ *
+ * As posições dos dicionários contam desde o começo do arquivo: cada grupo só
+ * traz as lojas e categorias que ainda não tinham aparecido.
+ *
+ * Para conferir um arquivo ou convertê-lo em CSV:
+ *
+ * <pre>
+ * java -cp ... br.com.caelum.exportacao.LeitorDeCatalogo catalogo.col &gt; catalogo.csv
+ * </pre>
+ */
+public class LeitorDeCatalogo {
+
+	static final byte[] ASSINATURA = "CATALOGO".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSAO_DO_FORMATO = 1;
+
+	public static class Linha {
+		private int id;
+		private int versao;
+		private String nome;
+		private String descricao;
+		private String linkDaFoto;
+		private double preco;
+		private Integer lojaId;
+		private String loja;
+		private List<Integer> categoriaIds;
+		private List<String> categorias;
+
+		public int getId() {
+			return id;
+		}
+
+		public int getVersao() {
+			return versao;
+		}
+
+		public String getNome() {
+			return nome;
+		}
+
+		public String getDescricao() {
+			return descricao;
+		}
+
+		public String getLinkDaFoto() {
+			return linkDaFoto;
+		}
+
+		public double getPreco() {
+			return preco;
+		}
+
+		public Integer getLojaId() {
+			return lojaId;
+		}
+
+		public String getLoja() {
+			return loja;
+		}
+
+		public List<Integer> getCategoriaIds() {
+			return categoriaIds;
+		}
+
+		public List<String> getCategorias() {
+			return categorias;
+		}
+	}
+
+	private final DataInputStream entrada;
+	private final String marca;
+
+	private final List<Integer> lojaIds = new ArrayList<>();
+	private final List<String> lojas = new ArrayList<>();
+	private final List<Integer> categoriaIds = new ArrayList<>();
+	private final List<String> categorias = new ArrayList<>();
+
+	public LeitorDeCatalogo(InputStream entrada) throws IOException {
+		this.entrada = new DataInputStream(new BufferedInputStream(entrada));
+
+		byte[] assinatura = new byte[ASSINATURA.length];
+		this.entrada.readFully(assinatura);
+		if (!Arrays.equals(assinatura, ASSINATURA))
+			throw new IOException("Não é um arquivo de catálogo");
+		int versao = this.entrada.readInt();
+		if (versao != VERSAO_DO_FORMATO)
+			throw new IOException("Versão do formato não suportada: " + versao);
+		this.marca = texto(this.entrada);
+	}
+
+	/**
+	 * Marca d'água para pedir, na próxima vez, só o que mudou depois desta
+	 * exportação.
+	 */
+	public String getMarca() {
+		return marca;
+	}
+
+	public long le(Consumer<Linha> consumidor) throws IOException {
+		long total = 0;
+		int tamanho;
+		while ((tamanho = entrada.readInt()) > 0) {
+			byte[] bloco = new byte[tamanho];
+			entrada.readFully(bloco);
+			try (DataInputStream grupo = new DataInputStream(
+					new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(bloco))))) {
+				total += leGrupo(grupo, consumidor);
+			}
+		}
+		return total;
+	}
+
+	private int leGrupo(DataInputStream grupo, Consumer<Linha> consumidor) throws IOException {
+		int linhas = grupo.readInt();
+		dicionario(grupo, lojaIds, lojas);
+		dicionario(grupo, categoriaIds, categorias);
+
+		int[] ids = inteiros(grupo, linhas);
+		int[] versoes = inteiros(grupo, linhas);
+		double[] precos = new double[linhas];
+		for (int i = 0; i < linhas; i++) {
+			precos[i] = grupo.readDouble();
+		}
+		int[] lojaDaLinha = inteiros(grupo, linhas);
+		int[] categoriasPorLinha = inteiros(grupo, linhas);
+		int[] categoriasDasLinhas = inteiros(grupo, Arrays.stream(categoriasPorLinha).sum());
+		String[] nomes = textos(grupo, linhas);
+		String[] descricoes = textos(grupo, linhas);
+		String[] fotos = textos(grupo, linhas);
+
+		int categoria = 0;
+		for (int i = 0; i < linhas; i++) {
+			Linha linha = new Linha();
+			linha.id = ids[i];
+			linha.versao = versoes[i];
+			linha.preco = precos[i];
+			linha.nome = nomes[i];
+			linha.descricao = descricoes[i];
+			linha.linkDaFoto = fotos[i];
+			if (lojaDaLinha[i] >= 0) {
+				linha.lojaId = lojaIds.get(lojaDaLinha[i]);
+				linha.loja = lojas.get(lojaDaLinha[i]);
+			}
+
+			List<Integer> idsDasCategorias = new ArrayList<>(categoriasPorLinha[i]);
+			List<String> nomesDasCategorias = new ArrayList<>(categoriasPorLinha[i]);
+			for (int c = 0; c < categoriasPorLinha[i]; c++, categoria++) {
+				idsDasCategorias.add(categoriaIds.get(categoriasDasLinhas[categoria]));
+				nomesDasCategorias.add(categorias.get(categoriasDasLinhas[categoria]));
+			}
+			linha.categoriaIds = Collections.unmodifiableList(idsDasCategorias);
+			linha.categorias = Collections.unmodifiableList(nomesDasCategorias);
+
+			consumidor.accept(linha);
+		}
+		return linhas;
+	}
+
+	private static void dicionario(DataInputStream grupo, List<Integer> ids, List<String> nomes) throws IOException {
+		int novas = grupo.readInt();
+		for (int i = 0; i < novas; i++) {
+			ids.add(grupo.readInt());
+			nomes.add(texto(grupo));
+		}
+	}
+
+	private static int[] inteiros(DataInputStream grupo, int quantidade) throws IOException {
+		int[] inteiros = new int[quantidade];
+		for (int i = 0; i < quantidade; i++) {
+			inteiros[i] = grupo.readInt();
+		}
+		return inteiros;
+	}
+
+	private static String[] textos(DataInputStream grupo, int quantidade) throws IOException {
+		String[] textos = new String[quantidade];
+		for (int i = 0; i < quantidade; i++) {
+			textos[i] = texto(grupo);
+		}
+		return textos;
+	}
+
+	private static String texto(DataInputStream entrada) throws IOException {
+		int tamanho = entrada.readInt();
+		if (tamanho < 0)
+			return null;
+		byte[] bytes = new byte[tamanho];
+		entrada.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("uso: LeitorDeCatalogo arquivo");
+			System.exit(1);
+		}
+
+		PrintStream saida = new PrintStream(System.out, false, "UTF-8");
+		try (InputStream arquivo = new FileInputStream(args[0])) {
+			LeitorDeCatalogo leitor = new LeitorDeCatalogo(arquivo);
+			saida.println("id,versao,nome,preco,loja,categorias");
+			long linhas = leitor.le(linha -> saida.println(linha.getId() + "," + linha.getVersao() + ","
+					+ csv(linha.getNome()) + "," + linha.getPreco() + "," + csv(linha.getLoja()) + ","
+					+ csv(String.join("|", linha.getCategorias()))));
+			saida.flush();
+			System.err.println(linhas + " produtos, marca d'água " + leitor.getMarca());
+		}
+	}
+
+	private static String csv(String valor) {
+		return valor == null ? "" : "\"" + valor.replace("\"", "\"\"") + "\"";
+	}
+
+}
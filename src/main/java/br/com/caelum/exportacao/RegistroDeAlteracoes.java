@@ -0,0 +1,57 @@
+package br.com.caelum.exportacao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Marca d'água da exportação incremental, tirada do próprio banco: vale depois
+ * de reiniciar o servidor e entre servidores diferentes.
+ *
+ * A versao de cada produto é o contador do lock otimista, só dele, e não diz
+ * nada sobre a ordem entre produtos diferentes; por isso cada gravação guarda
+ * em Produto.alteracao o txid da sua transação. Um número de sequência não
+ * serviria: tirado antes do commit, ele pode ficar visível só depois de uma
+ * exportação que já devolveu uma marca maior, e nunca sairia.
+ *
+ * A marca é o xmin do snapshot, o menor txid ainda em andamento: toda
+ * transação abaixo dele já terminou, e qualquer gravação que ainda vá
+ * aparecer tem alteracao igual ou maior. A exportação desde a marca traz as
+ * alteracoes a partir dela; algum produto pode sair de novo, mas nenhum fica
+ * de fora.
+ */
+@Component
+public class RegistroDeAlteracoes {
+
+	@Autowired
+	private DataSource dataSource;
+
+	public String getMarca() throws SQLException {
+		try (Connection conexao = dataSource.getConnection();
+				Statement consulta = conexao.createStatement();
+				ResultSet resultado = consulta.executeQuery("select txid_snapshot_xmin(txid_current_snapshot())")) {
+			resultado.next();
+			return String.valueOf(resultado.getLong(1));
+		}
+	}
+
+	/**
+	 * O txid a partir do qual exportar, ou null se não é uma marca (ou é uma
+	 * marca antiga, de antes da coluna alteracao), caso em que é preciso
+	 * exportar tudo.
+	 */
+	public Long desde(String marca) {
+		try {
+			return Long.valueOf(marca);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+}
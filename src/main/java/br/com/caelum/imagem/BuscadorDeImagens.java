@@ -0,0 +1,16 @@
+package br.com.caelum.imagem;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Busca a imagem original de um produto (o linkDaFoto).
+ *
+ * Fica atrás de uma interface para que o {@link CacheDeMiniaturas} possa ser
+ * usado com um buscador local, sem depender das CDNs externas.
+ */
+public interface BuscadorDeImagens {
+
+	BufferedImage busca(String url) throws IOException;
+
+}
@@ -0,0 +1,164 @@
+package br.com.caelum.imagem;
+
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Baixa as fotos dos produtos pela internet.
+ *
+ * O linkDaFoto é digitado por quem cadastra o produto, então o servidor não
+ * pode simplesmente abrir qualquer URL: só aceitamos http e https, e o
+ * endereço de cada salto (inclusive depois de um redirecionamento) não pode
+ * ser da própria máquina nem da rede interna. Também limitamos o tamanho do
+ * download e as dimensões da imagem, conferidas no cabeçalho antes de
+ * decodificá-la.
+ */
+@Component
+public class BuscadorDeImagensHttp implements BuscadorDeImagens {
+
+	private static final int TEMPO_MAXIMO = 5000;
+	private static final int MAXIMO_DE_REDIRECIONAMENTOS = 5;
+	static final long BYTES_MAXIMOS = 10 * 1024 * 1024;
+	static final int LADO_MAXIMO = 8000;
+	static final long PIXELS_MAXIMOS = 25_000_000;
+
+	@Override
+	public BufferedImage busca(String url) throws IOException {
+		URL endereco = new URL(url);
+		for (int redirecionamentos = 0;; redirecionamentos++) {
+			confere(endereco);
+
+			HttpURLConnection conexao = (HttpURLConnection) endereco.openConnection();
+			conexao.setConnectTimeout(TEMPO_MAXIMO);
+			conexao.setReadTimeout(TEMPO_MAXIMO);
+			// seguimos à mão, para conferir o destino de cada redirecionamento
+			conexao.setInstanceFollowRedirects(false);
+
+			try {
+				int status = conexao.getResponseCode();
+				if (status >= 300 && status < 400 && conexao.getHeaderField("Location") != null) {
+					if (redirecionamentos >= MAXIMO_DE_REDIRECIONAMENTOS)
+						throw new IOException("Redirecionamentos demais: " + url);
+					endereco = new URL(endereco, conexao.getHeaderField("Location"));
+					continue;
+				}
+				if (status != HttpURLConnection.HTTP_OK)
+					throw new IOException("Resposta " + status + " para " + endereco);
+				if (conexao.getContentLengthLong() > BYTES_MAXIMOS)
+					throw new IOException("Imagem grande demais: " + endereco);
+
+				try (InputStream entrada = new Limitada(conexao.getInputStream(), BYTES_MAXIMOS)) {
+					return le(entrada, url);
+				}
+			} finally {
+				conexao.disconnect();
+			}
+		}
+	}
+
+	/*
+	 * O nome é resolvido aqui e o HttpURLConnection resolve de novo ao conectar;
+	 * como a JVM guarda as consultas de DNS bem-sucedidas por 30 segundos, a
+	 * segunda resolução devolve o mesmo endereço que conferimos.
+	 */
+	static void confere(URL endereco) throws IOException {
+		String protocolo = endereco.getProtocol();
+		if (!protocolo.equals("http") && !protocolo.equals("https"))
+			throw new IOException("Protocolo nao permitido: " + endereco);
+
+		if (endereco.getHost().isEmpty())
+			throw new IOException("Endereco sem host: " + endereco);
+
+		for (InetAddress ip : InetAddress.getAllByName(endereco.getHost())) {
+			if (interno(ip))
+				throw new IOException("Endereco nao permitido: " + endereco);
+		}
+	}
+
+	private static boolean interno(InetAddress ip) {
+		byte[] bytes = ip.getAddress();
+		return ip.isAnyLocalAddress() || ip.isLoopbackAddress() || ip.isLinkLocalAddress()
+				|| ip.isSiteLocalAddress() || ip.isMulticastAddress()
+				// IPv6 fc00::/7 (rede interna) e IPv4 100.64.0.0/10 (NAT da operadora)
+				|| (bytes.length == 16 && (bytes[0] & 0xfe) == 0xfc)
+				|| (bytes.length == 4 && (bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64);
+	}
+
+	/*
+	 * Confere largura e altura no cabeçalho da imagem: uma imagem pequena em
+	 * bytes pode declarar dimensões enormes e estourar a memória ao decodificar.
+	 */
+	static BufferedImage le(InputStream entrada, String url) throws IOException {
+		try (ImageInputStream imagem = ImageIO.createImageInputStream(entrada)) {
+			Iterator<ImageReader> leitores = imagem == null ? null : ImageIO.getImageReaders(imagem);
+			if (leitores == null || !leitores.hasNext())
+				throw new IOException("Formato de imagem desconhecido: " + url);
+
+			ImageReader leitor = leitores.next();
+			try {
+				leitor.setInput(imagem, true, true);
+				int largura = leitor.getWidth(0);
+				int altura = leitor.getHeight(0);
+				if (largura > LADO_MAXIMO || altura > LADO_MAXIMO || (long) largura * altura > PIXELS_MAXIMOS)
+					throw new IOException("Imagem grande demais (" + largura + "x" + altura + "): " + url);
+
+				return leitor.read(0);
+			} finally {
+				leitor.dispose();
+			}
+		}
+	}
+
+	// o Content-Length pode faltar ou mentir: conta o que de fato foi lido
+	private static class Limitada extends FilterInputStream {
+
+		private long restante;
+
+		Limitada(InputStream entrada, long limite) {
+			super(entrada);
+			this.restante = limite;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int lido = super.read();
+			if (lido >= 0)
+				conta(1);
+			return lido;
+		}
+
+		@Override
+		public int read(byte[] destino, int inicio, int tamanho) throws IOException {
+			int lidos = super.read(destino, inicio, tamanho);
+			if (lidos > 0)
+				conta(lidos);
+			return lidos;
+		}
+
+		@Override
+		public long skip(long quantidade) throws IOException {
+			long pulados = super.skip(quantidade);
+			conta(pulados);
+			return pulados;
+		}
+
+		private void conta(long lidos) throws IOException {
+			restante -= lidos;
+			if (restante < 0)
+				throw new IOException("Imagem grande demais");
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package br.com.caelum.imagem;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache em disco das miniaturas das fotos dos produtos.
+ *
+ * Cada foto é baixada uma única vez por tamanho, reduzida para caber no
+ * {@link Tamanho} pedido e gravada como PNG. A chave do arquivo é o hash do
+ * linkDaFoto, então trocar o link do produto gera uma miniatura nova e a
+ * antiga some sozinha quando o cache enche (os menos acessados saem primeiro).
+ *
+ * Configuração (propriedades de sistema):
+ *
+ * <ul>
+ * <li>miniaturas.diretorio: onde guardar os arquivos (padrão: java.io.tmpdir)</li>
+ * <li>miniaturas.tamanhoMaximo: tamanho máximo do cache em MB (padrão: 64)</li>
+ * </ul>
+ */
+@Component
+public class CacheDeMiniaturas {
+
+	@Autowired
+	private BuscadorDeImagens buscador;
+
+	@Autowired
+	private Environment environment;
+
+	private Path diretorio;
+	private long tamanhoMaximo;
+	private long tamanhoAtual;
+
+	// arquivos do cache, do menos para o mais acessado recentemente
+	private final LinkedHashMap<String, Long> arquivos = new LinkedHashMap<>(16, 0.75f, true);
+
+	// miniaturas sendo geradas agora: quem pedir a mesma espera pela primeira
+	private final Map<String, CompletableFuture<Path>> gerando = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() throws IOException {
+		String padrao = System.getProperty("java.io.tmpdir") + File.separator + "projeto-jpa-2" + File.separator
+				+ "miniaturas";
+		diretorio = Paths.get(environment.getProperty("miniaturas.diretorio", padrao));
+		tamanhoMaximo = environment.getProperty("miniaturas.tamanhoMaximo", Long.class, 64L) * 1024 * 1024;
+
+		Files.createDirectories(diretorio);
+
+		// reaproveita o que já estava em disco de execuções anteriores
+		try (Stream<Path> existentes = Files.list(diretorio)) {
+			existentes.filter(arquivo -> arquivo.toString().endsWith(".png")).forEach(arquivo -> {
+				long tamanho = arquivo.toFile().length();
+				arquivos.put(arquivo.getFileName().toString(), tamanho);
+				tamanhoAtual += tamanho;
+			});
+		}
+	}
+
+	/**
+	 * Chave da miniatura, usada como nome do arquivo e como ETag.
+	 */
+	public String chave(String linkDaFoto, Tamanho tamanho) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			StringBuilder hex = new StringBuilder();
+			for (byte b : sha1.digest(linkDaFoto.getBytes(StandardCharsets.UTF_8))) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.append('-').append(tamanho.name().toLowerCase()).toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Devolve o arquivo da miniatura, gerando-o se ainda não estiver no cache.
+	 */
+	public Path miniatura(String linkDaFoto, Tamanho tamanho) throws IOException {
+		String chave = chave(linkDaFoto, tamanho);
+		String nome = chave + ".png";
+
+		synchronized (arquivos) {
+			if (arquivos.get(nome) != null)
+				return diretorio.resolve(nome);
+		}
+
+		CompletableFuture<Path> geracao = new CompletableFuture<>();
+		CompletableFuture<Path> emAndamento = gerando.putIfAbsent(chave, geracao);
+		if (emAndamento != null)
+			return aguarda(emAndamento);
+
+		try {
+			Path arquivo = gera(linkDaFoto, tamanho, nome);
+			geracao.complete(arquivo);
+			return arquivo;
+		} catch (IOException | RuntimeException e) {
+			geracao.completeExceptionally(e);
+			throw e;
+		} finally {
+			gerando.remove(chave);
+		}
+	}
+
+	private Path gera(String linkDaFoto, Tamanho tamanho, String nome) throws IOException {
+		BufferedImage miniatura = reduz(buscador.busca(linkDaFoto), tamanho);
+
+		// grava num arquivo temporário e move, para ninguém servir um PNG pela metade
+		Path temporario = Files.createTempFile(diretorio, nome, ".tmp");
+		try {
+			ImageIO.write(miniatura, "png", temporario.toFile());
+			Path arquivo = diretorio.resolve(nome);
+			Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			adiciona(nome, Files.size(arquivo));
+			return arquivo;
+		} finally {
+			Files.deleteIfExists(temporario);
+		}
+	}
+
+	/*
+	 * Reduz mantendo a proporção e centraliza num fundo transparente do tamanho
+	 * exato pedido, para a página não distorcer a imagem.
+	 */
+	private BufferedImage reduz(BufferedImage original, Tamanho tamanho) {
+		double escala = Math.min((double) tamanho.getLargura() / original.getWidth(),
+				(double) tamanho.getAltura() / original.getHeight());
+		escala = Math.min(escala, 1.0);
+
+		int largura = Math.max(1, (int) Math.round(original.getWidth() * escala));
+		int altura = Math.max(1, (int) Math.round(original.getHeight() * escala));
+
+		BufferedImage miniatura = new BufferedImage(tamanho.getLargura(), tamanho.getAltura(),
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D grafico = miniatura.createGraphics();
+		try {
+			grafico.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			grafico.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			grafico.drawImage(original, (tamanho.getLargura() - largura) / 2, (tamanho.getAltura() - altura) / 2,
+					largura, altura, null);
+		} finally {
+			grafico.dispose();
+		}
+		return miniatura;
+	}
+
+	private void adiciona(String nome, long tamanho) throws IOException {
+		synchronized (arquivos) {
+			Long anterior = arquivos.put(nome, tamanho);
+			tamanhoAtual += tamanho - (anterior == null ? 0 : anterior);
+
+			Iterator<Map.Entry<String, Long>> menosUsados = arquivos.entrySet().iterator();
+			while (tamanhoAtual > tamanhoMaximo && menosUsados.hasNext()) {
+				Map.Entry<String, Long> arquivo = menosUsados.next();
+				if (arquivo.getKey().equals(nome))
+					continue;
+
+				Files.deleteIfExists(diretorio.resolve(arquivo.getKey()));
+				tamanhoAtual -= arquivo.getValue();
+				menosUsados.remove();
+			}
+		}
+	}
+
+	private Path aguarda(CompletableFuture<Path> emAndamento) throws IOException {
+		try {
+			return emAndamento.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
+		}
+	}
+
+	public long getTamanhoAtual() {
+		synchronized (arquivos) {
+			return tamanhoAtual;
+		}
+	}
+
+	public int getQuantidade() {
+		synchronized (arquivos) {
+			return arquivos.size();
+		}
+	}
+
+}
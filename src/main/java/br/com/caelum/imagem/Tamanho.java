@@ -0,0 +1,30 @@
+package br.com.caelum.imagem;
+
+/**
+ * Tamanhos fixos de miniatura, os mesmos usados nas páginas.
+ */
+public enum Tamanho {
+
+	// home.jsp
+	CARTAO(150, 200),
+
+	// produto/detalhe.jsp
+	DETALHE(200, 300);
+
+	private final int largura;
+	private final int altura;
+
+	private Tamanho(int largura, int altura) {
+		this.largura = largura;
+		this.altura = altura;
+	}
+
+	public int getLargura() {
+		return largura;
+	}
+
+	public int getAltura() {
+		return altura;
+	}
+
+}
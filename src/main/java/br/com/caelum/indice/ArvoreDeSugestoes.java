@@ -0,0 +1,230 @@
+package br.com.caelum.indice;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Árvore de prefixos (trie) dos nomes dos produtos, sem acentos e em
+ * minúsculas, em que cada nó guarda os produtos mais populares abaixo dele.
+ *
+ * Assim a sugestão para um prefixo é só descer pela árvore, uma letra por
+ * nível, e devolver a lista pronta do nó: não depende de quantos produtos
+ * começam com aquele prefixo. Cada palavra do nome também é indexada, para
+ * "mvc" sugerir "Spring MVC".
+ *
+ * Não é thread-safe: quem usa ({@link Sugestoes}) controla o acesso.
+ */
+class ArvoreDeSugestoes {
+
+	private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	// nomes maiores que isso só são sugeridos pelos primeiros caracteres
+	private static final int PROFUNDIDADE_MAXIMA = 40;
+
+	private final int maximoPorNo;
+	private final No raiz = new No();
+	private final Map<Integer, Item> itens = new HashMap<>();
+
+	private static final Comparator<Item> ORDEM = Comparator.comparingLong((Item item) -> item.popularidade)
+			.reversed().thenComparing(item -> item.nome).thenComparingInt(item -> item.id);
+
+	ArvoreDeSugestoes(int maximoPorNo) {
+		this.maximoPorNo = maximoPorNo;
+	}
+
+	static class Item {
+		final int id;
+		final String nome;
+		final List<String> chaves;
+		long popularidade;
+
+		Item(int id, String nome, long popularidade) {
+			this.id = id;
+			this.nome = nome;
+			this.chaves = chaves(nome);
+			this.popularidade = popularidade;
+		}
+	}
+
+	private static class No {
+		final Map<Character, No> filhos = new HashMap<>(4);
+		// os mais populares da subárvore, já em ordem
+		final List<Item> melhores = new ArrayList<>(2);
+		// itens cuja chave termina aqui, para refazer os melhores quando alguém sai
+		final List<Item> terminam = new ArrayList<>(1);
+	}
+
+	static String dobra(String texto) {
+		String semAcentos = ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+		return SEPARADORES.matcher(semAcentos.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+	}
+
+	private static List<String> chaves(String nome) {
+		String dobrado = dobra(nome);
+		Set<String> chaves = new LinkedHashSet<>();
+		for (int inicio = 0; inicio < dobrado.length(); inicio = dobrado.indexOf(' ', inicio) + 1) {
+			String chave = dobrado.substring(inicio);
+			chaves.add(chave.length() > PROFUNDIDADE_MAXIMA ? chave.substring(0, PROFUNDIDADE_MAXIMA) : chave);
+			if (dobrado.indexOf(' ', inicio) < 0)
+				break;
+		}
+		return new ArrayList<>(chaves);
+	}
+
+	void insere(int id, String nome, long popularidade) {
+		remove(id);
+		if (nome == null || dobra(nome).isEmpty())
+			return;
+
+		Item item = new Item(id, nome, popularidade);
+		itens.put(id, item);
+
+		for (String chave : item.chaves) {
+			No no = raiz;
+			for (int i = 0; i < chave.length(); i++) {
+				no = no.filhos.computeIfAbsent(chave.charAt(i), letra -> new No());
+				oferece(no, item);
+			}
+			no.terminam.add(item);
+		}
+	}
+
+	void remove(int id) {
+		Item item = itens.remove(id);
+		if (item == null)
+			return;
+
+		for (String chave : item.chaves) {
+			List<No> caminho = caminho(chave);
+			if (caminho.size() != chave.length())
+				continue;
+
+			caminho.get(caminho.size() - 1).terminam.remove(item);
+
+			// de baixo para cima, para refazer cada nó a partir dos filhos já corretos
+			for (int i = caminho.size() - 1; i >= 0; i--) {
+				No no = caminho.get(i);
+				if (no.filhos.isEmpty() && no.terminam.isEmpty()) {
+					No pai = i == 0 ? raiz : caminho.get(i - 1);
+					pai.filhos.remove(chave.charAt(i));
+				} else if (no.melhores.remove(item)) {
+					refaz(no);
+				}
+			}
+		}
+	}
+
+	void popularidade(int id, long popularidade) {
+		Item item = itens.get(id);
+		if (item == null || item.popularidade == popularidade)
+			return;
+
+		boolean subiu = popularidade > item.popularidade;
+		item.popularidade = popularidade;
+
+		for (String chave : item.chaves) {
+			List<No> caminho = caminho(chave);
+			// de baixo para cima, como na remoção
+			for (int i = caminho.size() - 1; i >= 0; i--) {
+				No no = caminho.get(i);
+				if (subiu)
+					oferece(no, item);
+				else if (no.melhores.contains(item))
+					refaz(no);
+			}
+		}
+	}
+
+	long popularidade(int id) {
+		Item item = itens.get(id);
+		return item == null ? 0 : item.popularidade;
+	}
+
+	// o nome com que o produto está na árvore, ou null se não está
+	String nome(int id) {
+		Item item = itens.get(id);
+		return item == null ? null : item.nome;
+	}
+
+	List<Item> busca(String prefixo, int quantidade) {
+		String dobrado = dobra(prefixo);
+		if (dobrado.isEmpty())
+			return Collections.emptyList();
+
+		No no = raiz;
+		for (int i = 0; i < dobrado.length() && no != null; i++) {
+			no = no.filhos.get(dobrado.charAt(i));
+		}
+		if (no == null)
+			return Collections.emptyList();
+
+		return new ArrayList<>(no.melhores.subList(0, Math.min(quantidade, no.melhores.size())));
+	}
+
+	int getQuantidade() {
+		return itens.size();
+	}
+
+	private List<No> caminho(String chave) {
+		List<No> caminho = new ArrayList<>(chave.length());
+		No no = raiz;
+		for (int i = 0; i < chave.length(); i++) {
+			no = no.filhos.get(chave.charAt(i));
+			if (no == null)
+				break;
+			caminho.add(no);
+		}
+		return caminho;
+	}
+
+	private void oferece(No no, Item item) {
+		List<Item> melhores = no.melhores;
+		if (!melhores.contains(item)) {
+			if (melhores.size() >= maximoPorNo && ORDEM.compare(item, melhores.get(melhores.size() - 1)) > 0)
+				return;
+			melhores.add(item);
+		}
+		melhores.sort(ORDEM);
+		if (melhores.size() > maximoPorNo)
+			melhores.remove(melhores.size() - 1);
+	}
+
+	/*
+	 * Só quando alguém sai ou perde popularidade: os melhores de um nó são os
+	 * melhores entre os itens que terminam nele e os melhores de cada filho.
+	 */
+	private void refaz(No no) {
+		PriorityQueue<Item> candidatos = new PriorityQueue<>(ORDEM.reversed());
+		Set<Item> vistos = new HashSet<>();
+
+		List<Item> todos = new ArrayList<>(no.terminam);
+		for (No filho : no.filhos.values()) {
+			todos.addAll(filho.melhores);
+		}
+
+		for (Item item : todos) {
+			if (!vistos.add(item))
+				continue;
+			candidatos.add(item);
+			if (candidatos.size() > maximoPorNo)
+				candidatos.poll();
+		}
+
+		no.melhores.clear();
+		no.melhores.addAll(candidatos);
+		no.melhores.sort(ORDEM);
+	}
+
+}
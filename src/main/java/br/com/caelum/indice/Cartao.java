@@ -0,0 +1,53 @@
+package br.com.caelum.indice;
+
+import java.util.List;
+
+/**
+ * Um produto como aparece nos cartões da listagem (home.jsp): os campos que o
+ * cartão mostra e as categorias com os nomes já resolvidos, sem entidade e sem
+ * EntityManager.
+ */
+public class Cartao {
+
+	private final Integer id;
+	private final String nome;
+	private final String linkDaFoto;
+	private final double preco;
+	private final List<Integer> categoriaIds;
+	private final List<String> categorias;
+
+	Cartao(Integer id, String nome, String linkDaFoto, double preco, List<Integer> categoriaIds,
+			List<String> categorias) {
+		this.id = id;
+		this.nome = nome;
+		this.linkDaFoto = linkDaFoto;
+		this.preco = preco;
+		this.categoriaIds = categoriaIds;
+		this.categorias = categorias;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getNome() {
+		return nome;
+	}
+
+	public String getLinkDaFoto() {
+		return linkDaFoto;
+	}
+
+	public double getPreco() {
+		return preco;
+	}
+
+	public List<Integer> getCategoriaIds() {
+		return categoriaIds;
+	}
+
+	public List<String> getCategorias() {
+		return categorias;
+	}
+
+}
@@ -0,0 +1,220 @@
+package br.com.caelum.indice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.EstadoDoProduto;
+
+/**
+ * Modelo de leitura do catálogo por loja: para cada loja, os {@link Cartao}s
+ * dos seus produtos, com os nomes das categorias já juntos, em ordem de id.
+ *
+ * A vitrine de uma loja pelo banco seria o getProdutos(nome, categoriaId,
+ * lojaId) do ProdutoDao, um join de Produto, Loja e categoria_produto seguido
+ * da carga das categorias de cada produto. Aqui cada loja tem uma
+ * {@link Vitrine} imutável, trocada inteira a cada gravação (cópia na
+ * escrita): ler é pegar a vitrine num mapa, sem trava e sem ir ao banco.
+ *
+ * Montado na primeira consulta, com quatro queries sem entidades (lojas,
+ * categorias, produtos e categorias de cada produto), e atualizado pelo evento
+ * {@link ProdutoGravado} depois do commit: o produto sai da vitrine da loja em
+ * que está exposto e entra na da atual. A loja e a versão expostas de cada
+ * produto ficam guardadas aqui, porque o anterior do evento pode vir velho do
+ * cache de segundo nível; eventos de versão menor que a exposta já foram
+ * superados e são ignorados. Os nomes de lojas e categorias criadas depois da
+ * montagem são buscados no banco na primeira vez que aparecem.
+ */
+@Component
+public class CatalogoDasLojas {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	private final ConcurrentMap<Integer, Vitrine> vitrines = new ConcurrentHashMap<>();
+
+	// só com a trava
+	private final Object trava = new Object();
+	private final Map<Integer, String> lojas = new HashMap<>();
+	private final Map<Integer, String> categorias = new HashMap<>();
+	private final Map<Integer, Exposto> expostos = new HashMap<>();
+
+	private volatile boolean montado;
+
+	// onde o produto está e em que versão, inclusive os sem loja (fora das vitrines)
+	private static class Exposto {
+		final Integer versao;
+		final Integer lojaId;
+
+		Exposto(Integer versao, Integer lojaId) {
+			this.versao = versao;
+			this.lojaId = lojaId;
+		}
+	}
+
+	/**
+	 * A vitrine da loja (vazia se a loja não tem produtos), ou null se a loja
+	 * não existe.
+	 */
+	public Vitrine daLoja(Integer lojaId) {
+		garanteMontado();
+		return vitrines.get(lojaId);
+	}
+
+	// como nos outros índices: só depois do commit, e nada a fazer antes de montado
+	@TransactionalEventListener(fallbackExecution = true)
+	public void aoGravar(ProdutoGravado gravacao) {
+		synchronized (trava) {
+			if (!montado)
+				return;
+
+			EstadoDoProduto atual = gravacao.getAtual();
+			Exposto exposto = expostos.get(atual.getId());
+			if (exposto != null) {
+				if (atual.isAnteriorA(exposto.versao))
+					return;
+				if (exposto.lojaId != null && !Objects.equals(exposto.lojaId, atual.getLojaId()))
+					vitrines.computeIfPresent(exposto.lojaId, (id, vitrine) -> vitrine.sem(atual.getId()));
+			}
+			expostos.put(atual.getId(), new Exposto(atual.getVersao(), atual.getLojaId()));
+
+			if (atual.getLojaId() != null)
+				vitrines.put(atual.getLojaId(), vitrine(atual.getLojaId()).com(cartao(atual)));
+		}
+	}
+
+	private Vitrine vitrine(Integer lojaId) {
+		Vitrine vitrine = vitrines.get(lojaId);
+		if (vitrine != null)
+			return vitrine;
+		if (!lojas.containsKey(lojaId))
+			carregaNomes(Collections.singleton(lojaId), Collections.emptySet());
+		return new Vitrine(lojaId, lojas.get(lojaId), Collections.emptyList());
+	}
+
+	private Cartao cartao(EstadoDoProduto produto) {
+		List<Integer> desconhecidas = new ArrayList<>();
+		for (Integer categoriaId : produto.getCategoriaIds()) {
+			if (!categorias.containsKey(categoriaId))
+				desconhecidas.add(categoriaId);
+		}
+		if (!desconhecidas.isEmpty())
+			carregaNomes(Collections.emptySet(), desconhecidas);
+
+		return cartao(produto.getId(), produto.getNome(), produto.getLinkDaFoto(), produto.getPreco(),
+				produto.getCategoriaIds());
+	}
+
+	private Cartao cartao(Integer id, String nome, String linkDaFoto, double preco, List<Integer> categoriaIds) {
+		List<String> nomes = new ArrayList<>(categoriaIds.size());
+		for (Integer categoriaId : categoriaIds) {
+			nomes.add(categorias.get(categoriaId));
+		}
+		return new Cartao(id, nome, linkDaFoto, preco, Collections.unmodifiableList(new ArrayList<>(categoriaIds)),
+				Collections.unmodifiableList(nomes));
+	}
+
+	/*
+	 * Depois do commit a transação da gravação ainda está amarrada à thread:
+	 * a leitura precisa de uma transação nova.
+	 */
+	private void carregaNomes(Collection<Integer> lojaIds, Collection<Integer> categoriaIds) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.setReadOnly(true);
+		template.execute(status -> {
+			if (!lojaIds.isEmpty())
+				nomes(em.createQuery("select l.id, l.nome from Loja l where l.id in :ids", Object[].class)
+						.setParameter("ids", lojaIds).getResultList(), lojas);
+			if (!categoriaIds.isEmpty())
+				nomes(em.createQuery("select c.id, c.nome from Categoria c where c.id in :ids", Object[].class)
+						.setParameter("ids", categoriaIds).getResultList(), categorias);
+			return null;
+		});
+	}
+
+	private static void nomes(List<Object[]> linhas, Map<Integer, String> nomes) {
+		for (Object[] linha : linhas) {
+			nomes.put((Integer) linha[0], (String) linha[1]);
+		}
+	}
+
+	private void garanteMontado() {
+		if (montado)
+			return;
+
+		synchronized (trava) {
+			if (!montado) {
+				monta();
+				montado = true;
+			}
+		}
+	}
+
+	private void monta() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		template.execute(status -> {
+			monta(em.createQuery("select l.id, l.nome from Loja l", Object[].class).getResultList(),
+					em.createQuery("select c.id, c.nome from Categoria c", Object[].class).getResultList(),
+					em.createQuery("select p.id, p.versao, p.nome, p.linkDaFoto, p.preco, l.id"
+							+ " from Produto p left join p.loja l order by p.id", Object[].class).getResultList(),
+					em.createQuery("select distinct p.id, c.id from Produto p join p.categorias c", Object[].class)
+							.getResultList());
+			return null;
+		});
+	}
+
+	// linhas como nas queries acima: produtos (id, versão, nome, linkDaFoto, preço, loja)
+	void monta(List<Object[]> lojas, List<Object[]> categorias, List<Object[]> produtos,
+			List<Object[]> categoriasDeProdutos) {
+		nomes(lojas, this.lojas);
+		nomes(categorias, this.categorias);
+
+		Map<Integer, List<Integer>> categoriasDosProdutos = new HashMap<>();
+		for (Object[] linha : categoriasDeProdutos) {
+			categoriasDosProdutos.computeIfAbsent((Integer) linha[0], id -> new ArrayList<>())
+					.add((Integer) linha[1]);
+		}
+
+		Map<Integer, List<Cartao>> porLoja = new HashMap<>();
+		for (Object[] linha : produtos) {
+			Integer id = (Integer) linha[0];
+			Integer lojaId = (Integer) linha[5];
+			expostos.put(id, new Exposto((Integer) linha[1], lojaId));
+			if (lojaId == null)
+				continue;
+
+			List<Integer> categoriaIds = categoriasDosProdutos.getOrDefault(id, new ArrayList<>());
+			Collections.sort(categoriaIds);
+			porLoja.computeIfAbsent(lojaId, loja -> new ArrayList<>())
+					.add(cartao(id, (String) linha[2], (String) linha[3], (Double) linha[4], categoriaIds));
+		}
+
+		for (Map.Entry<Integer, String> loja : this.lojas.entrySet()) {
+			vitrines.put(loja.getKey(), new Vitrine(loja.getKey(), loja.getValue(),
+					porLoja.getOrDefault(loja.getKey(), Collections.emptyList())));
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+package br.com.caelum.indice;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Filtro de produtos por categorias e lojas, avaliado como operações entre
+ * bitmaps do {@link IndiceDeFiltros}.
+ *
+ * Sintaxe (maiúsculas e minúsculas tanto faz):
+ *
+ * <ul>
+ * <li>categoria:3 e loja:1 - produtos da categoria ou loja de id informado</li>
+ * <li>categoria:1,2,5 - de qualquer uma das categorias (o mesmo que OR)</li>
+ * <li>AND, OR e NOT, ou &amp;, | e !, com parênteses</li>
+ * </ul>
+ *
+ * Ex.: {@code categoria:1 AND categoria:2 AND NOT loja:3}
+ */
+public interface Expressao {
+
+	/*
+	 * Os bitmaps devolvidos pela fonte pertencem ao índice: as expressões só
+	 * podem combiná-los com as operações estáticas, que criam bitmaps novos.
+	 */
+	RoaringBitmap avalia(Fonte fonte);
+
+	interface Fonte {
+
+		RoaringBitmap categoria(int id);
+
+		RoaringBitmap loja(int id);
+
+		RoaringBitmap todos();
+
+	}
+
+	static Expressao le(String texto) {
+		return new LeitorDeExpressoes(texto).le();
+	}
+
+}
@@ -0,0 +1,15 @@
+package br.com.caelum.indice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class ExpressaoInvalida extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ExpressaoInvalida(String mensagem) {
+		super(mensagem);
+	}
+
+}
@@ -0,0 +1,225 @@
+package br.com.caelum.indice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.EstadoDoProduto;
+
+/**
+ * Índice em memória dos ids de produtos por categoria e por loja, um bitmap
+ * comprimido (Roaring) para cada uma.
+ *
+ * Permite filtros que a busca por critérios não faz bem, como "em Tecnologia
+ * E em MVC" ou "em qualquer uma destas 5 categorias": cada {@link Expressao}
+ * vira ANDs, ORs e ANDNOTs entre bitmaps, sem ir ao banco e sem repetir
+ * produtos que têm várias categorias (como faria o join com
+ * categoria_produto). Só os ids da página pedida são carregados depois, pelo
+ * ProdutoDao.getProdutos(ids).
+ *
+ * O índice é montado na primeira consulta, com duas queries que trazem apenas
+ * ids, e acompanha as gravações pelo evento {@link ProdutoGravado}. Para cada
+ * produto guardamos a versão, a loja e as categorias com que ele está nos
+ * bitmaps, e é isso que sai quando ele muda, não o anterior do evento, que pode
+ * ser uma cópia velha do cache (como em {@link Precos}).
+ */
+@Component
+public class IndiceDeFiltros {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	private final ReadWriteLock trava = new ReentrantReadWriteLock();
+
+	private final Map<Integer, RoaringBitmap> porCategoria = new HashMap<>();
+	private final Map<Integer, RoaringBitmap> porLoja = new HashMap<>();
+	private final RoaringBitmap todos = new RoaringBitmap();
+	private final Map<Integer, Indexado> produtos = new HashMap<>();
+
+	private volatile boolean montado;
+
+	// onde um produto está nos bitmaps
+	private static class Indexado {
+		final Integer versao;
+		final Integer lojaId;
+		final List<Integer> categoriaIds;
+
+		Indexado(Integer versao, Integer lojaId, List<Integer> categoriaIds) {
+			this.versao = versao;
+			this.lojaId = lojaId;
+			this.categoriaIds = categoriaIds;
+		}
+	}
+
+	private final Expressao.Fonte fonte = new Expressao.Fonte() {
+
+		private final RoaringBitmap vazio = new RoaringBitmap();
+
+		@Override
+		public RoaringBitmap categoria(int id) {
+			return porCategoria.getOrDefault(id, vazio);
+		}
+
+		@Override
+		public RoaringBitmap loja(int id) {
+			return porLoja.getOrDefault(id, vazio);
+		}
+
+		@Override
+		public RoaringBitmap todos() {
+			return todos;
+		}
+	};
+
+	public PaginaDeIds filtra(String expressao, int pagina, int tamanho) {
+		return filtra(Expressao.le(expressao), pagina, tamanho);
+	}
+
+	public PaginaDeIds filtra(Expressao expressao, int pagina, int tamanho) {
+		garanteMontado();
+
+		trava.readLock().lock();
+		try {
+			RoaringBitmap encontrados = expressao.avalia(fonte);
+			int total = encontrados.getCardinality();
+
+			List<Integer> ids = new ArrayList<>(tamanho);
+			long inicio = (long) pagina * tamanho;
+			if (inicio < total) {
+				PeekableIntIterator iterador = encontrados.getIntIterator();
+				iterador.advanceIfNeeded(encontrados.select((int) inicio));
+				while (iterador.hasNext() && ids.size() < tamanho) {
+					ids.add(iterador.next());
+				}
+			}
+			return new PaginaDeIds(ids, pagina, tamanho, total);
+		} finally {
+			trava.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Só depois do commit: gravações desfeitas não mexem no índice. Antes de
+	 * montado não há o que atualizar, a montagem já lê o estado do banco. O teste
+	 * fica dentro da trava para não perder uma gravação feita durante a montagem.
+	 * Um evento de versão menor que a indexada é de uma gravação que a montagem
+	 * ou outro evento já superou.
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void aoGravar(ProdutoGravado gravacao) {
+		trava.writeLock().lock();
+		try {
+			if (!montado)
+				return;
+
+			EstadoDoProduto atual = gravacao.getAtual();
+			Indexado indexado = produtos.get(atual.getId());
+			if (indexado != null) {
+				if (atual.isAnteriorA(indexado.versao))
+					return;
+				remove(atual.getId(), indexado);
+			}
+			adiciona(atual.getId(), new Indexado(atual.getVersao(), atual.getLojaId(), atual.getCategoriaIds()));
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	private void garanteMontado() {
+		if (montado)
+			return;
+
+		trava.writeLock().lock();
+		try {
+			if (!montado) {
+				monta();
+				montado = true;
+			}
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	private void monta() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		template.execute(status -> {
+			monta(em.createQuery("select p.id, p.versao, l.id from Produto p left join p.loja l", Object[].class)
+					.getResultList(),
+					em.createQuery("select distinct p.id, c.id from Produto p join p.categorias c", Object[].class)
+							.getResultList());
+			return null;
+		});
+	}
+
+	// linhas (id, versão, loja) e (id, categoria), como nas queries acima
+	void monta(List<Object[]> lojas, List<Object[]> categorias) {
+		Map<Integer, List<Integer>> categoriasDosProdutos = new HashMap<>();
+		for (Object[] linha : categorias) {
+			categoriasDosProdutos.computeIfAbsent((Integer) linha[0], id -> new ArrayList<>())
+					.add((Integer) linha[1]);
+		}
+
+		for (Object[] linha : lojas) {
+			List<Integer> categoriaIds = categoriasDosProdutos.getOrDefault(linha[0], new ArrayList<>());
+			Collections.sort(categoriaIds);
+			adiciona((Integer) linha[0], new Indexado((Integer) linha[1], (Integer) linha[2],
+					Collections.unmodifiableList(categoriaIds)));
+		}
+
+		for (RoaringBitmap bitmap : porCategoria.values()) {
+			bitmap.runOptimize();
+		}
+		for (RoaringBitmap bitmap : porLoja.values()) {
+			bitmap.runOptimize();
+		}
+		todos.runOptimize();
+	}
+
+	private void adiciona(Integer produtoId, Indexado produto) {
+		produtos.put(produtoId, produto);
+		todos.add(produtoId);
+		adiciona(porLoja, produto.lojaId, produtoId);
+		for (Integer categoriaId : produto.categoriaIds) {
+			adiciona(porCategoria, categoriaId, produtoId);
+		}
+	}
+
+	private void remove(Integer produtoId, Indexado produto) {
+		remove(porLoja, produto.lojaId, produtoId);
+		for (Integer categoriaId : produto.categoriaIds) {
+			remove(porCategoria, categoriaId, produtoId);
+		}
+	}
+
+	private void adiciona(Map<Integer, RoaringBitmap> indice, Integer chave, Integer produtoId) {
+		if (chave != null)
+			indice.computeIfAbsent(chave, id -> new RoaringBitmap()).add(produtoId);
+	}
+
+	private void remove(Map<Integer, RoaringBitmap> indice, Integer chave, Integer produtoId) {
+		RoaringBitmap bitmap = chave == null ? null : indice.get(chave);
+		if (bitmap != null)
+			bitmap.remove(produtoId);
+	}
+
+}
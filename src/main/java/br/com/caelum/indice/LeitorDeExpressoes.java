@@ -0,0 +1,128 @@
+package br.com.caelum.indice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Lê o texto de uma {@link Expressao} (descida recursiva). Precedência, da
+ * maior para a menor: NOT, AND, OR.
+ */
+class LeitorDeExpressoes {
+
+	private static final int MAXIMO_DE_TERMOS = 200;
+
+	private static final Pattern TOKEN = Pattern.compile("\\s*(\\(|\\)|&|\\||!|[A-Za-z]+:[0-9]+(?:,[0-9]+)*|[A-Za-z]+)");
+
+	private final List<String> tokens = new ArrayList<>();
+	private int posicao;
+
+	LeitorDeExpressoes(String texto) {
+		Matcher token = TOKEN.matcher(texto);
+		int fim = 0;
+		while (token.lookingAt()) {
+			tokens.add(token.group(1));
+			fim = token.end();
+			token.region(fim, texto.length());
+		}
+
+		if (!texto.substring(fim).trim().isEmpty())
+			throw new ExpressaoInvalida("Expressao invalida a partir de: " + texto.substring(fim).trim());
+		if (tokens.isEmpty())
+			throw new ExpressaoInvalida("Expressao vazia");
+		if (tokens.size() > MAXIMO_DE_TERMOS)
+			throw new ExpressaoInvalida("Expressao com mais de " + MAXIMO_DE_TERMOS + " termos");
+	}
+
+	Expressao le() {
+		Expressao expressao = ou();
+		if (posicao < tokens.size())
+			throw new ExpressaoInvalida("Termo inesperado: " + tokens.get(posicao));
+		return expressao;
+	}
+
+	private Expressao ou() {
+		Expressao expressao = e();
+		while (aceita("|", "or")) {
+			Expressao esquerda = expressao;
+			Expressao direita = e();
+			expressao = fonte -> RoaringBitmap.or(esquerda.avalia(fonte), direita.avalia(fonte));
+		}
+		return expressao;
+	}
+
+	private Expressao e() {
+		Expressao expressao = nao();
+		while (aceita("&", "and")) {
+			Expressao esquerda = expressao;
+			Expressao direita = nao();
+			expressao = fonte -> RoaringBitmap.and(esquerda.avalia(fonte), direita.avalia(fonte));
+		}
+		return expressao;
+	}
+
+	private Expressao nao() {
+		if (aceita("!", "not")) {
+			Expressao negada = nao();
+			return fonte -> RoaringBitmap.andNot(fonte.todos(), negada.avalia(fonte));
+		}
+		return termo();
+	}
+
+	private Expressao termo() {
+		if (aceita("(", "(")) {
+			Expressao expressao = ou();
+			if (!aceita(")", ")"))
+				throw new ExpressaoInvalida("Falta fechar parenteses");
+			return expressao;
+		}
+
+		if (posicao >= tokens.size())
+			throw new ExpressaoInvalida("Expressao incompleta");
+
+		String token = tokens.get(posicao++);
+		int doisPontos = token.indexOf(':');
+		if (doisPontos < 0)
+			throw new ExpressaoInvalida("Termo inesperado: " + token);
+
+		String tipo = token.substring(0, doisPontos).toLowerCase();
+		List<Integer> ids = new ArrayList<>();
+		for (String id : token.substring(doisPontos + 1).split(",")) {
+			try {
+				ids.add(Integer.valueOf(id));
+			} catch (NumberFormatException e) {
+				throw new ExpressaoInvalida("Id invalido: " + id);
+			}
+		}
+
+		if (tipo.equals("categoria"))
+			return fonte -> qualquer(ids, fonte, true);
+		if (tipo.equals("loja"))
+			return fonte -> qualquer(ids, fonte, false);
+		throw new ExpressaoInvalida("Filtro desconhecido: " + tipo + " (use categoria ou loja)");
+	}
+
+	private static RoaringBitmap qualquer(List<Integer> ids, Expressao.Fonte fonte, boolean categoria) {
+		if (ids.size() == 1)
+			return categoria ? fonte.categoria(ids.get(0)) : fonte.loja(ids.get(0));
+
+		RoaringBitmap[] bitmaps = new RoaringBitmap[ids.size()];
+		for (int i = 0; i < bitmaps.length; i++) {
+			bitmaps[i] = categoria ? fonte.categoria(ids.get(i)) : fonte.loja(ids.get(i));
+		}
+		return RoaringBitmap.or(bitmaps);
+	}
+
+	private boolean aceita(String simbolo, String palavra) {
+		if (posicao < tokens.size()
+				&& (tokens.get(posicao).equals(simbolo) || tokens.get(posicao).equalsIgnoreCase(palavra))) {
+			posicao++;
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,15 @@
+package br.com.caelum.indice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class LojaInexistente extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public LojaInexistente(Integer lojaId) {
+		super("Loja inexistente: " + lojaId);
+	}
+
+}
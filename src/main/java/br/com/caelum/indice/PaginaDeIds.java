@@ -0,0 +1,48 @@
+package br.com.caelum.indice;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uma página dos ids de produtos que satisfazem uma {@link Expressao}, em
+ * ordem crescente de id, e o total de ids encontrados.
+ */
+public class PaginaDeIds {
+
+	private final List<Integer> ids;
+	private final int pagina;
+	private final int tamanho;
+	private final int total;
+
+	PaginaDeIds(List<Integer> ids, int pagina, int tamanho, int total) {
+		this.ids = Collections.unmodifiableList(ids);
+		this.pagina = pagina;
+		this.tamanho = tamanho;
+		this.total = total;
+	}
+
+	public List<Integer> getIds() {
+		return ids;
+	}
+
+	public int getPagina() {
+		return pagina;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getPaginas() {
+		return (total + tamanho - 1) / tamanho;
+	}
+
+	public boolean isTemAnterior() {
+		return pagina > 0;
+	}
+
+	public boolean isTemProxima() {
+		return pagina + 1 < getPaginas();
+	}
+
+}
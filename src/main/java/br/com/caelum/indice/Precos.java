@@ -0,0 +1,256 @@
+package br.com.caelum.indice;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.EstadoDoProduto;
+
+/**
+ * Mínimo, máximo, média e quantidade dos preços por categoria, por loja e no
+ * total, mantidos em memória.
+ *
+ * O GROUP BY equivalente juntaria Produto com categoria_produto a cada página.
+ * Aqui os preços de cada grupo ficam num multiconjunto ordenado (TreeMap de
+ * preço para quantidade), então o mínimo e o máximo continuam certos quando um
+ * produto sai do grupo, e a soma é um BigDecimal, para a média não acumular
+ * erro de arredondamento a cada alteração.
+ *
+ * Montado na primeira consulta, com duas queries só de ids e preços, e
+ * atualizado pelo evento {@link ProdutoGravado}. Para cada produto guardamos
+ * a versão, o preço, a loja e as categorias com que ele entrou nos grupos, e é
+ * esse estado que sai quando o produto muda, não o anterior do evento: uma
+ * gravação que a montagem já leu do banco chega depois pelo evento, e o
+ * anterior pode vir de uma cópia velha do cache de segundo nível. Aplicar o
+ * mesmo estado duas vezes não muda nada, e um evento de versão menor que a
+ * guardada é ignorado.
+ */
+@Component
+public class Precos {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	private final ReadWriteLock trava = new ReentrantReadWriteLock();
+
+	private final Map<Integer, Grupo> porCategoria = new HashMap<>();
+	private final Map<Integer, Grupo> porLoja = new HashMap<>();
+	private final Grupo todos = new Grupo();
+	private final Map<Integer, Precificado> produtos = new HashMap<>();
+
+	private volatile boolean montado;
+
+	// o que um produto somou nos grupos
+	private static class Precificado {
+		final Integer versao;
+		final double preco;
+		final Integer lojaId;
+		final List<Integer> categoriaIds;
+
+		Precificado(Integer versao, double preco, Integer lojaId, List<Integer> categoriaIds) {
+			this.versao = versao;
+			this.preco = preco;
+			this.lojaId = lojaId;
+			this.categoriaIds = categoriaIds;
+		}
+	}
+
+	private static class Grupo {
+		final TreeMap<Double, Integer> precos = new TreeMap<>();
+		BigDecimal soma = BigDecimal.ZERO;
+		int quantidade;
+
+		void adiciona(double preco) {
+			precos.merge(preco, 1, Integer::sum);
+			soma = soma.add(BigDecimal.valueOf(preco));
+			quantidade++;
+		}
+
+		void remove(double preco) {
+			Integer vezes = precos.get(preco);
+			if (vezes == null)
+				return;
+			if (vezes == 1)
+				precos.remove(preco);
+			else
+				precos.put(preco, vezes - 1);
+			soma = soma.subtract(BigDecimal.valueOf(preco));
+			quantidade--;
+		}
+
+		ResumoDePrecos resumo() {
+			if (quantidade == 0)
+				return new ResumoDePrecos(0, 0, 0, 0);
+			double media = soma.divide(BigDecimal.valueOf(quantidade), MathContext.DECIMAL64).doubleValue();
+			return new ResumoDePrecos(quantidade, precos.firstKey(), precos.lastKey(), media);
+		}
+	}
+
+	public ResumoDePrecos getTodos() {
+		garanteMontado();
+
+		trava.readLock().lock();
+		try {
+			return todos.resumo();
+		} finally {
+			trava.readLock().unlock();
+		}
+	}
+
+	public Map<Integer, ResumoDePrecos> getPorCategoria() {
+		return resumos(porCategoria);
+	}
+
+	public Map<Integer, ResumoDePrecos> getPorLoja() {
+		return resumos(porLoja);
+	}
+
+	public ResumoDePrecos daCategoria(Integer categoriaId) {
+		return resumo(porCategoria, categoriaId);
+	}
+
+	public ResumoDePrecos daLoja(Integer lojaId) {
+		return resumo(porLoja, lojaId);
+	}
+
+	private Map<Integer, ResumoDePrecos> resumos(Map<Integer, Grupo> grupos) {
+		garanteMontado();
+
+		trava.readLock().lock();
+		try {
+			Map<Integer, ResumoDePrecos> resumos = new TreeMap<>();
+			for (Map.Entry<Integer, Grupo> grupo : grupos.entrySet()) {
+				resumos.put(grupo.getKey(), grupo.getValue().resumo());
+			}
+			return resumos;
+		} finally {
+			trava.readLock().unlock();
+		}
+	}
+
+	private ResumoDePrecos resumo(Map<Integer, Grupo> grupos, Integer id) {
+		garanteMontado();
+
+		trava.readLock().lock();
+		try {
+			Grupo grupo = grupos.get(id);
+			return grupo == null ? null : grupo.resumo();
+		} finally {
+			trava.readLock().unlock();
+		}
+	}
+
+	// como no IndiceDeFiltros: só depois do commit, e nada a fazer antes de montado
+	@TransactionalEventListener(fallbackExecution = true)
+	public void aoGravar(ProdutoGravado gravacao) {
+		trava.writeLock().lock();
+		try {
+			if (!montado)
+				return;
+
+			EstadoDoProduto atual = gravacao.getAtual();
+			Precificado anterior = produtos.get(atual.getId());
+			if (anterior != null) {
+				if (atual.isAnteriorA(anterior.versao))
+					return;
+				remove(anterior);
+			}
+			adiciona(atual.getId(), new Precificado(atual.getVersao(), atual.getPreco(), atual.getLojaId(),
+					atual.getCategoriaIds()));
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	private void adiciona(Integer produtoId, Precificado produto) {
+		produtos.put(produtoId, produto);
+		todos.adiciona(produto.preco);
+		if (produto.lojaId != null)
+			porLoja.computeIfAbsent(produto.lojaId, id -> new Grupo()).adiciona(produto.preco);
+		for (Integer categoriaId : produto.categoriaIds) {
+			porCategoria.computeIfAbsent(categoriaId, id -> new Grupo()).adiciona(produto.preco);
+		}
+	}
+
+	private void remove(Precificado produto) {
+		todos.remove(produto.preco);
+		if (produto.lojaId != null)
+			remove(porLoja, produto.lojaId, produto.preco);
+		for (Integer categoriaId : produto.categoriaIds) {
+			remove(porCategoria, categoriaId, produto.preco);
+		}
+	}
+
+	private void remove(Map<Integer, Grupo> grupos, Integer id, double preco) {
+		Grupo grupo = grupos.get(id);
+		if (grupo == null)
+			return;
+		grupo.remove(preco);
+		if (grupo.quantidade == 0)
+			grupos.remove(id);
+	}
+
+	private void garanteMontado() {
+		if (montado)
+			return;
+
+		trava.writeLock().lock();
+		try {
+			if (!montado) {
+				monta();
+				montado = true;
+			}
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	private void monta() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		template.execute(status -> {
+			monta(em.createQuery("select p.id, p.versao, p.preco, l.id from Produto p left join p.loja l",
+					Object[].class).getResultList(),
+					em.createQuery("select distinct p.id, c.id from Produto p join p.categorias c", Object[].class)
+							.getResultList());
+			return null;
+		});
+	}
+
+	// linhas (id, versão, preço, loja) e (id, categoria), como nas queries acima
+	void monta(List<Object[]> lojas, List<Object[]> categorias) {
+		Map<Integer, List<Integer>> categoriasDosProdutos = new HashMap<>();
+		for (Object[] linha : categorias) {
+			categoriasDosProdutos.computeIfAbsent((Integer) linha[0], id -> new ArrayList<>())
+					.add((Integer) linha[1]);
+		}
+
+		for (Object[] linha : lojas) {
+			List<Integer> categoriaIds = categoriasDosProdutos.getOrDefault(linha[0], new ArrayList<>());
+			Collections.sort(categoriaIds);
+			adiciona((Integer) linha[0], new Precificado((Integer) linha[1], (Double) linha[2], (Integer) linha[3],
+					Collections.unmodifiableList(categoriaIds)));
+		}
+	}
+
+}
@@ -0,0 +1,394 @@
+package br.com.caelum.indice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.EstadoDoProduto;
+
+/**
+ * Os produtos relacionados de cada produto, pré-calculados.
+ *
+ * Dois produtos são relacionados quando têm categorias em comum; cada
+ * categoria em comum vale 2 pontos e ser da mesma loja vale mais 1. Calcular
+ * isso no detalhe seria cruzar o produto com todos os outros pelo
+ * categoria_produto a cada visita, então a lista dos {@link #MAXIMO} melhores
+ * de cada produto fica pronta num mapa de id para int[].
+ *
+ * O primeiro pedido dispara a montagem em segundo plano (até lá o detalhe sai
+ * sem relacionados): duas queries só de ids e depois o cálculo de todos os
+ * produtos em paralelo, num fork-join que divide os ids em partes. Quando um
+ * produto muda de categorias ou de loja (evento {@link ProdutoGravado}), só
+ * ele e quem divide alguma categoria com ele, antes ou depois, são
+ * recalculados, também em segundo plano. A mudança é conferida contra o perfil
+ * guardado, não contra o anterior do evento, que pode vir velho do cache.
+ *
+ * As queries rodam numa thread só delas e o cálculo num ForkJoinPool próprio,
+ * não no commonPool: uma thread do fork-join parada esperando o banco é uma a
+ * menos para o cálculo, e o commonPool é dividido com quem usa parallel
+ * streams e CompletableFuture.
+ */
+@Component
+public class ProdutosRelacionados {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ProdutosRelacionados.class);
+
+	static final int MAXIMO = 6;
+
+	// ids por parte do fork-join
+	private static final int POR_PARTE = 256;
+
+	private static final int[] NENHUM = new int[0];
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	private final ReadWriteLock trava = new ReentrantReadWriteLock();
+
+	private static class Perfil {
+		final Integer versao;
+		final Integer lojaId;
+		final int[] categorias;
+
+		Perfil(Integer versao, Integer lojaId, int[] categorias) {
+			this.versao = versao;
+			this.lojaId = lojaId;
+			this.categorias = categorias;
+		}
+
+		boolean mesmosRelacionadosQue(Perfil outro) {
+			return Objects.equals(lojaId, outro.lojaId) && Arrays.equals(categorias, outro.categorias);
+		}
+	}
+
+	private final Map<Integer, Perfil> perfis = new HashMap<>();
+	private final Map<Integer, RoaringBitmap> porCategoria = new HashMap<>();
+	private final Map<Integer, RoaringBitmap> porLoja = new HashMap<>();
+
+	private final ConcurrentMap<Integer, int[]> relacionados = new ConcurrentHashMap<>();
+
+	// um por thread do cálculo, que o reaproveita em todas as partes
+	private final ThreadLocal<Rascunho> rascunhos = ThreadLocal.withInitial(Rascunho::new);
+
+	private final ExecutorService carregador = Executors.newSingleThreadExecutor(tarefa -> {
+		Thread thread = new Thread(tarefa, "relacionados");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final ForkJoinPool calculo = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("relacionados-calculo-" + thread.getPoolIndex());
+		return thread;
+	}, null, false);
+
+	private final AtomicBoolean montagemIniciada = new AtomicBoolean();
+	// só na trava de escrita
+	private boolean perfisCarregados;
+	// quando todos os relacionados já foram calculados uma vez
+	private volatile boolean montado;
+
+	public List<Integer> de(Integer produtoId) {
+		if (!montado) {
+			iniciaMontagem();
+			return Collections.emptyList();
+		}
+
+		int[] ids = relacionados.getOrDefault(produtoId, NENHUM);
+		List<Integer> lista = new ArrayList<>(ids.length);
+		for (int id : ids) {
+			lista.add(id);
+		}
+		return lista;
+	}
+
+	@PreDestroy
+	public void encerra() {
+		carregador.shutdownNow();
+		calculo.shutdownNow();
+	}
+
+	/*
+	 * Como nos outros índices: só depois do commit, nada a fazer antes de
+	 * carregar os perfis e eventos de versão menor que a do perfil já foram
+	 * superados. Os perfis mudam na trava de escrita e os recálculos rodam
+	 * depois, então leem o estado novo.
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void aoGravar(ProdutoGravado gravacao) {
+		EstadoDoProduto atual = gravacao.getAtual();
+
+		RoaringBitmap afetados = new RoaringBitmap();
+		trava.writeLock().lock();
+		try {
+			if (!perfisCarregados)
+				return;
+
+			Perfil antigo = perfis.get(atual.getId());
+			Perfil novo = perfil(atual.getVersao(), atual.getLojaId(), atual.getCategoriaIds());
+			if (antigo != null) {
+				if (atual.isAnteriorA(antigo.versao))
+					return;
+				// só nome, preço...: os relacionados não mudam
+				if (antigo.mesmosRelacionadosQue(novo)) {
+					perfis.put(atual.getId(), novo);
+					return;
+				}
+
+				for (int categoria : antigo.categorias) {
+					RoaringBitmap produtos = porCategoria.get(categoria);
+					afetados.or(produtos);
+					produtos.remove(atual.getId());
+				}
+				if (antigo.lojaId != null)
+					porLoja.get(antigo.lojaId).remove(atual.getId());
+			}
+
+			adiciona(atual.getId(), novo);
+			for (int categoria : novo.categorias) {
+				afetados.or(porCategoria.get(categoria));
+			}
+			afetados.add(atual.getId());
+		} finally {
+			trava.writeLock().unlock();
+		}
+
+		calculo.execute(new Calculo(afetados.toArray(), 0, afetados.getCardinality()));
+	}
+
+	private void iniciaMontagem() {
+		if (!montagemIniciada.compareAndSet(false, true))
+			return;
+
+		carregador.execute(() -> {
+			try {
+				long inicio = System.currentTimeMillis();
+				int[] ids = carregaPerfis();
+				calcula(ids);
+				montado = true;
+				LOG.info("Relacionados de {} produtos calculados em {} ms", ids.length,
+						System.currentTimeMillis() - inicio);
+			} catch (RuntimeException e) {
+				LOG.warn("Falha ao calcular os produtos relacionados, tentando de novo no próximo pedido", e);
+				montagemIniciada.set(false);
+			}
+		});
+	}
+
+	/*
+	 * Na trava de escrita, como a montagem dos outros índices: uma gravação feita
+	 * durante a leitura espera e é aplicada depois.
+	 */
+	private int[] carregaPerfis() {
+		trava.writeLock().lock();
+		try {
+			TransactionTemplate template = new TransactionTemplate(transactionManager);
+			template.setReadOnly(true);
+			return template.execute(status -> carrega(
+					em.createQuery("select p.id, p.versao, l.id from Produto p left join p.loja l", Object[].class)
+							.getResultList(),
+					em.createQuery("select distinct p.id, c.id from Produto p join p.categorias c", Object[].class)
+							.getResultList()));
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	// linhas (id, versão, loja) e (id, categoria), como nas queries acima; devolve os ids
+	int[] carrega(List<Object[]> lojas, List<Object[]> categorias) {
+		perfis.clear();
+		porCategoria.clear();
+		porLoja.clear();
+
+		Map<Integer, List<Integer>> categoriasDosProdutos = new HashMap<>();
+		for (Object[] linha : categorias) {
+			categoriasDosProdutos.computeIfAbsent((Integer) linha[0], id -> new ArrayList<>())
+					.add((Integer) linha[1]);
+		}
+
+		for (Object[] linha : lojas) {
+			Integer produtoId = (Integer) linha[0];
+			adiciona(produtoId, perfil((Integer) linha[1], (Integer) linha[2],
+					categoriasDosProdutos.getOrDefault(produtoId, Collections.emptyList())));
+		}
+
+		for (RoaringBitmap produtos : porCategoria.values()) {
+			produtos.runOptimize();
+		}
+		for (RoaringBitmap produtos : porLoja.values()) {
+			produtos.runOptimize();
+		}
+
+		// os eventos já mexem nos perfis daqui em diante, mesmo antes do cálculo
+		perfisCarregados = true;
+		return perfis.keySet().stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	void calcula(int[] ids) {
+		calculo.invoke(new Calculo(ids, 0, ids.length));
+	}
+
+	private void adiciona(int produtoId, Perfil perfil) {
+		perfis.put(produtoId, perfil);
+		for (int categoria : perfil.categorias) {
+			porCategoria.computeIfAbsent(categoria, id -> new RoaringBitmap()).add(produtoId);
+		}
+		if (perfil.lojaId != null)
+			porLoja.computeIfAbsent(perfil.lojaId, id -> new RoaringBitmap()).add(produtoId);
+	}
+
+	private static Perfil perfil(Integer versao, Integer lojaId, List<Integer> categoriaIds) {
+		int[] categorias = categoriaIds.stream().mapToInt(Integer::intValue).distinct().toArray();
+		Arrays.sort(categorias);
+		return new Perfil(versao, lojaId, categorias);
+	}
+
+	/*
+	 * Uma parte dos ids. Cada parte calcula e publica os resultados dentro da
+	 * trava de leitura: uma gravação no meio espera a parte terminar, e os
+	 * recálculos que ela dispara vêm depois e leem o estado novo, então um
+	 * resultado antigo nunca sobrescreve um novo.
+	 */
+	private class Calculo extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] ids;
+		private final int inicio;
+		private final int fim;
+
+		Calculo(int[] ids, int inicio, int fim) {
+			this.ids = ids;
+			this.inicio = inicio;
+			this.fim = fim;
+		}
+
+		@Override
+		protected void compute() {
+			if (fim - inicio > POR_PARTE) {
+				int meio = (inicio + fim) >>> 1;
+				invokeAll(new Calculo(ids, inicio, meio), new Calculo(ids, meio, fim));
+				return;
+			}
+
+			Rascunho rascunho = rascunhos.get();
+			trava.readLock().lock();
+			try {
+				for (int i = inicio; i < fim; i++) {
+					calcula(ids[i], rascunho);
+				}
+			} finally {
+				trava.readLock().unlock();
+			}
+		}
+	}
+
+	/*
+	 * Contadores de categorias em comum, indexados pelo id do produto. Cada
+	 * thread do cálculo tem o seu (rascunhos) e o reaproveita entre um produto e
+	 * outro e entre as partes: o vetor do tamanho dos ids cresce uma vez por
+	 * thread, não a cada parte, e zeramos só as posições tocadas.
+	 */
+	private static class Rascunho {
+		int[] emComum = new int[0];
+		int[] tocados = new int[16];
+		int quantidade;
+
+		void soma(int id) {
+			if (id >= emComum.length)
+				emComum = Arrays.copyOf(emComum, Math.max(id + 1, emComum.length * 2));
+			if (emComum[id]++ == 0) {
+				if (quantidade == tocados.length)
+					tocados = Arrays.copyOf(tocados, quantidade * 2);
+				tocados[quantidade++] = id;
+			}
+		}
+
+		void limpa() {
+			for (int i = 0; i < quantidade; i++) {
+				emComum[tocados[i]] = 0;
+			}
+			quantidade = 0;
+		}
+	}
+
+	private void calcula(int produtoId, Rascunho rascunho) {
+		Perfil perfil = perfis.get(produtoId);
+		if (perfil == null) {
+			relacionados.remove(produtoId);
+			return;
+		}
+
+		for (int categoria : perfil.categorias) {
+			RoaringBitmap produtos = porCategoria.get(categoria);
+			if (produtos == null)
+				continue;
+			IntIterator iterador = produtos.getIntIterator();
+			while (iterador.hasNext()) {
+				int outro = iterador.next();
+				if (outro != produtoId)
+					rascunho.soma(outro);
+			}
+		}
+
+		RoaringBitmap mesmaLoja = perfil.lojaId == null ? null : porLoja.get(perfil.lojaId);
+
+		// os MAXIMO melhores, do melhor para o pior; no empate, o menor id
+		int[] ids = new int[MAXIMO];
+		int[] pontos = new int[MAXIMO];
+		int encontrados = 0;
+		for (int i = 0; i < rascunho.quantidade; i++) {
+			int outro = rascunho.tocados[i];
+			int pontuacao = rascunho.emComum[outro] * 2 + (mesmaLoja != null && mesmaLoja.contains(outro) ? 1 : 0);
+
+			int posicao = encontrados;
+			while (posicao > 0 && (pontos[posicao - 1] < pontuacao
+					|| pontos[posicao - 1] == pontuacao && ids[posicao - 1] > outro))
+				posicao--;
+			if (posicao == MAXIMO)
+				continue;
+
+			int ultimo = Math.min(encontrados, MAXIMO - 1);
+			System.arraycopy(ids, posicao, ids, posicao + 1, ultimo - posicao);
+			System.arraycopy(pontos, posicao, pontos, posicao + 1, ultimo - posicao);
+			ids[posicao] = outro;
+			pontos[posicao] = pontuacao;
+			encontrados = Math.min(encontrados + 1, MAXIMO);
+		}
+		rascunho.limpa();
+
+		relacionados.put(produtoId, encontrados == MAXIMO ? ids : Arrays.copyOf(ids, encontrados));
+	}
+
+}
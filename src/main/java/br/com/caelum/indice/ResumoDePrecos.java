@@ -0,0 +1,37 @@
+package br.com.caelum.indice;
+
+/**
+ * Mínimo, máximo, média e quantidade dos preços de um grupo de produtos (uma
+ * categoria, uma loja ou todos), no momento em que foi pedido.
+ */
+public class ResumoDePrecos {
+
+	private final int quantidade;
+	private final double minimo;
+	private final double maximo;
+	private final double media;
+
+	ResumoDePrecos(int quantidade, double minimo, double maximo, double media) {
+		this.quantidade = quantidade;
+		this.minimo = minimo;
+		this.maximo = maximo;
+		this.media = media;
+	}
+
+	public int getQuantidade() {
+		return quantidade;
+	}
+
+	public double getMinimo() {
+		return minimo;
+	}
+
+	public double getMaximo() {
+		return maximo;
+	}
+
+	public double getMedia() {
+		return media;
+	}
+
+}
@@ -0,0 +1,24 @@
+package br.com.caelum.indice;
+
+/**
+ * Um produto sugerido no autocompletar da busca.
+ */
+public class Sugestao {
+
+	private final Integer id;
+	private final String nome;
+
+	Sugestao(Integer id, String nome) {
+		this.id = id;
+		this.nome = nome;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getNome() {
+		return nome;
+	}
+
+}
@@ -0,0 +1,152 @@
+package br.com.caelum.indice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.EstadoDoProduto;
+
+/**
+ * Sugestões de nomes de produtos enquanto o usuário digita na busca.
+ *
+ * Recebe uma requisição por tecla digitada, então responde só com a
+ * {@link ArvoreDeSugestoes} em memória, sem banco e sem EntityManager. A
+ * árvore é montada na primeira sugestão (uma query com id, versão, nome e
+ * visualizações) e acompanha as gravações pelo evento {@link ProdutoGravado}:
+ * o nome novo é comparado com o que a árvore tem, não com o anterior do
+ * evento, que pode ser uma cópia velha do cache.
+ *
+ * Os produtos mais vistos aparecem primeiro: a popularidade é o total de
+ * visualizações do detalhe, que chega em lotes pelo ContadorDeVisualizacoes.
+ */
+@Component
+public class Sugestoes {
+
+	static final int MAXIMO = 10;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	private final ReadWriteLock trava = new ReentrantReadWriteLock();
+	private final ArvoreDeSugestoes arvore = new ArvoreDeSugestoes(MAXIMO);
+	// versão de cada produto na árvore
+	private final Map<Integer, Integer> versoes = new HashMap<>();
+
+	private volatile boolean montada;
+
+	/*
+	 * A quantidade vem direto do parâmetro da requisição: negativa vira zero
+	 * (lista vazia) e acima do MAXIMO fica no MAXIMO, que é o que a árvore
+	 * guarda por nó.
+	 */
+	public List<Sugestao> sugere(String prefixo, int quantidade) {
+		garanteMontada();
+
+		trava.readLock().lock();
+		try {
+			List<Sugestao> sugestoes = new ArrayList<>();
+			for (ArvoreDeSugestoes.Item item : arvore.busca(prefixo, Math.max(0, Math.min(quantidade, MAXIMO)))) {
+				sugestoes.add(new Sugestao(item.id, item.nome));
+			}
+			return sugestoes;
+		} finally {
+			trava.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Visitas somadas desde a última chamada, por produto (veja
+	 * ContadorDeVisualizacoes). Antes de montada não há o que somar: a montagem
+	 * já lê os totais gravados.
+	 */
+	public void somaPopularidade(Map<Integer, Long> visualizacoes) {
+		trava.writeLock().lock();
+		try {
+			if (!montada)
+				return;
+			for (Map.Entry<Integer, Long> visualizacao : visualizacoes.entrySet()) {
+				int produtoId = visualizacao.getKey();
+				arvore.popularidade(produtoId, arvore.popularidade(produtoId) + visualizacao.getValue());
+			}
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	// como nos outros índices: eventos de versão menor que a da árvore já foram superados
+	@TransactionalEventListener(fallbackExecution = true)
+	public void aoGravar(ProdutoGravado gravacao) {
+		EstadoDoProduto atual = gravacao.getAtual();
+
+		trava.writeLock().lock();
+		try {
+			if (!montada || atual.isAnteriorA(versoes.get(atual.getId())))
+				return;
+
+			versoes.put(atual.getId(), atual.getVersao());
+			if (!Objects.equals(arvore.nome(atual.getId()), atual.getNome()))
+				arvore.insere(atual.getId(), atual.getNome(), arvore.popularidade(atual.getId()));
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	private void garanteMontada() {
+		if (montada)
+			return;
+
+		trava.writeLock().lock();
+		try {
+			if (!montada) {
+				monta();
+				montada = true;
+			}
+		} finally {
+			trava.writeLock().unlock();
+		}
+	}
+
+	private void monta() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		monta(template.execute(status -> em.createQuery("select p.id, p.versao, p.nome,"
+				+ " (select v.total from VisualizacaoProduto v where v.produtoId = p.id) from Produto p", Object[].class)
+				.getResultList()));
+	}
+
+	// linhas (id, versão, nome, visualizações), como na query acima
+	void monta(List<Object[]> produtos) {
+		for (Object[] produto : produtos) {
+			Long visualizacoes = (Long) produto[3];
+			versoes.put((Integer) produto[0], (Integer) produto[1]);
+			arvore.insere((Integer) produto[0], (String) produto[2], visualizacoes == null ? 0 : visualizacoes);
+		}
+	}
+
+	public int getQuantidade() {
+		trava.readLock().lock();
+		try {
+			return arvore.getQuantidade();
+		} finally {
+			trava.readLock().unlock();
+		}
+	}
+
+}
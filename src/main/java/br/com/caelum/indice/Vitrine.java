@@ -0,0 +1,78 @@
+package br.com.caelum.indice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Os cartões de uma loja, em ordem de id. Imutável: cada gravação monta uma
+ * vitrine nova (veja {@link CatalogoDasLojas}).
+ */
+public class Vitrine {
+
+	private final Integer lojaId;
+	private final String nome;
+	private final List<Cartao> produtos;
+
+	Vitrine(Integer lojaId, String nome, List<Cartao> produtos) {
+		this.lojaId = lojaId;
+		this.nome = nome;
+		this.produtos = Collections.unmodifiableList(produtos);
+	}
+
+	public Integer getLojaId() {
+		return lojaId;
+	}
+
+	public String getNome() {
+		return nome;
+	}
+
+	public List<Cartao> getProdutos() {
+		return produtos;
+	}
+
+	/**
+	 * Os produtos da loja que estão na categoria, como na busca por loja e
+	 * categoria; com categoriaId null, todos.
+	 */
+	public List<Cartao> daCategoria(Integer categoriaId) {
+		if (categoriaId == null)
+			return produtos;
+
+		List<Cartao> daCategoria = new ArrayList<>();
+		for (Cartao cartao : produtos) {
+			if (cartao.getCategoriaIds().contains(categoriaId))
+				daCategoria.add(cartao);
+		}
+		return daCategoria;
+	}
+
+	Vitrine com(Cartao cartao) {
+		List<Cartao> novos = new ArrayList<>(produtos.size() + 1);
+		boolean inserido = false;
+		for (Cartao existente : produtos) {
+			int comparacao = existente.getId().compareTo(cartao.getId());
+			if (comparacao == 0)
+				continue;
+			if (comparacao > 0 && !inserido) {
+				novos.add(cartao);
+				inserido = true;
+			}
+			novos.add(existente);
+		}
+		if (!inserido)
+			novos.add(cartao);
+		return new Vitrine(lojaId, nome, novos);
+	}
+
+	Vitrine sem(Integer produtoId) {
+		List<Cartao> novos = new ArrayList<>(produtos.size());
+		for (Cartao existente : produtos) {
+			if (!existente.getId().equals(produtoId))
+				novos.add(existente);
+		}
+		return new Vitrine(lojaId, nome, novos);
+	}
+
+}
@@ -0,0 +1,33 @@
+package br.com.caelum.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(AcessoAoCache.NOME)
+@Label("Acesso ao cache de segundo nível")
+@Description("Um acerto ou uma falha numa região do cache de segundo nível ou de queries")
+@Category({ "Projeto JPA", "Cache" })
+@Enabled(false)
+@StackTrace(false)
+public class AcessoAoCache extends jdk.jfr.Event {
+
+	public static final String NOME = "br.com.caelum.AcessoAoCache";
+
+	@Label("Endpoint")
+	String endpoint;
+
+	@Label("Tipo")
+	@Description("entidade, colecao, query ou natural-id")
+	String tipo;
+
+	@Label("Região")
+	String regiao;
+
+	@Label("Acerto")
+	boolean acerto;
+
+}
@@ -0,0 +1,35 @@
+package br.com.caelum.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(ChamadaAoDao.NOME)
+@Label("Chamada ao DAO")
+@Description("Um método público de um @Repository")
+@Category({ "Projeto JPA", "Banco" })
+@Enabled(false)
+@StackTrace(false)
+public class ChamadaAoDao extends jdk.jfr.Event {
+
+	public static final String NOME = "br.com.caelum.ChamadaAoDao";
+
+	@Label("Endpoint")
+	String endpoint;
+
+	@Label("Método")
+	@Description("Classe.método(tipos dos parâmetros), ex. ProdutoDao.getProduto(Integer)")
+	String metodo;
+
+	@Label("Parâmetros")
+	@Description("Só o formato dos parâmetros, sem os valores, ex. String(vazia),Integer,null")
+	String parametros;
+
+	@Label("Linhas")
+	@Description("Tamanho da lista devolvida; 1 ou 0 para um objeto só")
+	int linhas;
+
+}
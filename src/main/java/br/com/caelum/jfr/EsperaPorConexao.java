@@ -0,0 +1,33 @@
+package br.com.caelum.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name(EsperaPorConexao.NOME)
+@Label("Espera por conexão")
+@Description("Tempo para o pool entregar uma conexão ao Hibernate")
+@Category({ "Projeto JPA", "Banco" })
+@Enabled(false)
+public class EsperaPorConexao extends jdk.jfr.Event {
+
+	public static final String NOME = "br.com.caelum.EsperaPorConexao";
+
+	@Label("Endpoint")
+	String endpoint;
+
+	/*
+	 * Chamado logo depois de receber a conexão (o begin() vem antes de pedi-la).
+	 * Desligado, o evento não passa do shouldCommit.
+	 */
+	public void termina() {
+		end();
+		if (shouldCommit()) {
+			endpoint = RequisicaoAtual.endpoint();
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package br.com.caelum.jfr;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.model.domain.NavigableRole;
+import org.hibernate.stat.internal.StatisticsImpl;
+import org.hibernate.stat.spi.StatisticsFactory;
+import org.hibernate.stat.spi.StatisticsImplementor;
+
+/**
+ * As estatísticas de sempre do Hibernate (as do ${statistics...} e do
+ * /estatisticas), mais um evento {@link AcessoAoCache} a cada acerto ou falha
+ * no cache de segundo nível e no cache de queries.
+ *
+ * O Statistics só soma os acertos e falhas por região; o evento diz também em
+ * qual endpoint eles aconteceram. Configurado em JpaConfigurator pela
+ * propriedade hibernate.stats.factory.
+ */
+public class EstatisticasComEventos extends StatisticsImpl {
+
+	public static class Fabrica implements StatisticsFactory {
+
+		@Override
+		public StatisticsImplementor buildStatistics(SessionFactoryImplementor sessionFactory) {
+			return new EstatisticasComEventos(sessionFactory);
+		}
+	}
+
+	public EstatisticasComEventos(SessionFactoryImplementor sessionFactory) {
+		super(sessionFactory);
+	}
+
+	@Override
+	public void entityCacheHit(NavigableRole entityName, String regionName) {
+		super.entityCacheHit(entityName, regionName);
+		registra("entidade", regionName, true);
+	}
+
+	@Override
+	public void entityCacheMiss(NavigableRole entityName, String regionName) {
+		super.entityCacheMiss(entityName, regionName);
+		registra("entidade", regionName, false);
+	}
+
+	@Override
+	public void collectionCacheHit(NavigableRole collectionRole, String regionName) {
+		super.collectionCacheHit(collectionRole, regionName);
+		registra("colecao", regionName, true);
+	}
+
+	@Override
+	public void collectionCacheMiss(NavigableRole collectionRole, String regionName) {
+		super.collectionCacheMiss(collectionRole, regionName);
+		registra("colecao", regionName, false);
+	}
+
+	@Override
+	public void naturalIdCacheHit(NavigableRole rootEntityName, String regionName) {
+		super.naturalIdCacheHit(rootEntityName, regionName);
+		registra("natural-id", regionName, true);
+	}
+
+	@Override
+	public void naturalIdCacheMiss(NavigableRole rootEntityName, String regionName) {
+		super.naturalIdCacheMiss(rootEntityName, regionName);
+		registra("natural-id", regionName, false);
+	}
+
+	@Override
+	public void queryCacheHit(String hql, String regionName) {
+		super.queryCacheHit(hql, regionName);
+		registra("query", regionName, true);
+	}
+
+	@Override
+	public void queryCacheMiss(String hql, String regionName) {
+		super.queryCacheMiss(hql, regionName);
+		registra("query", regionName, false);
+	}
+
+	private static void registra(String tipo, String regiao, boolean acerto) {
+		AcessoAoCache evento = new AcessoAoCache();
+		if (!evento.isEnabled())
+			return;
+
+		evento.endpoint = RequisicaoAtual.endpoint();
+		evento.tipo = tipo;
+		evento.regiao = regiao;
+		evento.acerto = acerto;
+		evento.commit();
+	}
+
+}
@@ -0,0 +1,98 @@
+package br.com.caelum.jfr;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Gera os eventos {@link Requisicao}, {@link ExecucaoDoController} e
+ * {@link RenderizacaoDaView} de cada requisição, e guarda o endpoint para os
+ * eventos de DAO, cache e conexão da mesma thread.
+ *
+ * Os eventos em andamento ficam em atributos da requisição, já que o
+ * interceptor é um só para todas. Sem uma gravação com o evento Requisicao
+ * ligado, o preHandle só cria o evento, vê que está desligado e sai.
+ */
+public class EventosDaRequisicao extends HandlerInterceptorAdapter {
+
+	private static final String REQUISICAO = Requisicao.class.getName();
+	private static final String FASE = EventosDaRequisicao.class.getName() + ".fase";
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		Requisicao requisicao = new Requisicao();
+		if (!requisicao.isEnabled())
+			return true;
+
+		requisicao.begin();
+		requisicao.endpoint = endpoint(request);
+		request.setAttribute(REQUISICAO, requisicao);
+		RequisicaoAtual.inicia(requisicao.endpoint);
+
+		ExecucaoDoController controller = new ExecucaoDoController();
+		controller.endpoint = requisicao.endpoint;
+		controller.metodo = handler instanceof HandlerMethod ? metodo((HandlerMethod) handler)
+				: handler.getClass().getSimpleName();
+		controller.begin();
+		request.setAttribute(FASE, controller);
+		return true;
+	}
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) {
+		Requisicao requisicao = (Requisicao) request.getAttribute(REQUISICAO);
+		if (requisicao == null)
+			return;
+
+		terminaFase(request);
+
+		// @ResponseBody já escreveu a resposta: não há view
+		if (modelAndView == null || modelAndView.wasCleared())
+			return;
+
+		RenderizacaoDaView view = new RenderizacaoDaView();
+		view.endpoint = requisicao.endpoint;
+		view.view = modelAndView.isReference() ? modelAndView.getViewName()
+				: modelAndView.getView().getClass().getSimpleName();
+		view.begin();
+		request.setAttribute(FASE, view);
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		Requisicao requisicao = (Requisicao) request.getAttribute(REQUISICAO);
+		if (requisicao == null)
+			return;
+
+		// com exceção no controller o postHandle não é chamado
+		terminaFase(request);
+
+		requisicao.status = ex == null ? response.getStatus() : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		requisicao.commit();
+		request.removeAttribute(REQUISICAO);
+		RequisicaoAtual.termina();
+	}
+
+	private static void terminaFase(HttpServletRequest request) {
+		Object fase = request.getAttribute(FASE);
+		if (fase instanceof jdk.jfr.Event)
+			((jdk.jfr.Event) fase).commit();
+		request.removeAttribute(FASE);
+	}
+
+	private static String endpoint(HttpServletRequest request) {
+		Object padrao = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		return request.getMethod() + " " + (padrao != null ? padrao : request.getServletPath());
+	}
+
+	private static String metodo(HandlerMethod handler) {
+		return handler.getBeanType().getSimpleName() + "." + handler.getMethod().getName();
+	}
+
+}
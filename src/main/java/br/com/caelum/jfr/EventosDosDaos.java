@@ -0,0 +1,103 @@
+package br.com.caelum.jfr;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.AbstractAdvisingBeanPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Envolve os @Repository num proxy que gera um evento {@link ChamadaAoDao} por
+ * chamada, com o método, o formato dos parâmetros, as linhas devolvidas e o
+ * tempo.
+ *
+ * Com o evento desligado sobra o custo do proxy e de um begin/end vazios. Os
+ * valores dos parâmetros nunca vão para a gravação, só o tipo e, em textos e
+ * coleções, se estão vazios ou o tamanho: é o que separa uma busca sem filtro
+ * de uma com filtro, ou um multiLoad de 5 ids de um de 500.
+ */
+@Component
+public class EventosDosDaos extends AbstractAdvisingBeanPostProcessor {
+
+	private static final long serialVersionUID = 1L;
+
+	public EventosDosDaos() {
+		this.advisor = new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(Repository.class, true),
+				(MethodInterceptor) EventosDosDaos::intercepta);
+		setBeforeExistingAdvisors(true);
+	}
+
+	private static Object intercepta(MethodInvocation invocacao) throws Throwable {
+		if (invocacao.getMethod().getDeclaringClass() == Object.class)
+			return invocacao.proceed();
+
+		ChamadaAoDao evento = new ChamadaAoDao();
+		evento.begin();
+		Object resultado = null;
+		boolean falhou = true;
+		try {
+			resultado = invocacao.proceed();
+			falhou = false;
+			return resultado;
+		} finally {
+			evento.end();
+			if (evento.shouldCommit()) {
+				evento.endpoint = RequisicaoAtual.endpoint();
+				evento.metodo = metodo(invocacao.getMethod());
+				evento.parametros = formato(invocacao.getArguments());
+				evento.linhas = falhou ? -1 : linhas(resultado);
+				evento.commit();
+			}
+		}
+	}
+
+	// com os tipos dos parâmetros, para separar as sobrecargas de getProdutos
+	private static String metodo(Method metodo) {
+		StringBuilder nome = new StringBuilder(metodo.getDeclaringClass().getSimpleName()).append('.')
+				.append(metodo.getName()).append('(');
+		Class<?>[] tipos = metodo.getParameterTypes();
+		for (int i = 0; i < tipos.length; i++) {
+			if (i > 0)
+				nome.append(',');
+			nome.append(tipos[i].getSimpleName());
+		}
+		return nome.append(')').toString();
+	}
+
+	static String formato(Object[] argumentos) {
+		StringBuilder formato = new StringBuilder();
+		for (Object argumento : argumentos) {
+			if (formato.length() > 0)
+				formato.append(',');
+
+			if (argumento == null)
+				formato.append("null");
+			else if (argumento instanceof CharSequence)
+				formato.append(((CharSequence) argumento).length() == 0 ? "String(vazia)" : "String");
+			else if (argumento instanceof Collection)
+				formato.append("Collection[").append(((Collection<?>) argumento).size()).append(']');
+			else if (argumento instanceof Map)
+				formato.append("Map[").append(((Map<?, ?>) argumento).size()).append(']');
+			else if (argumento.getClass().isArray())
+				formato.append(argumento.getClass().getComponentType().getSimpleName()).append('[')
+						.append(Array.getLength(argumento)).append(']');
+			else
+				formato.append(argumento.getClass().getSimpleName());
+		}
+		return formato.toString();
+	}
+
+	private static int linhas(Object resultado) {
+		if (resultado instanceof Collection)
+			return ((Collection<?>) resultado).size();
+		return resultado == null ? 0 : 1;
+	}
+
+}
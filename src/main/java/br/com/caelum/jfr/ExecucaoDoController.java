@@ -0,0 +1,26 @@
+package br.com.caelum.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(ExecucaoDoController.NOME)
+@Label("Execução do controller")
+@Description("Do preHandle ao postHandle: o método do controller, com os binds e validações")
+@Category({ "Projeto JPA", "Web" })
+@Enabled(false)
+@StackTrace(false)
+public class ExecucaoDoController extends jdk.jfr.Event {
+
+	public static final String NOME = "br.com.caelum.ExecucaoDoController";
+
+	@Label("Endpoint")
+	String endpoint;
+
+	@Label("Método do controller")
+	String metodo;
+
+}
@@ -0,0 +1,26 @@
+package br.com.caelum.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(RenderizacaoDaView.NOME)
+@Label("Renderização da view")
+@Description("Do postHandle ao afterCompletion: o JSP, com o que ele carregar por lazy load")
+@Category({ "Projeto JPA", "Web" })
+@Enabled(false)
+@StackTrace(false)
+public class RenderizacaoDaView extends jdk.jfr.Event {
+
+	public static final String NOME = "br.com.caelum.RenderizacaoDaView";
+
+	@Label("Endpoint")
+	String endpoint;
+
+	@Label("View")
+	String view;
+
+}
@@ -0,0 +1,27 @@
+package br.com.caelum.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(Requisicao.NOME)
+@Label("Requisição")
+@Description("Uma requisição ao Spring MVC, do preHandle ao afterCompletion")
+@Category({ "Projeto JPA", "Web" })
+@Enabled(false)
+@StackTrace(false)
+public class Requisicao extends jdk.jfr.Event {
+
+	public static final String NOME = "br.com.caelum.Requisicao";
+
+	@Label("Endpoint")
+	@Description("Método HTTP e padrão do mapeamento, ex. GET /produto/{id}")
+	String endpoint;
+
+	@Label("Status")
+	int status;
+
+}
@@ -0,0 +1,30 @@
+package br.com.caelum.jfr;
+
+/**
+ * O endpoint da requisição que a thread está atendendo, para os eventos de
+ * DAO, cache e conexão poderem ser agrupados por endpoint.
+ *
+ * Só é preenchido quando o evento {@link Requisicao} está ligado na gravação;
+ * fora de uma requisição (tarefas agendadas, fork-join...) fica vazio.
+ */
+final class RequisicaoAtual {
+
+	private static final ThreadLocal<String> ENDPOINT = new ThreadLocal<>();
+
+	private RequisicaoAtual() {
+	}
+
+	static String endpoint() {
+		String endpoint = ENDPOINT.get();
+		return endpoint == null ? "" : endpoint;
+	}
+
+	static void inicia(String endpoint) {
+		ENDPOINT.set(endpoint);
+	}
+
+	static void termina() {
+		ENDPOINT.remove();
+	}
+
+}
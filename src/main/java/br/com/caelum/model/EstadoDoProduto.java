@@ -0,0 +1,88 @@
+package br.com.caelum.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fotografia imutável dos campos de um {@link Produto} em uma determinada
+ * versão.
+ *
+ * Como guarda apenas valores (e os ids da loja e das categorias), pode ser
+ * mantida em memória e comparada entre threads sem depender de um
+ * EntityManager aberto.
+ */
+public class EstadoDoProduto {
+
+	private final Integer id;
+	private final Integer versao;
+	private final String nome;
+	private final String linkDaFoto;
+	private final String descricao;
+	private final double preco;
+	private final Integer lojaId;
+	private final List<Integer> categoriaIds;
+
+	private EstadoDoProduto(Produto produto) {
+		this.id = produto.getId();
+		this.versao = produto.getVersao();
+		this.nome = produto.getNome();
+		this.linkDaFoto = produto.getLinkDaFoto();
+		this.descricao = produto.getDescricao();
+		this.preco = produto.getPreco();
+		this.lojaId = produto.getLoja() == null ? null : produto.getLoja().getId();
+
+		List<Integer> ids = new ArrayList<>();
+		for (Categoria categoria : produto.getCategorias()) {
+			if (!ids.contains(categoria.getId()))
+				ids.add(categoria.getId());
+		}
+		Collections.sort(ids);
+		this.categoriaIds = Collections.unmodifiableList(ids);
+	}
+
+	public static EstadoDoProduto de(Produto produto) {
+		return new EstadoDoProduto(produto);
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public Integer getVersao() {
+		return versao;
+	}
+
+	/**
+	 * Se este estado é de uma gravação anterior à versão dada. Sem versão de um
+	 * dos lados não há como saber, e a resposta é não.
+	 */
+	public boolean isAnteriorA(Integer outraVersao) {
+		return versao != null && outraVersao != null && versao < outraVersao;
+	}
+
+	public String getNome() {
+		return nome;
+	}
+
+	public String getLinkDaFoto() {
+		return linkDaFoto;
+	}
+
+	public String getDescricao() {
+		return descricao;
+	}
+
+	public double getPreco() {
+		return preco;
+	}
+
+	public Integer getLojaId() {
+		return lojaId;
+	}
+
+	public List<Integer> getCategoriaIds() {
+		return categoriaIds;
+	}
+
+}
@@ -9,9 +9,11 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
 import javax.persistence.Version;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
@@ -71,6 +73,7 @@ import org.hibernate.annotations.DynamicUpdate;
  */
 @DynamicUpdate(true)
 @Entity
+@Table(indexes = @Index(name = "produto_alteracao", columnList = "alteracao"))
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 public class Produto {
 
@@ -142,6 +145,13 @@ public class Produto {
 	@Version
 	private Integer versao;
 
+	/*
+	 * Transao do PostgreSQL (txid) da ltima gravao, preenchida pelo
+	 * ProdutoDao.insere. Ao contrrio da versao, d para comparar entre produtos
+	 * diferentes:  por ela que sai a exportao incremental.
+	 */
+	private Long alteracao;
+
 	public String getDescricao() {
 		return descricao;
 	}
@@ -212,4 +222,12 @@ public class Produto {
 		this.versao = versao;
 	}
 
+	public Long getAlteracao() {
+		return alteracao;
+	}
+
+	public void setAlteracao(Long alteracao) {
+		this.alteracao = alteracao;
+	}
+
 }
@@ -0,0 +1,28 @@
+package br.com.caelum.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Total de visualizações de um produto, numa tabela só dele.
+ *
+ * Fica fora de Produto de propósito: contar visitas não deve mudar a @Version
+ * do produto (nem conflitar com quem está editando) e nem invalidar o cache de
+ * segundo nível. Quem grava é o ContadorDeVisualizacoes, em lote.
+ */
+@Entity
+public class VisualizacaoProduto {
+
+	@Id
+	private Integer produtoId;
+
+	private long total;
+
+	public Integer getProdutoId() {
+		return produtoId;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+}
@@ -0,0 +1,195 @@
+package br.com.caelum.visualizacao;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.caelum.indice.Sugestoes;
+import br.com.caelum.model.VisualizacaoProduto;
+
+/**
+ * Conta as visualizações do detalhe de cada produto sem ir ao banco na
+ * requisição.
+ *
+ * Cada produto tem um LongAdder, que espalha os incrementos concorrentes em
+ * células separadas em vez de disputar um único contador. De tempos em tempos
+ * (visualizacoes.intervalo, em ms) uma thread do agendador grava o que foi
+ * contado desde a última vez em {@link VisualizacaoProduto}, num único lote de
+ * upserts, e alimenta o ranking dos mais vistos ({@link EspacoEconomico}) e a
+ * popularidade das {@link Sugestoes}.
+ *
+ * Se a gravação falhar as visitas não se perdem: continuam pendentes e vão na
+ * próxima. Só as visitas desde a última gravação se perdem se o servidor cair.
+ */
+@Component
+public class ContadorDeVisualizacoes {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ContadorDeVisualizacoes.class);
+
+	static final int CAPACIDADE_DO_RANKING = 200;
+
+	/*
+	 * Soma em vez de sobrescrever: se houver mais de um servidor, cada um grava
+	 * só as próprias visitas.
+	 */
+	private static final String UPSERT = "insert into VisualizacaoProduto (produtoId, total) values (?, ?) "
+			+ "on conflict (produtoId) do update set total = VisualizacaoProduto.total + excluded.total";
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private JpaTransactionManager transactionManager;
+
+	@Autowired
+	private Sugestoes sugestoes;
+
+	private static class Contador {
+		final LongAdder visualizacoes = new LongAdder();
+		// quanto da soma acima já está no banco; só a gravação mexe
+		volatile long gravadas;
+	}
+
+	private final ConcurrentMap<Integer, Contador> contadores = new ConcurrentHashMap<>();
+
+	private final EspacoEconomico espacoEconomico = new EspacoEconomico(CAPACIDADE_DO_RANKING);
+	private volatile List<MaisVisto> ranking = Collections.emptyList();
+	private boolean rankingCarregado;
+
+	private final LongAdder gravacoes = new LongAdder();
+	private final LongAdder linhasGravadas = new LongAdder();
+	private final LongAdder falhas = new LongAdder();
+
+	public void registra(Integer produtoId) {
+		Contador contador = contadores.get(produtoId);
+		if (contador == null)
+			contador = contadores.computeIfAbsent(produtoId, id -> new Contador());
+		contador.visualizacoes.increment();
+	}
+
+	public List<MaisVisto> getMaisVistos(int quantidade) {
+		List<MaisVisto> ranking = this.ranking;
+		return ranking.subList(0, Math.min(quantidade, ranking.size()));
+	}
+
+	@Scheduled(fixedDelayString = "${visualizacoes.intervalo:5000}")
+	public synchronized void grava() {
+		if (!rankingCarregado) {
+			carregaRanking();
+			rankingCarregado = true;
+		}
+
+		// em ordem de id, para dois servidores gravando juntos não travarem um ao outro
+		Map<Integer, Long> pendentes = new TreeMap<>();
+		Map<Contador, Long> lidas = new IdentityHashMap<>();
+		for (Map.Entry<Integer, Contador> entrada : contadores.entrySet()) {
+			Contador contador = entrada.getValue();
+			long soma = contador.visualizacoes.sum();
+			if (soma > contador.gravadas) {
+				pendentes.put(entrada.getKey(), soma - contador.gravadas);
+				lidas.put(contador, soma);
+			}
+		}
+		if (pendentes.isEmpty())
+			return;
+
+		try {
+			TransactionTemplate template = new TransactionTemplate(transactionManager);
+			template.execute(status -> {
+				em.unwrap(Session.class).doWork(conexao -> {
+					try (PreparedStatement upsert = conexao.prepareStatement(UPSERT)) {
+						for (Map.Entry<Integer, Long> pendente : pendentes.entrySet()) {
+							upsert.setInt(1, pendente.getKey());
+							upsert.setLong(2, pendente.getValue());
+							upsert.addBatch();
+						}
+						upsert.executeBatch();
+					}
+				});
+				return null;
+			});
+		} catch (RuntimeException e) {
+			falhas.increment();
+			LOG.warn("Falha ao gravar {} contadores de visualização, tentando de novo na próxima vez",
+					pendentes.size(), e);
+			return;
+		}
+
+		for (Map.Entry<Contador, Long> lida : lidas.entrySet()) {
+			lida.getKey().gravadas = lida.getValue();
+		}
+		gravacoes.increment();
+		linhasGravadas.add(pendentes.size());
+
+		for (Map.Entry<Integer, Long> pendente : pendentes.entrySet()) {
+			espacoEconomico.soma(pendente.getKey(), pendente.getValue());
+		}
+		ranking = Collections.unmodifiableList(new ArrayList<>(espacoEconomico.ranking(CAPACIDADE_DO_RANKING)));
+
+		sugestoes.somaPopularidade(pendentes);
+	}
+
+	/*
+	 * O que já estava no banco ao subir: os mais vistos de antes entram no
+	 * ranking com a contagem exata.
+	 */
+	private void carregaRanking() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		List<VisualizacaoProduto> maisVistos = template.execute(status -> em
+				.createQuery("select v from VisualizacaoProduto v order by v.total desc", VisualizacaoProduto.class)
+				.setMaxResults(CAPACIDADE_DO_RANKING).getResultList());
+
+		for (VisualizacaoProduto visualizacao : maisVistos) {
+			espacoEconomico.soma(visualizacao.getProdutoId(), visualizacao.getTotal());
+		}
+		ranking = Collections.unmodifiableList(new ArrayList<>(espacoEconomico.ranking(CAPACIDADE_DO_RANKING)));
+	}
+
+	// antes de fechar o EntityManagerFactory, para não perder as últimas visitas
+	@PreDestroy
+	public void encerra() {
+		grava();
+	}
+
+	public long getPendentes() {
+		long pendentes = 0;
+		for (Contador contador : contadores.values()) {
+			pendentes += contador.visualizacoes.sum() - contador.gravadas;
+		}
+		return pendentes;
+	}
+
+	public long getGravacoes() {
+		return gravacoes.sum();
+	}
+
+	public long getLinhasGravadas() {
+		return linhasGravadas.sum();
+	}
+
+	public long getFalhas() {
+		return falhas.sum();
+	}
+
+}
@@ -0,0 +1,69 @@
+package br.com.caelum.visualizacao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Os produtos mais vistos pelo algoritmo Space-Saving (Metwally et al.): no
+ * máximo {@code capacidade} contadores, não importa quantos produtos existam.
+ *
+ * Quando chega um produto novo e os contadores estão todos ocupados, ele toma
+ * o lugar do menos visto e herda a contagem dele como erro. Assim a contagem
+ * de cada um é no máximo {@code erro} maior que a real, e qualquer produto
+ * visto mais que total/capacidade vezes com certeza está na lista.
+ *
+ * As contagens chegam somadas (as visitas desde a última gravação), não uma a
+ * uma. Não é thread-safe: quem usa ({@link ContadorDeVisualizacoes}) controla
+ * o acesso.
+ */
+class EspacoEconomico {
+
+	private static final Comparator<MaisVisto> ORDEM = Comparator.comparingLong(MaisVisto::getVisualizacoes)
+			.reversed().thenComparing(MaisVisto::getProdutoId);
+
+	private final int capacidade;
+	private final Map<Integer, long[]> contadores;
+
+	EspacoEconomico(int capacidade) {
+		this.capacidade = capacidade;
+		this.contadores = new HashMap<>(capacidade * 2);
+	}
+
+	void soma(int produtoId, long visualizacoes) {
+		long[] contador = contadores.get(produtoId);
+		if (contador != null) {
+			contador[0] += visualizacoes;
+			return;
+		}
+
+		if (contadores.size() < capacidade) {
+			contadores.put(produtoId, new long[] { visualizacoes, 0 });
+			return;
+		}
+
+		// com poucas centenas de contadores a busca linear basta, e só roda na gravação
+		Integer menosVisto = null;
+		long minimo = Long.MAX_VALUE;
+		for (Map.Entry<Integer, long[]> entrada : contadores.entrySet()) {
+			if (entrada.getValue()[0] < minimo) {
+				minimo = entrada.getValue()[0];
+				menosVisto = entrada.getKey();
+			}
+		}
+		contadores.remove(menosVisto);
+		contadores.put(produtoId, new long[] { minimo + visualizacoes, minimo });
+	}
+
+	List<MaisVisto> ranking(int quantidade) {
+		List<MaisVisto> ranking = new ArrayList<>(contadores.size());
+		for (Map.Entry<Integer, long[]> entrada : contadores.entrySet()) {
+			ranking.add(new MaisVisto(entrada.getKey(), entrada.getValue()[0], entrada.getValue()[1]));
+		}
+		ranking.sort(ORDEM);
+		return ranking.subList(0, Math.min(quantidade, ranking.size()));
+	}
+
+}
@@ -0,0 +1,31 @@
+package br.com.caelum.visualizacao;
+
+/**
+ * Um produto no ranking dos mais vistos. As visualizações são estimadas: podem
+ * estar até {@code erro} acima do real (veja {@link EspacoEconomico}).
+ */
+public class MaisVisto {
+
+	private final Integer produtoId;
+	private final long visualizacoes;
+	private final long erro;
+
+	MaisVisto(Integer produtoId, long visualizacoes, long erro) {
+		this.produtoId = produtoId;
+		this.visualizacoes = visualizacoes;
+		this.erro = erro;
+	}
+
+	public Integer getProdutoId() {
+		return produtoId;
+	}
+
+	public long getVisualizacoes() {
+		return visualizacoes;
+	}
+
+	public long getErro() {
+		return erro;
+	}
+
+}
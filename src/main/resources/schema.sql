@@ -0,0 +1,46 @@
+-- Schema do banco para o início rápido (inicioRapido=true), em que o Hibernate
+-- só valida as tabelas em vez de criá-las. Roda a cada subida nesse modo, antes
+-- da validação, por isso só cria o que ainda não existe.
+--
+-- Gerado a partir das entidades listadas em JpaConfigurator.ENTIDADES; ao criar
+-- ou alterar uma entidade, atualize também este arquivo.
+
+create table if not exists Categoria (
+    id serial not null,
+    nome varchar(255),
+    primary key (id)
+);
+
+create table if not exists Loja (
+    id serial not null,
+    nome varchar(255),
+    primary key (id)
+);
+
+create table if not exists Produto (
+    id serial not null,
+    descricao TEXT,
+    linkDaFoto varchar(255),
+    nome varchar(255),
+    preco float8 not null,
+    versao int4,
+    alteracao int8,
+    loja_id int4 references Loja,
+    primary key (id)
+);
+
+-- bancos criados antes da coluna alteracao (exportação incremental)
+alter table Produto add column if not exists alteracao int8;
+create index if not exists produto_alteracao on Produto (alteracao);
+
+create table if not exists categoria_produto (
+    Produto_id int4 not null references Produto,
+    categorias_id int4 not null references Categoria
+);
+
+-- contagem de visualizações, gravada com upsert pelo ContadorDeVisualizacoes
+create table if not exists VisualizacaoProduto (
+    produtoId int4 not null,
+    total int8 not null,
+    primary key (produtoId)
+);
@@ -28,6 +28,132 @@
 							</tr>
 						</tbody>
 					</table>
+					<table class="table table-striped">
+						<thead>
+							<tr>
+								<th>Gravações</th>
+								<th>Retentativas</th>
+								<th>Mesclas</th>
+								<th>Conflitos</th>
+								<th>Taxa de conflito</th>
+							</tr>
+						</thead>
+						<tbody>
+							<tr>
+								<td>${gravadorDeProdutos.gravacoes}</td>
+								<td>${gravadorDeProdutos.retentativas}</td>
+								<td>${gravadorDeProdutos.mesclas}</td>
+								<td>${gravadorDeProdutos.conflitos}</td>
+								<td><fmt:formatNumber type="percent" value="${gravadorDeProdutos.taxaDeConflito}" /></td>
+							</tr>
+						</tbody>
+					</table>
+					<table class="table table-striped">
+						<thead>
+							<tr>
+								<th>Leituras no banco</th>
+								<th>Leituras coalescidas</th>
+								<th>Desistências</th>
+								<th>Em andamento</th>
+							</tr>
+						</thead>
+						<tbody>
+							<tr>
+								<td>${carregamentoUnico.carregamentos}</td>
+								<td>${carregamentoUnico.coalescidas}</td>
+								<td>${carregamentoUnico.desistencias}</td>
+								<td>${carregamentoUnico.emAndamento}</td>
+							</tr>
+						</tbody>
+					</table>
+					<table class="table table-striped">
+						<thead>
+							<tr>
+								<th>Visualizações pendentes</th>
+								<th>Gravações de visualizações</th>
+								<th>Contadores gravados</th>
+								<th>Falhas</th>
+							</tr>
+						</thead>
+						<tbody>
+							<tr>
+								<td>${contadorDeVisualizacoes.pendentes}</td>
+								<td>${contadorDeVisualizacoes.gravacoes}</td>
+								<td>${contadorDeVisualizacoes.linhasGravadas}</td>
+								<td>${contadorDeVisualizacoes.falhas}</td>
+							</tr>
+						</tbody>
+					</table>
+					<h4>Controle de admissão</h4>
+					<p>
+						Limite de ${controleDeAdmissao.limite} requisições simultâneas, ${controleDeAdmissao.emAndamento} em andamento
+						<c:if test="${not controleDeAdmissao.ativo}">(desligado: só calcula, não recusa)</c:if>.
+						Latência recente por SQL:
+						<fmt:formatNumber value="${controleDeAdmissao.latencia}" maxFractionDigits="2" /> ms
+						(o limite cai acima de <fmt:formatNumber value="${controleDeAdmissao.latenciaAlvo}" maxFractionDigits="1" /> ms).
+					</p>
+					<table class="table table-striped">
+						<thead>
+							<tr>
+								<th>Prioridade</th>
+								<th>Admitidas</th>
+								<th>Recusadas (503)</th>
+							</tr>
+						</thead>
+						<tbody>
+							<c:forEach items="${controleDeAdmissao.admitidas}" var="admitidas">
+								<tr>
+									<td>${admitidas.key}</td>
+									<td>${admitidas.value}</td>
+									<td>${controleDeAdmissao.recusadas[admitidas.key]}</td>
+								</tr>
+							</c:forEach>
+						</tbody>
+					</table>
+					<h4>SQLs que mais tomaram tempo do banco</h4>
+					<p>
+						Tempos em ms, percentis aproximados. Lentas: acima de ${monitorDeConsultas.limite} ms
+						(${monitorDeConsultas.lentas} no total, ${monitorDeConsultas.descartadas} descartadas do log).
+					</p>
+					<table class="table table-striped">
+						<thead>
+							<tr>
+								<th>SQL</th>
+								<th>Execuções</th>
+								<th>Total</th>
+								<th>Média</th>
+								<th>p95</th>
+								<th>p99</th>
+								<th>Máximo</th>
+								<th>Lentas</th>
+							</tr>
+						</thead>
+						<tbody>
+							<c:forEach items="${monitorDeConsultas.piores}" var="consulta">
+								<tr>
+									<td><code><c:out value="${consulta.impressao}" /></code></td>
+									<td>${consulta.execucoes}</td>
+									<td><fmt:formatNumber value="${consulta.total}" maxFractionDigits="1" /></td>
+									<td><fmt:formatNumber value="${consulta.media}" maxFractionDigits="2" /></td>
+									<td><fmt:formatNumber value="${consulta.p95}" maxFractionDigits="2" /></td>
+									<td><fmt:formatNumber value="${consulta.p99}" maxFractionDigits="2" /></td>
+									<td><fmt:formatNumber value="${consulta.maximo}" maxFractionDigits="2" /></td>
+									<td>${consulta.lentas}</td>
+								</tr>
+							</c:forEach>
+						</tbody>
+					</table>
+					<h4>Consultas lentas recentes</h4>
+					<c:forEach items="${monitorDeConsultas.recentes}" var="lenta">
+						<p>
+							<fmt:formatDate value="${lenta.momento}" pattern="HH:mm:ss" />,
+							<fmt:formatNumber value="${lenta.duracao}" maxFractionDigits="1" /> ms:
+							<code><c:out value="${lenta.sql}" /></code>
+						</p>
+						<c:if test="${not empty lenta.plano}">
+							<pre><c:out value="${lenta.plano}" /></pre>
+						</c:if>
+					</c:forEach>
 				</div>
 			</div>
 		</div>
@@ -6,15 +6,18 @@
 <c:import url="template/top.jsp" />
 <div class="col-sm-8">
 <div class="panel panel-default">
-	<div class="panel-heading">Produto</div>
+	<div class="panel-heading">${empty vitrine ? 'Produto' : vitrine.nome}</div>
 	<div class="panel-body">
 		<div class="row">
 			<c:forEach items="${produtos}" var="produto">
 				<div class="col-lg-4 col-sm-6">
 					<h4>${produto.nome}</h4>
+					<c:if test="${not empty visualizacoes}">
+						<p>${visualizacoes[produto.id]} visualizaes</p>
+					</c:if>
 					<p>
 						<a href="<c:url value="/produto/${produto.id}" />"
-							class="block clearfix"> <img src="${produto.linkDaFoto}"
+							class="block clearfix"> <img src="<c:url value="/miniatura/${produto.id}/cartao" />"
 							width="150" height="200">
 						</a>
 					<p>
@@ -26,6 +29,25 @@
 				</div>
 			</c:forEach>
 		</div>
+		<c:if test="${not empty paginacao}">
+			<ul class="pager">
+				<li>${paginacao.total} produtos</li>
+				<c:if test="${paginacao.temAnterior}">
+					<c:url var="anterior" value="/produto/filtrar">
+						<c:param name="expressao" value="${expressao}" />
+						<c:param name="pagina" value="${paginacao.pagina - 1}" />
+					</c:url>
+					<li><a href="${anterior}">Anterior</a></li>
+				</c:if>
+				<c:if test="${paginacao.temProxima}">
+					<c:url var="proxima" value="/produto/filtrar">
+						<c:param name="expressao" value="${expressao}" />
+						<c:param name="pagina" value="${paginacao.pagina + 1}" />
+					</c:url>
+					<li><a href="${proxima}">Prxima</a></li>
+				</c:if>
+			</ul>
+		</c:if>
 	</div>
 </div>
 </div>
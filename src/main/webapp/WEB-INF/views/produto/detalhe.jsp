@@ -14,7 +14,7 @@
 				<div class="col-sm-7">
 					<legend></legend>
 					<div class="col-sm-5">
-						<img src="${produto.linkDaFoto}" width="200" height="300">
+						<img src="<c:url value="/miniatura/${produto.id}/detalhe" />" width="200" height="300">
 					</div>
 					<div class="col-sm-7">
 						<p>${produto.descricao}</p>
@@ -25,6 +25,21 @@
 
 					</div>
 				</div>
+				<c:if test="${not empty relacionados}">
+					<div class="col-sm-12">
+						<h4>Relacionados</h4>
+						<div class="row">
+							<c:forEach items="${relacionados}" var="relacionado">
+								<div class="col-sm-2">
+									<a href="<c:url value="/produto/${relacionado.id}" />">
+										<img src="<c:url value="/miniatura/${relacionado.id}/cartao" />" width="75" height="100">
+									</a>
+									<p><small>${relacionado.nome}</small></p>
+								</div>
+							</c:forEach>
+						</div>
+					</div>
+				</c:if>
 			</div>
 		</div>
 	</div>
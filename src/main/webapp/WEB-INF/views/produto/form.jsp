@@ -14,6 +14,7 @@
 
 		<div class="panel-body">
 			<form action="${contextPath}produto/cadastraProduto" method="post">
+				<form:errors path="produto" element="div" cssClass="alert alert-warning" />
 				<div class="form-group">
 					<label for="nome">
 						Nome:
@@ -69,16 +70,17 @@
 						</c:forEach>	
 						<c:choose>	
 							<c:when test="${contains}">
-					 			<input type="checkbox" name="categorias" value="${categorias[status.index].id}" checked> 
+					 			<input type="checkbox" name="categorias" value="${categoria.id}" checked> 
 									${categoria.nome}<br>
 								<c:set var="contains" value="false"/>		
 							</c:when>
 							<c:when test="${not contains }">
-								<input type="checkbox" name="categorias" value="${categorias[status.index].id}"> 
+								<input type="checkbox" name="categorias" value="${categoria.id}"> 
 									${categoria.nome}<br>
 							</c:when>
 						</c:choose>
 					</c:forEach>
+					<form:errors path="produto.categorias" />
 				</div>
 				<div class="form-group">
 					<label for="descricao">
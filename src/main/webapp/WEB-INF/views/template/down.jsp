@@ -13,7 +13,9 @@
 			<form class="form-group" method="post" action="<c:url value="/produto/buscar"/>">
 				<p>
 					<input type="text" name="nome" class="form-control"
-						placeholder="Nome">
+						placeholder="Nome" list="sugestoes" autocomplete="off"
+						data-sugestoes="<c:url value="/produto/sugestoes"/>">
+					<datalist id="sugestoes"></datalist>
 				</p>
 				<p>
 					<select class="form-control" name="categoriaId">
@@ -39,5 +41,27 @@
 		</div>
 	</div>
 </div>
+<script>
+	(function() {
+		var campo = document.querySelector('input[list="sugestoes"]');
+		var lista = document.getElementById('sugestoes');
+		var pedido;
+		campo.addEventListener('input', function() {
+			if (pedido) pedido.abort();
+			if (!campo.value.trim()) return;
+			pedido = new XMLHttpRequest();
+			pedido.open('GET', campo.dataset.sugestoes + '?prefixo=' + encodeURIComponent(campo.value));
+			pedido.onload = function() {
+				lista.innerHTML = '';
+				JSON.parse(pedido.responseText).forEach(function(sugestao) {
+					var opcao = document.createElement('option');
+					opcao.value = sugestao.nome;
+					lista.appendChild(opcao);
+				});
+			};
+			pedido.send();
+		});
+	})();
+</script>
 </body>
 </html>
\ No newline at end of file
@@ -15,6 +15,7 @@
 			<div class="navbar-header">
 				<a class="navbar-brand" href="<c:url value='/' />">Home</a>
 				<a class="navbar-brand" href="<c:url value='/produto/form' />">Novo produto</a>
+				<a class="navbar-brand" href="<c:url value='/produto/mais-vistos' />">Mais vistos</a>
 				<a class="navbar-brand" href="<c:url value='/estatisticas' />">Estatísticas</a>
 			</div>
 		</nav>
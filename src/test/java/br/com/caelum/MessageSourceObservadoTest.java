@@ -0,0 +1,75 @@
+package br.com.caelum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class MessageSourceObservadoTest {
+
+	@Rule
+	public TemporaryFolder pasta = new TemporaryFolder();
+
+	private MessageSourceObservado mensagens;
+
+	@Before
+	public void carrega() throws IOException {
+		escreve("messages.properties", "Min = O {0} minimo e {1} reais\nNotEmpty = Preencha o campo\n");
+		escreve("messages_pt_BR.properties", "NotEmpty = Campo obrigatorio\n");
+
+		mensagens = new MessageSourceObservado("file:" + pasta.getRoot().getAbsolutePath() + "/messages");
+		mensagens.setResourceLoader(new DefaultResourceLoader());
+		mensagens.init();
+	}
+
+	@After
+	public void encerra() throws IOException {
+		mensagens.encerra();
+	}
+
+	@Test
+	public void cadaIdiomaUsaOArquivoMaisEspecificoQueExiste() {
+		assertEquals("Campo obrigatorio", mensagens.getMessage("NotEmpty", null, new Locale("pt", "BR")));
+		assertEquals("Preencha o campo", mensagens.getMessage("NotEmpty", null, new Locale("pt", "PT")));
+		assertEquals("Preencha o campo", mensagens.getMessage("NotEmpty", null, Locale.ENGLISH));
+	}
+
+	@Test
+	public void muitosIdiomasDividemAsTabelasDosArquivos() {
+		Object pacote = ReflectionTestUtils.getField(mensagens, "pacote");
+		Object padrao = ReflectionTestUtils.invokeMethod(pacote, "tabela", Locale.ENGLISH);
+
+		for (Locale locale : Locale.getAvailableLocales()) {
+			mensagens.getMessage("NotEmpty", null, locale);
+			if (!locale.getLanguage().equals("pt"))
+				assertSame(padrao, ReflectionTestUtils.invokeMethod(pacote, "tabela", locale));
+		}
+
+		// messages.properties e messages_pt_BR.properties
+		assertEquals(2, ((Map<?, ?>) ReflectionTestUtils.getField(pacote, "porSufixo")).size());
+	}
+
+	@Test
+	public void formataOsArgumentosNoIdiomaDoArquivo() {
+		assertEquals("O pre\u00e7o minimo e 1.000 reais",
+				mensagens.getMessage("Min", new Object[] { "pre\u00e7o", 1000 }, new Locale("pt", "BR")));
+	}
+
+	private void escreve(String nome, String conteudo) throws IOException {
+		Files.write(new File(pasta.getRoot(), nome).toPath(), conteudo.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+}
@@ -0,0 +1,137 @@
+package br.com.caelum.admissao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.method.HandlerMethod;
+
+public class ControleDeAdmissaoTest {
+
+	private final ControleDeAdmissao controle = new ControleDeAdmissao();
+
+	// com limite 4, os tetos são ALTA 4, MEDIA 3 e BAIXA 2
+	@Before
+	public void limiteQuatro() {
+		ReflectionTestUtils.setField(controle, "ativo", true);
+		ReflectionTestUtils.setField(controle, "limite", new LimiteAdaptativo(4, 1, 100, 1_000_000));
+	}
+
+	@Test
+	public void recusaCom503ERetryAfterAcimaDoTetoDaPrioridade() throws Exception {
+		assertTrue(entra("exporta", "GET").admitida);
+		assertTrue(entra("exporta", "GET").admitida);
+
+		Requisicao recusada = entra("exporta", "GET");
+		assertFalse(recusada.admitida);
+		assertEquals(503, recusada.response.getStatus());
+		assertEquals("1", recusada.response.getHeader("Retry-After"));
+		assertEquals(Long.valueOf(1), controle.getRecusadas().get("BAIXA"));
+	}
+
+	@Test
+	public void prioridadeBaixaNaoTiraOLugarDasMaisAltas() throws Exception {
+		entra("exporta", "GET");
+		entra("exporta", "GET");
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(entra("busca", "GET").admitida);
+		}
+		assertFalse(entra("busca", "GET").admitida);
+
+		// a ALTA conta só as suas: o teto 4 inteiro continua livre
+		for (int i = 0; i < 4; i++) {
+			assertTrue(entra("pagina", "GET").admitida);
+		}
+		assertFalse(entra("pagina", "GET").admitida);
+	}
+
+	@Test
+	public void maisAltasEmAndamentoRecusamAsMaisBaixas() throws Exception {
+		entra("pagina", "GET");
+		entra("pagina", "GET");
+
+		Requisicao recusada = entra("exporta", "GET");
+		assertFalse(recusada.admitida);
+		assertEquals(503, recusada.response.getStatus());
+		assertEquals("1", recusada.response.getHeader("Retry-After"));
+		assertTrue(entra("busca", "GET").admitida);
+	}
+
+	@Test
+	public void semAnotacaoGetEhAltaEPostEhBaixa() throws Exception {
+		entra("semPrioridade", "POST");
+		entra("semPrioridade", "POST");
+		assertFalse(entra("semPrioridade", "POST").admitida);
+
+		assertTrue(entra("semPrioridade", "GET").admitida);
+		assertTrue(entra("semPrioridade", "GET").admitida);
+		assertEquals(Long.valueOf(2), controle.getAdmitidas().get("ALTA"));
+	}
+
+	@Test
+	public void requisicaoTerminadaLiberaALugar() throws Exception {
+		Requisicao primeira = entra("exporta", "GET");
+		entra("exporta", "GET");
+		assertFalse(entra("exporta", "GET").admitida);
+
+		controle.afterCompletion(primeira.request, primeira.response, primeira.handler, null);
+		assertNull(primeira.request.getAttribute(ControleDeAdmissao.class.getName() + ".admitida"));
+		assertEquals(1, controle.getEmAndamento());
+		assertTrue(entra("exporta", "GET").admitida);
+	}
+
+	@Test
+	public void desativadoNaoRecusaNada() throws Exception {
+		ReflectionTestUtils.setField(controle, "ativo", false);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(entra("exporta", "GET").admitida);
+		}
+		assertEquals(10, controle.getEmAndamento());
+	}
+
+	private Requisicao entra(String metodo, String verbo) throws Exception {
+		Requisicao requisicao = new Requisicao(new MockHttpServletRequest(verbo, "/"), new MockHttpServletResponse(),
+				new HandlerMethod(new Paginas(), metodo));
+		requisicao.admitida = controle.preHandle(requisicao.request, requisicao.response, requisicao.handler);
+		return requisicao;
+	}
+
+	private static class Requisicao {
+		final MockHttpServletRequest request;
+		final MockHttpServletResponse response;
+		final HandlerMethod handler;
+		boolean admitida;
+
+		Requisicao(MockHttpServletRequest request, MockHttpServletResponse response, HandlerMethod handler) {
+			this.request = request;
+			this.response = response;
+			this.handler = handler;
+		}
+	}
+
+	public static class Paginas {
+
+		public void semPrioridade() {
+		}
+
+		@ComPrioridade(Prioridade.ALTA)
+		public void pagina() {
+		}
+
+		@ComPrioridade(Prioridade.MEDIA)
+		public void busca() {
+		}
+
+		@ComPrioridade(Prioridade.BAIXA)
+		public void exporta() {
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package br.com.caelum.admissao;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LimiteAdaptativoTest {
+
+	// 1 ms por SQL, em ns
+	private static final long ALVO = 1_000_000;
+
+	@Test
+	public void latenciaAcimaDoAlvoReduzOLimite() {
+		LimiteAdaptativo limite = new LimiteAdaptativo(20, 4, 100, ALVO);
+		limite.registra(2 * ALVO, 20);
+		assertEquals(18, limite.getLimite());
+		limite.registra(2 * ALVO, 20);
+		assertEquals(16, limite.getLimite());
+	}
+
+	@Test
+	public void latenciaAbaixoDoAlvoAumentaUmPorAmostra() {
+		LimiteAdaptativo limite = new LimiteAdaptativo(20, 4, 100, ALVO);
+		limite.registra(ALVO / 2, 20);
+		assertEquals(21, limite.getLimite());
+		limite.registra(ALVO / 2, 20);
+		assertEquals(22, limite.getLimite());
+	}
+
+	@Test
+	public void naoPassaDoMinimo() {
+		LimiteAdaptativo limite = new LimiteAdaptativo(5, 4, 100, ALVO);
+		for (int i = 0; i < 10; i++) {
+			limite.registra(2 * ALVO, 5);
+		}
+		assertEquals(4, limite.getLimite());
+	}
+
+	@Test
+	public void naoPassaDoMaximo() {
+		LimiteAdaptativo limite = new LimiteAdaptativo(99, 4, 100, ALVO);
+		for (int i = 0; i < 10; i++) {
+			limite.registra(ALVO / 2, 100);
+		}
+		assertEquals(100, limite.getLimite());
+	}
+
+	@Test
+	public void limiteInicialForaDaFaixaEhAjustado() {
+		assertEquals(4, new LimiteAdaptativo(1, 4, 100, ALVO).getLimite());
+		assertEquals(100, new LimiteAdaptativo(500, 4, 100, ALVO).getLimite());
+	}
+
+	@Test
+	public void soAumentaComPeloMenosMetadeDoLimiteEmUso() {
+		LimiteAdaptativo limite = new LimiteAdaptativo(20, 4, 100, ALVO);
+		limite.registra(ALVO / 2, 9);
+		assertEquals(20, limite.getLimite());
+		limite.registra(ALVO / 2, 10);
+		assertEquals(21, limite.getLimite());
+	}
+
+	@Test
+	public void latenciaEhMediaMovelDasAmostras() {
+		LimiteAdaptativo limite = new LimiteAdaptativo(20, 4, 100, ALVO);
+		limite.registra(2 * ALVO, 20);
+		// uma amostra rápida não traz a média para baixo do alvo de uma vez
+		limite.registra(0, 20);
+		assertEquals(2.0 * 9 / 11, limite.getLatencia(), 1e-9);
+		assertEquals(16, limite.getLimite());
+	}
+
+}
@@ -0,0 +1,245 @@
+package br.com.caelum.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import br.com.caelum.dao.ResultadoDaGravacao.Situacao;
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.Loja;
+import br.com.caelum.model.Produto;
+
+public class GravadorDeProdutosTest {
+
+	private GravadorDeProdutos gravador;
+
+	// o produto como está "no banco"
+	private Produto noBanco;
+	private int gravacoesNoBanco;
+	private boolean semprePerde;
+
+	@Before
+	public void prepara() {
+		noBanco = produto(1, 1, "Spring MVC", 59.0, 1, 1, 2);
+
+		gravador = new GravadorDeProdutos();
+		ReflectionTestUtils.setField(gravador, "produtoDao", new ProdutoDao() {
+			@Override
+			public Produto insere(Produto produto) {
+				gravacoesNoBanco++;
+				if (semprePerde || noBanco == null || !produto.getVersao().equals(noBanco.getVersao()))
+					throw new OptimisticLockException();
+				noBanco = copia(produto);
+				noBanco.setVersao(produto.getVersao() + 1);
+				return copia(noBanco);
+			}
+		});
+		ReflectionTestUtils.setField(gravador, "em", entityManager());
+		ReflectionTestUtils.setField(gravador, "transactionManager", new SemBanco());
+	}
+
+	@Test
+	public void gravaDiretoQuandoNinguemAlterouAntes() {
+		Produto meu = copia(noBanco);
+		meu.setNome("Spring MVC 5");
+
+		ResultadoDaGravacao resultado = gravador.grava(meu);
+
+		assertEquals(Situacao.GRAVADO, resultado.getSituacao());
+		assertEquals("Spring MVC 5", noBanco.getNome());
+		assertEquals(1, gravacoesNoBanco);
+	}
+
+	@Test
+	public void mesclaCamposAlteradosPorLadosDiferentes() {
+		gravador.registraVersao(noBanco);
+		Produto meu = copia(noBanco);
+		meu.setNome("Spring MVC 5");
+
+		outroUsuarioGrava(outro -> {
+			outro.setPreco(49.0);
+			outro.setCategorias(new ArrayList<>(Arrays.asList(categoria(2))));
+		});
+
+		ResultadoDaGravacao resultado = gravador.grava(meu);
+
+		assertEquals(Situacao.MESCLADO, resultado.getSituacao());
+		assertEquals("Spring MVC 5", noBanco.getNome());
+		assertEquals(49.0, noBanco.getPreco(), 0);
+		assertEquals(1, noBanco.getCategorias().size());
+		assertEquals(Integer.valueOf(3), noBanco.getVersao());
+		assertEquals(1, gravador.getMesclas());
+	}
+
+	@Test
+	public void campoAlteradoPelosDoisLadosEhConflito() {
+		gravador.registraVersao(noBanco);
+		Produto meu = copia(noBanco);
+		meu.setNome("Spring MVC 5");
+		meu.setPreco(39.0);
+
+		outroUsuarioGrava(outro -> outro.setNome("Spring MVC na pr\u00e1tica"));
+
+		ResultadoDaGravacao resultado = gravador.grava(meu);
+
+		assertEquals(Situacao.CONFLITO, resultado.getSituacao());
+		assertEquals(Collections.singletonList("nome"), resultado.getCamposEmConflito());
+		assertEquals("Spring MVC na pr\u00e1tica", resultado.getAtual().getNome());
+		assertEquals(59.0, noBanco.getPreco(), 0);
+		assertEquals(1, gravacoesNoBanco);
+	}
+
+	@Test
+	public void alteracaoIgualDosDoisLadosNaoEhConflito() {
+		gravador.registraVersao(noBanco);
+		Produto meu = copia(noBanco);
+		meu.setNome("Spring MVC 5");
+
+		outroUsuarioGrava(outro -> outro.setNome("Spring MVC 5"));
+
+		assertEquals(Situacao.MESCLADO, gravador.grava(meu).getSituacao());
+	}
+
+	@Test
+	public void semVersaoBaseTodaDiferencaEhConflito() {
+		Produto meu = copia(noBanco);
+		meu.setNome("Spring MVC 5");
+
+		outroUsuarioGrava(outro -> outro.setPreco(49.0));
+
+		ResultadoDaGravacao resultado = gravador.grava(meu);
+
+		assertEquals(Situacao.CONFLITO, resultado.getSituacao());
+		assertEquals(Arrays.asList("nome", "preco"), resultado.getCamposEmConflito());
+	}
+
+	@Test
+	public void desisteDepoisDoMaximoDeTentativas() {
+		gravador.registraVersao(noBanco);
+		Produto meu = copia(noBanco);
+		meu.setNome("Spring MVC 5");
+
+		outroUsuarioGrava(outro -> outro.setPreco(49.0));
+		semprePerde = true;
+
+		ResultadoDaGravacao resultado = gravador.grava(meu);
+
+		assertEquals(Situacao.CONFLITO, resultado.getSituacao());
+		assertTrue(resultado.getCamposEmConflito().isEmpty());
+		assertEquals(GravadorDeProdutos.MAXIMO_DE_TENTATIVAS, gravacoesNoBanco);
+		assertEquals(GravadorDeProdutos.MAXIMO_DE_TENTATIVAS - 1, gravador.getRetentativas());
+	}
+
+	@Test
+	public void produtoApagadoEhConflitoNoId() {
+		gravador.registraVersao(noBanco);
+		Produto meu = copia(noBanco);
+		meu.setNome("Spring MVC 5");
+		meu.setVersao(0);
+		noBanco = null;
+
+		ResultadoDaGravacao resultado = gravador.grava(meu);
+
+		assertEquals(Collections.singletonList("id"), resultado.getCamposEmConflito());
+	}
+
+	private void outroUsuarioGrava(Consumer<Produto> alteracao) {
+		alteracao.accept(noBanco);
+		noBanco.setVersao(noBanco.getVersao() + 1);
+	}
+
+	private EntityManager entityManager() {
+		return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { EntityManager.class }, (proxy, metodo, argumentos) -> {
+					if (metodo.getName().equals("flush"))
+						return null;
+					if (metodo.getName().equals("find"))
+						return noBanco == null ? null : copia(noBanco);
+					throw new UnsupportedOperationException(metodo.getName());
+				});
+	}
+
+	private static Produto produto(int id, int versao, String nome, double preco, int lojaId,
+			Integer... categoriaIds) {
+		Produto produto = new Produto();
+		produto.setId(id);
+		produto.setVersao(versao);
+		produto.setNome(nome);
+		produto.setDescricao("Descri\u00e7\u00e3o de " + nome);
+		produto.setLinkDaFoto("http://fotos/" + id + ".png");
+		produto.setPreco(preco);
+		Loja loja = new Loja();
+		// o setId da Loja é só para o SpringMVC (deprecated)
+		ReflectionTestUtils.setField(loja, "id", lojaId);
+		produto.setLoja(loja);
+		for (Integer categoriaId : categoriaIds) {
+			produto.adicionarCategorias(categoria(categoriaId));
+		}
+		return produto;
+	}
+
+	private static Categoria categoria(int id) {
+		Categoria categoria = new Categoria();
+		categoria.setId(id);
+		return categoria;
+	}
+
+	private static Produto copia(Produto original) {
+		Produto copia = produto(original.getId(), original.getVersao(), original.getNome(), original.getPreco(),
+				original.getLoja().getId());
+		copia.setDescricao(original.getDescricao());
+		copia.setLinkDaFoto(original.getLinkDaFoto());
+		copia.setCategorias(new ArrayList<>(original.getCategorias()));
+		return copia;
+	}
+
+	/*
+	 * Cada tentativa do gravador abre a sua transação; aqui elas não fazem nada.
+	 */
+	private static class SemBanco extends JpaTransactionManager {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected Object doGetTransaction() {
+			return new Object();
+		}
+
+		@Override
+		protected boolean isExistingTransaction(Object transaction) {
+			return false;
+		}
+
+		@Override
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+		}
+
+		@Override
+		protected void doCommit(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doRollback(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doCleanupAfterCompletion(Object transaction) {
+		}
+	}
+
+}
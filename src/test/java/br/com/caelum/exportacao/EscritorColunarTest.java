@@ -0,0 +1,97 @@
+package br.com.caelum.exportacao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.com.caelum.exportacao.LeitorDeCatalogo.Linha;
+
+public class EscritorColunarTest {
+
+	@Test
+	public void leOQueFoiEscrito() throws IOException {
+		ByteArrayOutputStream arquivo = new ByteArrayOutputStream();
+		EscritorColunar escritor = new EscritorColunar(arquivo, "2019-06-01T10:00:00.000|42");
+		escritor.adiciona(1, 3, "Spring MVC", "Descri\u00e7\u00e3o com acentos: \u00e7\u00e3o", "http://fotos/1.png", 59.9, 1,
+				"Casa do C\u00f3digo");
+		escritor.adicionaCategoria(1, "Java");
+		escritor.adicionaCategoria(2, "Web");
+		escritor.adiciona(2, 0, "Sem loja", null, null, 20.0, null, null);
+		escritor.adiciona(3, 1, "Spring Boot", "x", "y", 49.0, 1, "Casa do C\u00f3digo");
+		escritor.adicionaCategoria(2, "Web");
+
+		assertEquals(3, escritor.fecha());
+
+		LeitorDeCatalogo leitor = new LeitorDeCatalogo(new ByteArrayInputStream(arquivo.toByteArray()));
+		List<Linha> linhas = new ArrayList<>();
+		assertEquals(3, leitor.le(linhas::add));
+
+		assertEquals("2019-06-01T10:00:00.000|42", leitor.getMarca());
+
+		Linha primeira = linhas.get(0);
+		assertEquals(1, primeira.getId());
+		assertEquals(3, primeira.getVersao());
+		assertEquals("Spring MVC", primeira.getNome());
+		assertEquals("Descri\u00e7\u00e3o com acentos: \u00e7\u00e3o", primeira.getDescricao());
+		assertEquals("http://fotos/1.png", primeira.getLinkDaFoto());
+		assertEquals(59.9, primeira.getPreco(), 0);
+		assertEquals(Integer.valueOf(1), primeira.getLojaId());
+		assertEquals("Casa do C\u00f3digo", primeira.getLoja());
+		assertEquals(Arrays.asList(1, 2), primeira.getCategoriaIds());
+		assertEquals(Arrays.asList("Java", "Web"), primeira.getCategorias());
+
+		Linha semLoja = linhas.get(1);
+		assertNull(semLoja.getLojaId());
+		assertNull(semLoja.getLoja());
+		assertNull(semLoja.getDescricao());
+		assertEquals(Collections.emptyList(), semLoja.getCategorias());
+
+		assertEquals("Casa do C\u00f3digo", linhas.get(2).getLoja());
+		assertEquals(Arrays.asList("Web"), linhas.get(2).getCategorias());
+	}
+
+	/*
+	 * Mais de um grupo: os dicionários continuam valendo nos grupos seguintes,
+	 * que só trazem as lojas e categorias novas.
+	 */
+	@Test
+	public void dicionariosAtravessamOsGrupos() throws IOException {
+		int total = EscritorColunar.LINHAS_POR_GRUPO * 2 + 10;
+		ByteArrayOutputStream arquivo = new ByteArrayOutputStream();
+		EscritorColunar escritor = new EscritorColunar(arquivo, "marca");
+		for (int id = 1; id <= total; id++) {
+			escritor.adiciona(id, 0, "Produto " + id, "", "", id, id % 3, "Loja " + id % 3);
+			escritor.adicionaCategoria(id % 5, "Categoria " + id % 5);
+			if (id == total)
+				escritor.adicionaCategoria(99, "S\u00f3 no \u00faltimo grupo");
+		}
+		assertEquals(total, escritor.fecha());
+
+		List<Linha> linhas = new ArrayList<>();
+		new LeitorDeCatalogo(new ByteArrayInputStream(arquivo.toByteArray())).le(linhas::add);
+
+		assertEquals(total, linhas.size());
+		for (Linha linha : linhas) {
+			assertEquals("Produto " + linha.getId(), linha.getNome());
+			assertEquals(linha.getId(), linha.getPreco(), 0);
+			assertEquals("Loja " + linha.getId() % 3, linha.getLoja());
+			assertEquals("Categoria " + linha.getId() % 5, linha.getCategorias().get(0));
+		}
+		assertEquals(Arrays.asList(total % 5, 99), linhas.get(total - 1).getCategoriaIds());
+	}
+
+	@Test(expected = IOException.class)
+	public void recusaOutroArquivo() throws IOException {
+		new LeitorDeCatalogo(new ByteArrayInputStream("PK\u0003\u0004 n\u00e3o \u00e9 cat\u00e1logo".getBytes("UTF-8")));
+	}
+
+}
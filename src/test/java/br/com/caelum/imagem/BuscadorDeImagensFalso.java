@@ -0,0 +1,56 @@
+package br.com.caelum.imagem;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buscador sem rede para os testes: desenha uma imagem na hora e anota cada
+ * URL pedida. URLs terminadas em "/erro" falham como uma foto fora do ar.
+ */
+class BuscadorDeImagensFalso implements BuscadorDeImagens {
+
+	private final List<String> buscadas = Collections.synchronizedList(new ArrayList<>());
+	private volatile CountDownLatch liberacao;
+
+	@Override
+	public BufferedImage busca(String url) throws IOException {
+		buscadas.add(url);
+		if (liberacao != null) {
+			try {
+				liberacao.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (url.endsWith("/erro"))
+			throw new IOException("Foto fora do ar: " + url);
+
+		BufferedImage imagem = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		Graphics2D grafico = imagem.createGraphics();
+		grafico.setColor(new Color(url.hashCode()));
+		grafico.fillRect(0, 0, 400, 300);
+		grafico.dispose();
+		return imagem;
+	}
+
+	// as próximas buscas esperam até liberar()
+	void segura() {
+		liberacao = new CountDownLatch(1);
+	}
+
+	void libera() {
+		liberacao.countDown();
+	}
+
+	List<String> getBuscadas() {
+		return buscadas;
+	}
+
+}
@@ -0,0 +1,78 @@
+package br.com.caelum.imagem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class BuscadorDeImagensHttpTest {
+
+	@Test
+	public void recusaOutrosProtocolos() throws IOException {
+		recusa("file:/etc/passwd");
+		recusa("jar:file:/tmp/a.jar!/foto.png");
+		recusa("ftp://fotos.exemplo.com/foto.png");
+	}
+
+	@Test
+	public void recusaAMaquinaEARedeInterna() throws IOException {
+		recusa("http://localhost/foto.png");
+		recusa("http://127.0.0.1:8080/foto.png");
+		recusa("http://0.0.0.0/foto.png");
+		recusa("http://10.1.2.3/foto.png");
+		recusa("http://172.16.0.1/foto.png");
+		recusa("http://192.168.0.10/foto.png");
+		recusa("http://169.254.169.254/latest/meta-data/");
+		recusa("http://100.64.0.1/foto.png");
+		recusa("http://[::1]/foto.png");
+		recusa("http://[fd00::1]/foto.png");
+		recusa("http://[fe80::1]/foto.png");
+	}
+
+	@Test
+	public void aceitaEnderecosPublicos() throws IOException {
+		BuscadorDeImagensHttp.confere(new URL("https://8.8.8.8/foto.png"));
+		BuscadorDeImagensHttp.confere(new URL("http://[2001:4860:4860::8888]/foto.png"));
+	}
+
+	@Test
+	public void leImagemDentroDosLimites() throws IOException {
+		BufferedImage imagem = BuscadorDeImagensHttp.le(new ByteArrayInputStream(png(300, 200)), "teste");
+
+		assertEquals(300, imagem.getWidth());
+		assertEquals(200, imagem.getHeight());
+	}
+
+	@Test(expected = IOException.class)
+	public void recusaDimensoesGrandesDemaisAntesDeDecodificar() throws IOException {
+		BuscadorDeImagensHttp.le(new ByteArrayInputStream(png(BuscadorDeImagensHttp.LADO_MAXIMO + 1, 1)), "teste");
+	}
+
+	@Test(expected = IOException.class)
+	public void recusaOQueNaoEhImagem() throws IOException {
+		BuscadorDeImagensHttp.le(new ByteArrayInputStream("<html></html>".getBytes("UTF-8")), "teste");
+	}
+
+	private static void recusa(String url) throws IOException {
+		try {
+			BuscadorDeImagensHttp.confere(new URL(url));
+			fail("deveria recusar " + url);
+		} catch (IOException esperada) {
+		}
+	}
+
+	private static byte[] png(int largura, int altura) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(largura, altura, BufferedImage.TYPE_BYTE_BINARY), "png", bytes);
+		return bytes.toByteArray();
+	}
+
+}
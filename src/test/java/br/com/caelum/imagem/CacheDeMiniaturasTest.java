@@ -0,0 +1,154 @@
+package br.com.caelum.imagem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CacheDeMiniaturasTest {
+
+	private static final String FOTO = "https://fotos.exemplo.com/spring-mvc.png";
+	private static final String OUTRA_FOTO = "https://fotos.exemplo.com/spring-boot.png";
+
+	@Rule
+	public TemporaryFolder pasta = new TemporaryFolder();
+
+	private final BuscadorDeImagensFalso buscador = new BuscadorDeImagensFalso();
+
+	@Test
+	public void reduzParaOTamanhoPedido() throws IOException {
+		Path arquivo = cache(64).miniatura(FOTO, Tamanho.CARTAO);
+
+		BufferedImage miniatura = ImageIO.read(arquivo.toFile());
+		assertEquals(Tamanho.CARTAO.getLargura(), miniatura.getWidth());
+		assertEquals(Tamanho.CARTAO.getAltura(), miniatura.getHeight());
+	}
+
+	@Test
+	public void buscaCadaFotoUmaVezPorTamanho() throws IOException {
+		CacheDeMiniaturas cache = cache(64);
+
+		Path primeira = cache.miniatura(FOTO, Tamanho.CARTAO);
+		Path segunda = cache.miniatura(FOTO, Tamanho.CARTAO);
+		cache.miniatura(FOTO, Tamanho.DETALHE);
+
+		assertEquals(primeira, segunda);
+		assertEquals(Arrays.asList(FOTO, FOTO), buscador.getBuscadas());
+		assertEquals(2, cache.getQuantidade());
+	}
+
+	@Test
+	public void trocarOLinkGeraOutraMiniatura() throws IOException {
+		CacheDeMiniaturas cache = cache(64);
+
+		Path antiga = cache.miniatura(FOTO, Tamanho.CARTAO);
+		Path nova = cache.miniatura(OUTRA_FOTO, Tamanho.CARTAO);
+
+		assertNotEquals(antiga, nova);
+		assertNotEquals(cache.chave(FOTO, Tamanho.CARTAO), cache.chave(OUTRA_FOTO, Tamanho.CARTAO));
+		assertEquals(Arrays.asList(FOTO, OUTRA_FOTO), buscador.getBuscadas());
+	}
+
+	@Test
+	public void cacheCheioRemoveOMenosUsado() throws IOException {
+		// tamanho máximo zero: só cabe a última miniatura gerada
+		CacheDeMiniaturas cache = cache(0);
+
+		Path antiga = cache.miniatura(FOTO, Tamanho.CARTAO);
+		Path nova = cache.miniatura(OUTRA_FOTO, Tamanho.CARTAO);
+
+		assertFalse(Files.exists(antiga));
+		assertTrue(Files.exists(nova));
+		assertEquals(1, cache.getQuantidade());
+		assertEquals(Files.size(nova), cache.getTamanhoAtual());
+
+		cache.miniatura(FOTO, Tamanho.CARTAO);
+		assertEquals(Arrays.asList(FOTO, OUTRA_FOTO, FOTO), buscador.getBuscadas());
+	}
+
+	@Test
+	public void reaproveitaOQueJaEstavaEmDisco() throws IOException {
+		cache(64).miniatura(FOTO, Tamanho.CARTAO);
+
+		CacheDeMiniaturas depoisDeReiniciar = cache(64);
+		assertEquals(1, depoisDeReiniciar.getQuantidade());
+		depoisDeReiniciar.miniatura(FOTO, Tamanho.CARTAO);
+
+		assertEquals(Arrays.asList(FOTO), buscador.getBuscadas());
+	}
+
+	@Test
+	public void pedidosSimultaneosBuscamUmaVezSo() throws Exception {
+		CacheDeMiniaturas cache = cache(64);
+		buscador.segura();
+
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			Future<?>[] pedidos = new Future<?>[4];
+			for (int i = 0; i < pedidos.length; i++) {
+				pedidos[i] = threads.submit(() -> cache.miniatura(FOTO, Tamanho.CARTAO));
+			}
+			while (buscador.getBuscadas().isEmpty()) {
+				Thread.sleep(5);
+			}
+			Thread.sleep(50);
+			buscador.libera();
+
+			for (Future<?> pedido : pedidos) {
+				pedido.get();
+			}
+		} finally {
+			threads.shutdown();
+		}
+
+		assertEquals(1, buscador.getBuscadas().size());
+	}
+
+	@Test
+	public void falhaNaBuscaNaoFicaNoCache() throws IOException {
+		CacheDeMiniaturas cache = cache(64);
+		String foraDoAr = "https://fotos.exemplo.com/erro";
+
+		for (int tentativa = 0; tentativa < 2; tentativa++) {
+			try {
+				cache.miniatura(foraDoAr, Tamanho.CARTAO);
+				fail();
+			} catch (IOException esperada) {
+			}
+		}
+
+		assertEquals(2, buscador.getBuscadas().size());
+		assertEquals(0, cache.getQuantidade());
+	}
+
+	private CacheDeMiniaturas cache(long tamanhoMaximoEmMb) throws IOException {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("miniaturas.diretorio", pasta.getRoot().getPath())
+				.withProperty("miniaturas.tamanhoMaximo", String.valueOf(tamanhoMaximoEmMb));
+
+		CacheDeMiniaturas cache = new CacheDeMiniaturas();
+		ReflectionTestUtils.setField(cache, "buscador", buscador);
+		ReflectionTestUtils.setField(cache, "environment", environment);
+		cache.init();
+		return cache;
+	}
+
+}
@@ -0,0 +1,108 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ArvoreDeSugestoesTest {
+
+	private final ArvoreDeSugestoes arvore = new ArvoreDeSugestoes(3);
+
+	@Test
+	public void sugereOsMaisPopularesDoPrefixo() {
+		arvore.insere(1, "Spring MVC", 10);
+		arvore.insere(2, "Spring Boot", 30);
+		arvore.insere(3, "Spring Data", 20);
+		arvore.insere(4, "Spring Security", 5);
+		arvore.insere(5, "Java 8", 100);
+
+		assertEquals(Arrays.asList(2, 3, 1), ids(arvore.busca("spr", 10)));
+		assertEquals(Arrays.asList(2, 3), ids(arvore.busca("spr", 2)));
+	}
+
+	@Test
+	public void ignoraAcentosMaiusculasEPontuacao() {
+		arvore.insere(1, "Programa\u00e7\u00e3o Funcional", 1);
+
+		assertEquals(Arrays.asList(1), ids(arvore.busca("PROGRAMACAO", 5)));
+		assertEquals(Arrays.asList(1), ids(arvore.busca("programa\u00e7\u00e3o-func", 5)));
+	}
+
+	@Test
+	public void sugerePelasPalavrasDoMeioDoNome() {
+		arvore.insere(1, "Spring MVC", 1);
+
+		assertEquals(Arrays.asList(1), ids(arvore.busca("mvc", 5)));
+	}
+
+	@Test
+	public void removeEDevolveOProximoDaSubarvore() {
+		arvore.insere(1, "Spring MVC", 10);
+		arvore.insere(2, "Spring Boot", 30);
+		arvore.insere(3, "Spring Data", 20);
+		arvore.insere(4, "Spring Security", 5);
+
+		arvore.remove(2);
+
+		assertEquals(Arrays.asList(3, 1, 4), ids(arvore.busca("spring", 10)));
+		assertTrue(arvore.busca("boot", 10).isEmpty());
+		assertEquals(3, arvore.getQuantidade());
+	}
+
+	@Test
+	public void reinserirTrocaONome() {
+		arvore.insere(1, "Spring MVC", 10);
+		arvore.insere(1, "Java EE", 10);
+
+		assertTrue(arvore.busca("spring", 10).isEmpty());
+		assertEquals(Arrays.asList(1), ids(arvore.busca("java", 10)));
+		assertEquals(1, arvore.getQuantidade());
+	}
+
+	@Test
+	public void popularidadeReordena() {
+		arvore.insere(1, "Spring MVC", 10);
+		arvore.insere(2, "Spring Boot", 30);
+		arvore.insere(3, "Spring Data", 20);
+		arvore.insere(4, "Spring Security", 5);
+
+		arvore.popularidade(4, 50);
+		assertEquals(Arrays.asList(4, 2, 3), ids(arvore.busca("s", 10)));
+
+		arvore.popularidade(4, 1);
+		arvore.popularidade(2, 0);
+		assertEquals(Arrays.asList(3, 1, 4), ids(arvore.busca("s", 10)));
+		assertEquals(0, arvore.popularidade(2));
+	}
+
+	@Test
+	public void prefixoSemProdutosOuVazio() {
+		arvore.insere(1, "Spring MVC", 1);
+
+		assertTrue(arvore.busca("x", 5).isEmpty());
+		assertTrue(arvore.busca("  ", 5).isEmpty());
+		assertTrue(arvore.busca("spring", 0).isEmpty());
+	}
+
+	@Test
+	public void nomeSemLetrasNaoEntra() {
+		arvore.insere(1, "---", 1);
+		arvore.insere(2, null, 1);
+
+		assertEquals(0, arvore.getQuantidade());
+	}
+
+	private static List<Integer> ids(List<ArvoreDeSugestoes.Item> itens) {
+		List<Integer> ids = new ArrayList<>();
+		for (ArvoreDeSugestoes.Item item : itens) {
+			ids.add(item.id);
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,138 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.EstadoDoProduto;
+import br.com.caelum.model.Loja;
+import br.com.caelum.model.Produto;
+
+/*
+ * Só com lojas e categorias que a montagem já conhece: os nomes das novas
+ * viriam do banco.
+ */
+public class CatalogoDasLojasTest {
+
+	private final CatalogoDasLojas catalogo = new CatalogoDasLojas();
+
+	@Test
+	public void anteriorVelhoDoCacheNaoDeixaOProdutoNaLojaAntiga() {
+		monta(produto(1, 0, 2, 1), produto(2, 0, 1, 1));
+		// o cache de segundo nível ainda tinha o produto na loja 1
+		grava(estado(1, 0, 1, 1), estado(1, 0, 3, 1));
+
+		assertEquals(Arrays.asList(2), ids(1));
+		assertEquals(Arrays.asList(), ids(2));
+		assertEquals(Arrays.asList(1), ids(3));
+	}
+
+	@Test
+	public void mesmaGravacaoDuasVezesNaoDuplicaOCartao() {
+		monta(produto(1, 0, 1, 1), produto(2, 0, 1, 1));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 1, 2));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 1, 2));
+
+		assertEquals(Arrays.asList(1, 2), ids(1));
+		assertEquals(Arrays.asList("Web"), catalogo.daLoja(1).getProdutos().get(0).getCategorias());
+	}
+
+	@Test
+	public void eventoForaDeOrdemNaoDesfazOMaisNovo() {
+		monta(produto(1, 0, 1, 1));
+		// a gravação da versão 1 termina antes, mas o evento da 0 chega por último
+		grava(estado(1, 1, 2, 1), estado(1, 1, 3, 1));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 2, 1));
+
+		assertEquals(Arrays.asList(), ids(1));
+		assertEquals(Arrays.asList(), ids(2));
+		assertEquals(Arrays.asList(1), ids(3));
+	}
+
+	@Test
+	public void produtoSemLojaEntraESaiDasVitrines() {
+		monta(produto(1, 0, null, 1));
+		assertEquals(Arrays.asList(), ids(1));
+
+		grava(estado(1, 0, null, 1), estado(1, 0, 1, 1));
+		assertEquals(Arrays.asList(1), ids(1));
+
+		grava(estado(1, 1, 1, 1), estado(1, 1, null, 1));
+		assertEquals(Arrays.asList(), ids(1));
+	}
+
+	@Test
+	public void produtoNovoEntraEmOrdemDeId() {
+		monta(produto(1, 0, 1, 1), produto(3, 0, 1, 1));
+		grava(null, estado(2, 0, 1, 2));
+
+		assertEquals(Arrays.asList(1, 2, 3), ids(1));
+		assertEquals(Arrays.asList(2), ids(catalogo.daLoja(1).daCategoria(2)));
+	}
+
+	private List<Integer> ids(Integer lojaId) {
+		return ids(catalogo.daLoja(lojaId).getProdutos());
+	}
+
+	private static List<Integer> ids(List<Cartao> cartoes) {
+		List<Integer> ids = new ArrayList<>();
+		for (Cartao cartao : cartoes) {
+			ids.add(cartao.getId());
+		}
+		return ids;
+	}
+
+	// produtos (id, versão, loja, categorias...), nas lojas 1 a 3 e categorias 1 (Java) e 2 (Web)
+	private void monta(Object[]... produtos) {
+		List<Object[]> linhas = new ArrayList<>();
+		List<Object[]> categorias = new ArrayList<>();
+		for (Object[] produto : produtos) {
+			linhas.add(new Object[] { produto[0], produto[1], "Produto " + produto[0], "http://fotos/1.png", 30.0,
+					produto[2] });
+			for (int i = 3; i < produto.length; i++) {
+				categorias.add(new Object[] { produto[0], produto[i] });
+			}
+		}
+		catalogo.monta(
+				Arrays.asList(new Object[] { 1, "Loja 1" }, new Object[] { 2, "Loja 2" }, new Object[] { 3, "Loja 3" }),
+				Arrays.asList(new Object[] { 1, "Java" }, new Object[] { 2, "Web" }), linhas, categorias);
+		ReflectionTestUtils.setField(catalogo, "montado", true);
+	}
+
+	private static Object[] produto(Object... colunas) {
+		return colunas;
+	}
+
+	private void grava(EstadoDoProduto anterior, EstadoDoProduto atual) {
+		catalogo.aoGravar(new ProdutoGravado(anterior, atual));
+	}
+
+	private static EstadoDoProduto estado(int id, int versao, Integer lojaId, Integer... categoriaIds) {
+		Produto produto = new Produto();
+		produto.setId(id);
+		produto.setVersao(versao);
+		produto.setNome("Produto " + id);
+		produto.setLinkDaFoto("http://fotos/" + id + ".png");
+		produto.setPreco(30.0);
+		if (lojaId != null) {
+			Loja loja = new Loja();
+			// o setId da Loja é só para o SpringMVC (deprecated)
+			ReflectionTestUtils.setField(loja, "id", lojaId);
+			produto.setLoja(loja);
+		}
+		for (Integer categoriaId : categoriaIds) {
+			Categoria categoria = new Categoria();
+			categoria.setId(categoriaId);
+			produto.adicionarCategorias(categoria);
+		}
+		return EstadoDoProduto.de(produto);
+	}
+
+}
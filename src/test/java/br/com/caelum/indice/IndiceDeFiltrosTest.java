@@ -0,0 +1,117 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.EstadoDoProduto;
+import br.com.caelum.model.Loja;
+import br.com.caelum.model.Produto;
+
+public class IndiceDeFiltrosTest {
+
+	private final IndiceDeFiltros indice = new IndiceDeFiltros();
+
+	@Test
+	public void anteriorVelhoDoCacheNaoDeixaOProdutoNaCategoriaAntiga() {
+		monta(produto(1, 0, 1, 1, 2), produto(2, 0, 1, 2));
+		// o cache de segundo nível ainda tinha o produto só na categoria 1
+		grava(estado(1, 0, 1, 1), estado(1, 0, 1, 1));
+
+		assertEquals(Arrays.asList(1), ids("categoria:1"));
+		assertEquals(Arrays.asList(2), ids("categoria:2"));
+	}
+
+	@Test
+	public void gravacaoQueAMontagemJaLeuNaoEhAplicadaDeNovo() {
+		// duas gravações (loja 1 -> 2 -> 3) antes da montagem, que já leu a versão 2
+		monta(produto(1, 2, 3, 1));
+		// o evento da primeira chega depois
+		grava(estado(1, 0, 1, 1), estado(1, 0, 2, 1));
+
+		assertEquals(Arrays.asList(), ids("loja:2"));
+		assertEquals(Arrays.asList(1), ids("loja:3"));
+		assertEquals(Arrays.asList(1), ids("categoria:1"));
+	}
+
+	@Test
+	public void mesmaGravacaoDuasVezesNaoMudaNada() {
+		monta(produto(1, 0, 1, 1));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 2, 2));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 2, 2));
+
+		assertEquals(Arrays.asList(), ids("loja:1 OR categoria:1"));
+		assertEquals(Arrays.asList(1), ids("loja:2 AND categoria:2"));
+	}
+
+	@Test
+	public void eventoForaDeOrdemNaoDesfazOMaisNovo() {
+		monta(produto(1, 0, 1, 1));
+		// duas gravações seguidas: a da versão 1 termina antes, mas o evento da 0 chega por último
+		grava(estado(1, 1, 2, 2), estado(1, 1, 3, 3));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 2, 2));
+
+		assertEquals(Arrays.asList(1), ids("loja:3 AND categoria:3"));
+		assertEquals(Arrays.asList(), ids("loja:2 OR categoria:2"));
+	}
+
+	@Test
+	public void produtoNovoEntraNosBitmaps() {
+		monta(produto(1, 0, 1, 1));
+		grava(null, estado(2, 0, 1, 1, 2));
+
+		assertEquals(Arrays.asList(1, 2), ids("categoria:1"));
+		assertEquals(Arrays.asList(2), ids("categoria:2 AND loja:1"));
+	}
+
+	private List<Integer> ids(String expressao) {
+		return indice.filtra(expressao, 0, 10).getIds();
+	}
+
+	// produtos (id, versão, loja, categorias...)
+	private void monta(Object[]... produtos) {
+		List<Object[]> lojas = new ArrayList<>();
+		List<Object[]> categorias = new ArrayList<>();
+		for (Object[] produto : produtos) {
+			lojas.add(new Object[] { produto[0], produto[1], produto[2] });
+			for (int i = 3; i < produto.length; i++) {
+				categorias.add(new Object[] { produto[0], produto[i] });
+			}
+		}
+		indice.monta(lojas, categorias);
+		ReflectionTestUtils.setField(indice, "montado", true);
+	}
+
+	private static Object[] produto(Object... colunas) {
+		return colunas;
+	}
+
+	private void grava(EstadoDoProduto anterior, EstadoDoProduto atual) {
+		indice.aoGravar(new ProdutoGravado(anterior, atual));
+	}
+
+	private static EstadoDoProduto estado(int id, int versao, int lojaId, Integer... categoriaIds) {
+		Produto produto = new Produto();
+		produto.setId(id);
+		produto.setVersao(versao);
+		produto.setNome("Produto " + id);
+		Loja loja = new Loja();
+		// o setId da Loja é só para o SpringMVC (deprecated)
+		ReflectionTestUtils.setField(loja, "id", lojaId);
+		produto.setLoja(loja);
+		for (Integer categoriaId : categoriaIds) {
+			Categoria categoria = new Categoria();
+			categoria.setId(categoriaId);
+			produto.adicionarCategorias(categoria);
+		}
+		return EstadoDoProduto.de(produto);
+	}
+
+}
@@ -0,0 +1,121 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+public class LeitorDeExpressoesTest {
+
+	private final Map<Integer, RoaringBitmap> categorias = new HashMap<>();
+	private final Map<Integer, RoaringBitmap> lojas = new HashMap<>();
+
+	private final Expressao.Fonte fonte = new Expressao.Fonte() {
+		@Override
+		public RoaringBitmap categoria(int id) {
+			return categorias.getOrDefault(id, new RoaringBitmap());
+		}
+
+		@Override
+		public RoaringBitmap loja(int id) {
+			return lojas.getOrDefault(id, new RoaringBitmap());
+		}
+
+		@Override
+		public RoaringBitmap todos() {
+			return RoaringBitmap.bitmapOf(1, 2, 3, 4, 5, 6);
+		}
+	};
+
+	public LeitorDeExpressoesTest() {
+		categorias.put(1, RoaringBitmap.bitmapOf(1, 2, 3));
+		categorias.put(2, RoaringBitmap.bitmapOf(2, 3, 4));
+		lojas.put(1, RoaringBitmap.bitmapOf(1, 2));
+		lojas.put(2, RoaringBitmap.bitmapOf(3, 4, 5));
+	}
+
+	@Test
+	public void termoSimples() {
+		assertEquals(RoaringBitmap.bitmapOf(1, 2, 3), avalia("categoria:1"));
+		assertEquals(RoaringBitmap.bitmapOf(3, 4, 5), avalia("loja:2"));
+	}
+
+	@Test
+	public void listaDeIdsEhOu() {
+		assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4), avalia("categoria:1,2"));
+		assertEquals(avalia("categoria:1 OR categoria:2"), avalia("categoria:1,2"));
+	}
+
+	@Test
+	public void notTemPrecedenciaSobreAndQueTemSobreOr() {
+		// (categoria:1 AND (NOT loja:1)) OR loja:2
+		assertEquals(RoaringBitmap.bitmapOf(3, 4, 5), avalia("categoria:1 AND NOT loja:1 OR loja:2"));
+		// categoria:2 OR (loja:1 AND categoria:1)
+		assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4), avalia("categoria:2 | loja:1 & categoria:1"));
+	}
+
+	@Test
+	public void parentesesMudamAPrecedencia() {
+		assertEquals(RoaringBitmap.bitmapOf(3), avalia("categoria:1 AND (NOT loja:1 OR loja:3)"));
+		assertEquals(RoaringBitmap.bitmapOf(4, 5, 6), avalia("!(categoria:1)"));
+	}
+
+	@Test
+	public void simbolosEPalavrasSemDiferencaDeMaiusculas() {
+		assertEquals(avalia("categoria:1 & !loja:1"), avalia("Categoria:1 and not LOJA:1"));
+	}
+
+	@Test
+	public void naoAlteraOsBitmapsDaFonte() {
+		avalia("categoria:1 OR categoria:2 AND NOT loja:1");
+		assertEquals(RoaringBitmap.bitmapOf(1, 2, 3), categorias.get(1));
+		assertEquals(RoaringBitmap.bitmapOf(1, 2), lojas.get(1));
+	}
+
+	@Test(expected = ExpressaoInvalida.class)
+	public void parentesesSemFechar() {
+		Expressao.le("(categoria:1 OR loja:2");
+	}
+
+	@Test(expected = ExpressaoInvalida.class)
+	public void filtroDesconhecido() {
+		Expressao.le("marca:1");
+	}
+
+	@Test(expected = ExpressaoInvalida.class)
+	public void caracterInvalido() {
+		Expressao.le("categoria:1 ; drop");
+	}
+
+	@Test(expected = ExpressaoInvalida.class)
+	public void expressaoIncompleta() {
+		Expressao.le("categoria:1 AND");
+	}
+
+	@Test(expected = ExpressaoInvalida.class)
+	public void expressaoVazia() {
+		Expressao.le("   ");
+	}
+
+	@Test(expected = ExpressaoInvalida.class)
+	public void idForaDoIntervaloDeInteiros() {
+		Expressao.le("categoria:99999999999");
+	}
+
+	@Test(expected = ExpressaoInvalida.class)
+	public void termosDemais() {
+		StringBuilder texto = new StringBuilder("loja:1");
+		for (int i = 0; i < 100; i++) {
+			texto.append(" OR loja:1");
+		}
+		Expressao.le(texto.toString());
+	}
+
+	private RoaringBitmap avalia(String texto) {
+		return Expressao.le(texto).avalia(fonte);
+	}
+
+}
@@ -0,0 +1,114 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.EstadoDoProduto;
+import br.com.caelum.model.Loja;
+import br.com.caelum.model.Produto;
+
+public class PrecosTest {
+
+	private final Precos precos = new Precos();
+
+	@Test
+	public void gravacaoQueAMontagemJaLeuNaoContaDuasVezes() {
+		// a montagem leu o produto já com o preço novo; o evento chega depois
+		monta(new Object[] { 1, 1, 50.0, 1 }, new Object[] { 2, 0, 20.0, 1 });
+		grava(estado(1, 0, 30.0, 1, 1), estado(1, 0, 50.0, 1, 1));
+
+		assertEquals(2, precos.getTodos().getQuantidade());
+		assertEquals(20.0, precos.getTodos().getMinimo(), 0);
+		assertEquals(50.0, precos.getTodos().getMaximo(), 0);
+		assertEquals(35.0, precos.daLoja(1).getMedia(), 0);
+	}
+
+	@Test
+	public void anteriorVelhoDoCacheNaoTiraOQueNaoEstavaNoIndice() {
+		monta(new Object[] { 1, 0, 40.0, 1 });
+		// o cache de segundo nível ainda tinha o produto na loja 2, com outro preço
+		grava(estado(1, 0, 30.0, 2, 2), estado(1, 0, 50.0, 1, 1, 2));
+
+		assertEquals(1, precos.getTodos().getQuantidade());
+		assertEquals(50.0, precos.getTodos().getMinimo(), 0);
+		assertEquals(50.0, precos.daLoja(1).getMaximo(), 0);
+		assertNull(precos.daLoja(2));
+		assertEquals(1, precos.daCategoria(1).getQuantidade());
+		assertEquals(1, precos.daCategoria(2).getQuantidade());
+	}
+
+	@Test
+	public void mesmaGravacaoDuasVezesNaoMudaNada() {
+		monta(new Object[] { 1, 0, 40.0, 1 });
+		grava(estado(1, 0, 40.0, 1, 1), estado(1, 0, 60.0, 2, 2));
+		grava(estado(1, 0, 40.0, 1, 1), estado(1, 0, 60.0, 2, 2));
+
+		assertEquals(1, precos.getTodos().getQuantidade());
+		assertEquals(60.0, precos.getTodos().getMinimo(), 0);
+		assertNull(precos.daLoja(1));
+		assertNull(precos.daCategoria(1));
+		assertEquals(60.0, precos.daCategoria(2).getMedia(), 0);
+	}
+
+	@Test
+	public void produtoNovoEntraNosGrupos() {
+		monta(new Object[] { 1, 0, 40.0, 1 });
+		grava(null, estado(2, 0, 10.0, 2, 1));
+
+		assertEquals(2, precos.getTodos().getQuantidade());
+		assertEquals(10.0, precos.daLoja(2).getMinimo(), 0);
+		assertEquals(25.0, precos.daCategoria(1).getMedia(), 0);
+	}
+
+	@Test
+	public void eventoForaDeOrdemNaoDesfazOMaisNovo() {
+		monta(new Object[] { 1, 0, 40.0, 1 });
+		// a gravação da versão 1 termina antes, mas o evento da 0 chega por último
+		grava(estado(1, 1, 60.0, 1, 1), estado(1, 1, 70.0, 1, 1));
+		grava(estado(1, 0, 40.0, 1, 1), estado(1, 0, 60.0, 1, 1));
+
+		assertEquals(1, precos.getTodos().getQuantidade());
+		assertEquals(70.0, precos.daLoja(1).getMaximo(), 0);
+		assertEquals(70.0, precos.daCategoria(1).getMinimo(), 0);
+	}
+
+	// produtos (id, versão, preço, loja), todos na categoria 1
+	private void monta(Object[]... produtos) {
+		Object[][] categorias = new Object[produtos.length][];
+		for (int i = 0; i < produtos.length; i++) {
+			categorias[i] = new Object[] { produtos[i][0], 1 };
+		}
+		precos.monta(Arrays.asList(produtos), Arrays.asList(categorias));
+		ReflectionTestUtils.setField(precos, "montado", true);
+	}
+
+	private void grava(EstadoDoProduto anterior, EstadoDoProduto atual) {
+		precos.aoGravar(new ProdutoGravado(anterior, atual));
+	}
+
+	private static EstadoDoProduto estado(int id, int versao, double preco, int lojaId, Integer... categoriaIds) {
+		Produto produto = new Produto();
+		produto.setId(id);
+		produto.setVersao(versao);
+		produto.setNome("Produto " + id);
+		produto.setPreco(preco);
+		Loja loja = new Loja();
+		// o setId da Loja é só para o SpringMVC (deprecated)
+		ReflectionTestUtils.setField(loja, "id", lojaId);
+		produto.setLoja(loja);
+		for (Integer categoriaId : categoriaIds) {
+			Categoria categoria = new Categoria();
+			categoria.setId(categoriaId);
+			produto.adicionarCategorias(categoria);
+		}
+		return EstadoDoProduto.de(produto);
+	}
+
+}
@@ -0,0 +1,102 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.Categoria;
+import br.com.caelum.model.EstadoDoProduto;
+import br.com.caelum.model.Loja;
+import br.com.caelum.model.Produto;
+
+public class ProdutosRelacionadosTest {
+
+	private final ProdutosRelacionados relacionados = new ProdutosRelacionados();
+
+	@After
+	public void encerra() {
+		relacionados.encerra();
+	}
+
+	@Test
+	public void anteriorVelhoDoCacheNaoImpedeORecalculo() {
+		monta(produto(1, 0, 1, 1), produto(2, 0, 1, 1), produto(3, 0, 2, 2));
+		// o cache de segundo nível já tinha o produto na categoria 2
+		grava(estado(1, 0, 2, 2), estado(1, 0, 2, 2));
+
+		assertEquals(Arrays.asList(), relacionados.de(2));
+		assertEquals(Arrays.asList(1), relacionados.de(3));
+	}
+
+	@Test
+	public void eventoForaDeOrdemNaoDesfazOMaisNovo() {
+		monta(produto(1, 0, 1, 1), produto(2, 0, 1, 1), produto(3, 0, 2, 2));
+		// a gravação da versão 1 termina antes, mas o evento da 0 chega por último
+		grava(estado(1, 1, 1, 1), estado(1, 1, 2, 2));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 1, 1));
+
+		assertEquals(Arrays.asList(), relacionados.de(2));
+		assertEquals(Arrays.asList(1), relacionados.de(3));
+	}
+
+	@Test
+	public void gravacaoSemMudarCategoriasNemLojaMantemOsRelacionados() {
+		monta(produto(1, 0, 1, 1), produto(2, 0, 1, 1));
+		grava(estado(1, 0, 1, 1), estado(1, 0, 1, 1));
+
+		assertEquals(Arrays.asList(2), relacionados.de(1));
+		assertEquals(Arrays.asList(1), relacionados.de(2));
+	}
+
+	// produtos (id, versão, loja, categorias...)
+	private void monta(Object[]... produtos) {
+		List<Object[]> lojas = new ArrayList<>();
+		List<Object[]> categorias = new ArrayList<>();
+		for (Object[] produto : produtos) {
+			lojas.add(new Object[] { produto[0], produto[1], produto[2] });
+			for (int i = 3; i < produto.length; i++) {
+				categorias.add(new Object[] { produto[0], produto[i] });
+			}
+		}
+		relacionados.calcula(relacionados.carrega(lojas, categorias));
+		ReflectionTestUtils.setField(relacionados, "montado", true);
+	}
+
+	private static Object[] produto(Object... colunas) {
+		return colunas;
+	}
+
+	// os recálculos dos eventos rodam em segundo plano
+	private void grava(EstadoDoProduto anterior, EstadoDoProduto atual) {
+		relacionados.aoGravar(new ProdutoGravado(anterior, atual));
+		ForkJoinPool calculo = (ForkJoinPool) ReflectionTestUtils.getField(relacionados, "calculo");
+		calculo.awaitQuiescence(10, TimeUnit.SECONDS);
+	}
+
+	private static EstadoDoProduto estado(int id, int versao, int lojaId, Integer... categoriaIds) {
+		Produto produto = new Produto();
+		produto.setId(id);
+		produto.setVersao(versao);
+		produto.setNome("Produto " + id);
+		Loja loja = new Loja();
+		// o setId da Loja é só para o SpringMVC (deprecated)
+		ReflectionTestUtils.setField(loja, "id", lojaId);
+		produto.setLoja(loja);
+		for (Integer categoriaId : categoriaIds) {
+			Categoria categoria = new Categoria();
+			categoria.setId(categoriaId);
+			produto.adicionarCategorias(categoria);
+		}
+		return EstadoDoProduto.de(produto);
+	}
+
+}
@@ -0,0 +1,74 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.caelum.dao.ProdutoGravado;
+import br.com.caelum.model.EstadoDoProduto;
+import br.com.caelum.model.Produto;
+
+public class SugestoesTest {
+
+	private final Sugestoes sugestoes = new Sugestoes();
+
+	@Before
+	public void monta() {
+		// sem banco: as linhas da query vêm prontas e a montagem é dada por feita
+		List<Object[]> produtos = new ArrayList<>();
+		for (int id = 1; id <= Sugestoes.MAXIMO + 5; id++) {
+			produtos.add(new Object[] { id, 0, "Spring " + id, (long) id });
+		}
+		sugestoes.monta(produtos);
+		ReflectionTestUtils.setField(sugestoes, "montada", true);
+	}
+
+	@Test
+	public void quantidadeNegativaDevolveListaVazia() {
+		assertTrue(sugestoes.sugere("spring", -1).isEmpty());
+		assertTrue(sugestoes.sugere("spring", Integer.MIN_VALUE).isEmpty());
+	}
+
+	@Test
+	public void quantidadeAcimaDoMaximoFicaNoMaximo() {
+		assertEquals(Sugestoes.MAXIMO, sugestoes.sugere("spring", Integer.MAX_VALUE).size());
+		assertEquals(3, sugestoes.sugere("spring", 3).size());
+	}
+
+	@Test
+	public void anteriorVelhoComONomeNovoNaoImpedeARenomeacao() {
+		// o cache de segundo nível já tinha o nome novo, mas a árvore ainda tem "Spring 1"
+		grava(estado(1, 0, "Hibernate"), estado(1, 0, "Hibernate"));
+
+		assertEquals(1, sugestoes.sugere("hibernate", 10).size());
+		assertTrue(sugestoes.sugere("spring 1", 10).stream().noneMatch(sugestao -> sugestao.getId() == 1));
+	}
+
+	@Test
+	public void eventoForaDeOrdemNaoVoltaONomeAntigo() {
+		grava(estado(1, 1, "Spring 1"), estado(1, 1, "JSF"));
+		grava(estado(1, 0, "Spring 1"), estado(1, 0, "Hibernate"));
+
+		assertEquals(1, sugestoes.sugere("jsf", 10).size());
+		assertTrue(sugestoes.sugere("hibernate", 10).isEmpty());
+	}
+
+	private void grava(EstadoDoProduto anterior, EstadoDoProduto atual) {
+		sugestoes.aoGravar(new ProdutoGravado(anterior, atual));
+	}
+
+	private static EstadoDoProduto estado(int id, int versao, String nome) {
+		Produto produto = new Produto();
+		produto.setId(id);
+		produto.setVersao(versao);
+		produto.setNome(nome);
+		return EstadoDoProduto.de(produto);
+	}
+
+}
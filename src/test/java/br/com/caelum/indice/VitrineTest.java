@@ -0,0 +1,82 @@
+package br.com.caelum.indice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class VitrineTest {
+
+	@Test
+	public void comInsereEmOrdemDeId() {
+		Vitrine vitrine = vitrine(cartao(1, 1), cartao(3, 1));
+
+		assertEquals(Arrays.asList(1, 2, 3), ids(vitrine.com(cartao(2, 1))));
+		assertEquals(Arrays.asList(0, 1, 3), ids(vitrine.com(cartao(0, 1))));
+		assertEquals(Arrays.asList(1, 3, 4), ids(vitrine.com(cartao(4, 1))));
+		assertEquals(Arrays.asList(5), ids(vitrine().com(cartao(5, 1))));
+	}
+
+	@Test
+	public void comOMesmoIdSubstituiOCartao() {
+		Vitrine vitrine = vitrine(cartao(1, 1), cartao(2, 1), cartao(3, 1)).com(cartao(2, 2));
+
+		assertEquals(Arrays.asList(1, 2, 3), ids(vitrine));
+		assertEquals(Arrays.asList(2), vitrine.getProdutos().get(1).getCategoriaIds());
+	}
+
+	@Test
+	public void semTiraSoOProduto() {
+		Vitrine vitrine = vitrine(cartao(1, 1), cartao(2, 1), cartao(3, 1));
+
+		assertEquals(Arrays.asList(1, 3), ids(vitrine.sem(2)));
+		assertEquals(Arrays.asList(1, 2, 3), ids(vitrine.sem(4)));
+	}
+
+	@Test
+	public void comESemNaoMudamAVitrineOriginal() {
+		Vitrine vitrine = vitrine(cartao(1, 1), cartao(2, 1));
+		vitrine.com(cartao(3, 1));
+		vitrine.sem(1);
+
+		assertEquals(Arrays.asList(1, 2), ids(vitrine));
+	}
+
+	@Test
+	public void daCategoriaFiltraOsCartoes() {
+		Vitrine vitrine = vitrine(cartao(1, 1), cartao(2, 2), cartao(3, 1, 2));
+
+		assertEquals(Arrays.asList(1, 3), ids(vitrine.daCategoria(1)));
+		assertEquals(Arrays.asList(1, 2, 3), ids(vitrine.daCategoria(null)));
+	}
+
+	private static Vitrine vitrine(Cartao... cartoes) {
+		return new Vitrine(1, "Loja 1", new ArrayList<>(Arrays.asList(cartoes)));
+	}
+
+	private static Cartao cartao(int id, Integer... categoriaIds) {
+		List<String> nomes = new ArrayList<>();
+		for (Integer categoriaId : categoriaIds) {
+			nomes.add("Categoria " + categoriaId);
+		}
+		return new Cartao(id, "Produto " + id, "http://fotos/" + id + ".png", 30.0,
+				Collections.unmodifiableList(Arrays.asList(categoriaIds)), nomes);
+	}
+
+	private static List<Integer> ids(Vitrine vitrine) {
+		return ids(vitrine.getProdutos());
+	}
+
+	private static List<Integer> ids(List<Cartao> cartoes) {
+		List<Integer> ids = new ArrayList<>();
+		for (Cartao cartao : cartoes) {
+			ids.add(cartao.getId());
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,102 @@
+package br.com.caelum.visualizacao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EspacoEconomicoTest {
+
+	@Test
+	public void contaExatoEnquantoCabe() {
+		EspacoEconomico espaco = new EspacoEconomico(3);
+		espaco.soma(1, 5);
+		espaco.soma(2, 7);
+		espaco.soma(1, 4);
+
+		List<MaisVisto> ranking = espaco.ranking(10);
+
+		assertEquals(2, ranking.size());
+		assertEquals(Integer.valueOf(1), ranking.get(0).getProdutoId());
+		assertEquals(9, ranking.get(0).getVisualizacoes());
+		assertEquals(0, ranking.get(0).getErro());
+		assertEquals(Integer.valueOf(2), ranking.get(1).getProdutoId());
+	}
+
+	@Test
+	public void novoProdutoTomaOLugarDoMenosVisto() {
+		EspacoEconomico espaco = new EspacoEconomico(2);
+		espaco.soma(1, 10);
+		espaco.soma(2, 3);
+		espaco.soma(3, 1);
+
+		List<MaisVisto> ranking = espaco.ranking(10);
+
+		assertEquals(2, ranking.size());
+		assertEquals(Integer.valueOf(1), ranking.get(0).getProdutoId());
+		assertEquals(Integer.valueOf(3), ranking.get(1).getProdutoId());
+		assertEquals(4, ranking.get(1).getVisualizacoes());
+		assertEquals(3, ranking.get(1).getErro());
+	}
+
+	@Test
+	public void empateOrdenaPeloId() {
+		EspacoEconomico espaco = new EspacoEconomico(5);
+		espaco.soma(7, 2);
+		espaco.soma(3, 2);
+		espaco.soma(5, 2);
+
+		List<MaisVisto> ranking = espaco.ranking(2);
+
+		assertEquals(2, ranking.size());
+		assertEquals(Integer.valueOf(3), ranking.get(0).getProdutoId());
+		assertEquals(Integer.valueOf(5), ranking.get(1).getProdutoId());
+	}
+
+	/*
+	 * As garantias do algoritmo: a contagem nunca fica abaixo da real nem mais
+	 * que o erro acima dela, e quem passa de total/capacidade está na lista.
+	 */
+	@Test
+	public void respeitaOsLimitesDoAlgoritmo() {
+		int capacidade = 10;
+		EspacoEconomico espaco = new EspacoEconomico(capacidade);
+		long[] reais = new long[200];
+		long total = 0;
+		Random aleatorio = new Random(42);
+
+		for (int i = 0; i < 5000; i++) {
+			// poucos produtos muito vistos e uma cauda longa
+			int produto = aleatorio.nextInt(4) == 0 ? aleatorio.nextInt(200) : aleatorio.nextInt(3);
+			long visitas = 1 + aleatorio.nextInt(3);
+			espaco.soma(produto, visitas);
+			reais[produto] += visitas;
+			total += visitas;
+		}
+
+		List<MaisVisto> ranking = espaco.ranking(capacidade);
+		for (MaisVisto maisVisto : ranking) {
+			long real = reais[maisVisto.getProdutoId()];
+			assertTrue(maisVisto.getVisualizacoes() >= real);
+			assertTrue(maisVisto.getVisualizacoes() - maisVisto.getErro() <= real);
+		}
+
+		for (int produto = 0; produto < reais.length; produto++) {
+			if (reais[produto] > total / capacidade)
+				assertTrue("produto " + produto, contem(ranking, produto));
+		}
+		assertTrue(contem(ranking, 0) && contem(ranking, 1) && contem(ranking, 2));
+	}
+
+	private static boolean contem(List<MaisVisto> ranking, int produtoId) {
+		for (MaisVisto maisVisto : ranking) {
+			if (maisVisto.getProdutoId() == produtoId)
+				return true;
+		}
+		return false;
+	}
+
+}